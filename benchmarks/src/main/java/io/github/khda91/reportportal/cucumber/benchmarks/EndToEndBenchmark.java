@@ -0,0 +1,191 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber.benchmarks;
+
+import com.epam.reportportal.listeners.ListenerParameters;
+import com.epam.reportportal.service.ReportPortal;
+import com.epam.ta.reportportal.ws.model.launch.Mode;
+import io.cucumber.plugin.event.Event;
+import io.github.khda91.reportportal.cucumber.AbstractReporter;
+import io.github.khda91.reportportal.cucumber.ScenarioReporter;
+import io.github.khda91.reportportal.cucumber.StepReporter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import rp.com.google.common.base.Suppliers;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the reporters reporting a whole synthetic test run over HTTP to a {@link StubReportPortalServer}.
+ * <p>
+ * One benchmark operation is one launch, from the first event until the launch is finished and its logs are
+ * uploaded. The server adds {@code latency} milliseconds to every request and fails {@code errorRate} of them,
+ * so the benchmark shows how the reporters cope with a slow or flaky Report Portal. Processed events are reported
+ * as the {@code events} counter, its score is the time per event. Server statistics are printed at the end of
+ * every trial: a finished run leaves no open items and no finishes of unknown items unless errors were injected.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({ "STEP", "SCENARIO" })
+    public ReporterBenchmark.ReporterType reporter;
+
+    @Param("5")
+    public int features;
+
+    @Param("20")
+    public int scenarios;
+
+    @Param("10")
+    public int steps;
+
+    @Param("2")
+    public int embeds;
+
+    @Param("1024")
+    public int embedSize;
+
+    @Param({ "0", "20" })
+    public long latency;
+
+    @Param({ "0", "0.01" })
+    public double errorRate;
+
+    private List<Event> events;
+
+    private StubReportPortalServer server;
+
+    private ReportPortal reportPortal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        events = SyntheticRun.generate(SyntheticRun.Shape.PLAIN, features, scenarios, steps, embeds, embedSize).getEvents();
+        server = new StubReportPortalServer("benchmark").withLatency(latency, latency / 4).withErrors(errorRate, 500).start();
+    }
+
+    /**
+     * Finishing a launch closes the client, so every launch needs its own
+     */
+    @Setup(Level.Invocation)
+    public void newReportPortal() {
+        reportPortal = ReportPortal.builder().withParameters(parameters(server.getParameters())).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println();
+        System.out.println(server.getSummary());
+        server.close();
+    }
+
+    @Benchmark
+    public void launch(EventCounter counter) {
+        SimpleEventPublisher publisher = new SimpleEventPublisher();
+        newReporter().setEventPublisher(publisher);
+        for (Event event : events) {
+            publisher.send(event);
+        }
+        counter.events += events.size();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class EventCounter {
+
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            events = 0;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder().parent(new CommandLineOptions(args)).include(EndToEndBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+
+    private AbstractReporter newReporter() {
+        return reporter == ReporterBenchmark.ReporterType.STEP ? new ServerStepReporter(reportPortal) : new ServerScenarioReporter(reportPortal);
+    }
+
+    private static ListenerParameters parameters(ListenerParameters parameters) {
+        parameters.setLaunchName("benchmark");
+        parameters.setLaunchRunningMode(Mode.DEFAULT);
+        parameters.setTags(new HashSet<>());
+        parameters.setSkippedAnIssue(false);
+        parameters.setBatchLogsSize(10);
+        parameters.setIoPoolSize(10);
+        parameters.setReportingTimeout(60);
+        return parameters;
+    }
+
+    private static class ServerStepReporter extends StepReporter {
+
+        private final ReportPortal serverReportPortal;
+
+        ServerStepReporter(ReportPortal serverReportPortal) {
+            this.serverReportPortal = serverReportPortal;
+        }
+
+        @Override
+        protected void startLaunch(Date startTime) {
+            super.startLaunch(startTime);
+            reportPortal = Suppliers.ofInstance(serverReportPortal);
+        }
+    }
+
+    private static class ServerScenarioReporter extends ScenarioReporter {
+
+        private final ReportPortal serverReportPortal;
+
+        ServerScenarioReporter(ReportPortal serverReportPortal) {
+            this.serverReportPortal = serverReportPortal;
+        }
+
+        @Override
+        protected void startLaunch(Date startTime) {
+            super.startLaunch(startTime);
+            reportPortal = Suppliers.ofInstance(serverReportPortal);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber.benchmarks;
+
+import com.epam.reportportal.listeners.ListenerParameters;
+import com.epam.reportportal.service.ReportPortal;
+import com.epam.ta.reportportal.ws.model.launch.Mode;
+import io.cucumber.plugin.event.Event;
+import io.github.khda91.reportportal.cucumber.AbstractReporter;
+import io.github.khda91.reportportal.cucumber.ScenarioReporter;
+import io.github.khda91.reportportal.cucumber.StepReporter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import rp.com.google.common.base.Suppliers;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the reporters processing a whole synthetic test run against a no-op Report Portal client.
+ * <p>
+ * One benchmark operation is one launch: the reporter is attached to an event publisher and receives every
+ * event of the run. Processed events are reported as the {@code events} counter, so its score is events per
+ * second. Run {@link #main(String[])} to get the allocated bytes per event from the gc profiler in addition,
+ * it accepts the usual JMH command line options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReporterBenchmark {
+
+    public enum ReporterType {
+        STEP,
+        SCENARIO
+    }
+
+    @Param({ "STEP", "SCENARIO" })
+    public ReporterType reporter;
+
+    @Param({ "PLAIN", "BACKGROUND", "OUTLINE" })
+    public SyntheticRun.Shape shape;
+
+    @Param("10")
+    public int features;
+
+    @Param("20")
+    public int scenarios;
+
+    @Param("10")
+    public int steps;
+
+    @Param({ "0", "2" })
+    public int embeds;
+
+    @Param("1024")
+    public int embedSize;
+
+    private List<Event> events;
+
+    private ReportPortal reportPortal;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        events = SyntheticRun.generate(shape, features, scenarios, steps, embeds, embedSize).getEvents();
+        reportPortal = ReportPortal.create(new NoOpReportPortalClient(), parameters());
+    }
+
+    @Benchmark
+    public void launch(EventCounter counter) {
+        SimpleEventPublisher publisher = new SimpleEventPublisher();
+        newReporter().setEventPublisher(publisher);
+        for (Event event : events) {
+            publisher.send(event);
+        }
+        counter.events += events.size();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class EventCounter {
+
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            events = 0;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder().parent(new CommandLineOptions(args))
+                .include(ReporterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+        System.out.println();
+        System.out.printf("%-10s %-10s %8s %8s %8s %8s %14s %12s%n", "reporter", "shape", "features", "scenarios", "steps", "embeds", "events/s", "B/event");
+        for (RunResult result : results) {
+            org.openjdk.jmh.infra.BenchmarkParams params = result.getParams();
+            int eventCount = SyntheticRun.generate(SyntheticRun.Shape.valueOf(params.getParam("shape")),
+                    Integer.parseInt(params.getParam("features")),
+                    Integer.parseInt(params.getParam("scenarios")),
+                    Integer.parseInt(params.getParam("steps")),
+                    Integer.parseInt(params.getParam("embeds")),
+                    0).getEvents().size();
+            Result<?> eventsPerSecond = result.getSecondaryResults().get("events");
+            Result<?> allocatedPerLaunch = result.getSecondaryResults().get("·gc.alloc.rate.norm");
+            System.out.printf("%-10s %-10s %8s %8s %8s %8s %14.0f %12.0f%n",
+                    params.getParam("reporter"),
+                    params.getParam("shape"),
+                    params.getParam("features"),
+                    params.getParam("scenarios"),
+                    params.getParam("steps"),
+                    params.getParam("embeds"),
+                    eventsPerSecond == null ? Double.NaN : eventsPerSecond.getScore(),
+                    allocatedPerLaunch == null ? Double.NaN : allocatedPerLaunch.getScore() / eventCount);
+        }
+    }
+
+    private AbstractReporter newReporter() {
+        return reporter == ReporterType.STEP ? new NoOpStepReporter(reportPortal) : new NoOpScenarioReporter(reportPortal);
+    }
+
+    private static ListenerParameters parameters() {
+        ListenerParameters parameters = new ListenerParameters();
+        parameters.setEnable(true);
+        parameters.setLaunchName("benchmark");
+        parameters.setLaunchRunningMode(Mode.DEFAULT);
+        parameters.setTags(new HashSet<>());
+        parameters.setSkippedAnIssue(false);
+        parameters.setBatchLogsSize(10);
+        parameters.setIoPoolSize(4);
+        parameters.setReportingTimeout(60);
+        return parameters;
+    }
+
+    private static class NoOpStepReporter extends StepReporter {
+
+        private final ReportPortal noOpReportPortal;
+
+        NoOpStepReporter(ReportPortal noOpReportPortal) {
+            this.noOpReportPortal = noOpReportPortal;
+        }
+
+        @Override
+        protected void startLaunch(Date startTime) {
+            super.startLaunch(startTime);
+            reportPortal = Suppliers.ofInstance(noOpReportPortal);
+        }
+    }
+
+    private static class NoOpScenarioReporter extends ScenarioReporter {
+
+        private final ReportPortal noOpReportPortal;
+
+        NoOpScenarioReporter(ReportPortal noOpReportPortal) {
+            this.noOpReportPortal = noOpReportPortal;
+        }
+
+        @Override
+        protected void startLaunch(Date startTime) {
+            super.startLaunch(startTime);
+            reportPortal = Suppliers.ofInstance(noOpReportPortal);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber.benchmarks;
+
+import io.cucumber.plugin.event.Event;
+import io.cucumber.plugin.event.EventHandler;
+import io.cucumber.plugin.event.EventPublisher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal event bus which delivers events to the handlers registered for their exact class
+ */
+public class SimpleEventPublisher implements EventPublisher {
+
+    private final Map<Class<?>, List<EventHandler<Event>>> handlers = new HashMap<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends Event> void registerHandlerFor(Class<T> eventType, EventHandler<T> handler) {
+        handlers.computeIfAbsent(eventType, t -> new ArrayList<>()).add((EventHandler<Event>) handler);
+    }
+
+    @Override
+    public <T extends Event> void removeHandlerFor(Class<T> eventType, EventHandler<T> handler) {
+        List<EventHandler<Event>> registered = handlers.get(eventType);
+        if (registered != null) {
+            registered.remove(handler);
+        }
+    }
+
+    /**
+     * Deliver event to its handlers on the calling thread
+     *
+     * @param event Cucumber event
+     */
+    public void send(Event event) {
+        List<EventHandler<Event>> registered = handlers.get(event.getClass());
+        if (registered != null) {
+            for (EventHandler<Event> handler : registered) {
+                handler.receive(event);
+            }
+        }
+    }
+}
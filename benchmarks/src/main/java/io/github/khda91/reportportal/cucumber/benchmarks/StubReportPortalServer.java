@@ -0,0 +1,478 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber.benchmarks;
+
+import com.epam.reportportal.listeners.ListenerParameters;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local HTTP server answering the Report Portal v4 API requests the client sends: launch start and finish,
+ * item start and finish, and log save as JSON or as a multipart batch.
+ * <p>
+ * Every request is delayed by the configured latency plus a random jitter, requests are paced to the configured
+ * throughput and handled by a fixed number of threads, and a configured share of them fails with an injected
+ * error. The server can also be switched to an outage, answering every request with 503. Requests, errors,
+ * received bytes, log entries and handling time are counted per endpoint, and items which were never finished
+ * or finished without being started are tracked, so a stress test can check the reporter lost nothing.
+ * <p>
+ * The server is configured before it is started. Run {@link #main(String[])} to start it on its own and point
+ * a test project at it.
+ */
+public class StubReportPortalServer implements AutoCloseable {
+
+    private static final String API_BASE = "/api/v1/";
+
+    private static final Pattern PATH = Pattern.compile("/api/v1/[^/]+(/launch|/launch/([^/]+)/finish|/item/?|/item/([^/]+)|/log/?)");
+
+    private static final byte[] LEVEL_FIELD = "\"level\"".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * API endpoint a request is counted for
+     */
+    public enum Endpoint {
+        START_LAUNCH,
+        FINISH_LAUNCH,
+        START_ITEM,
+        FINISH_ITEM,
+        LOG,
+        UNKNOWN
+    }
+
+    private final String project;
+    private int port;
+    private int threads = 16;
+    private long latencyMillis;
+    private long jitterMillis;
+    private double requestsPerSecond;
+    private double errorRate;
+    private int errorStatus = 500;
+    private volatile boolean outage;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /* pacing of requests to the throughput cap, the time the next request may be handled at */
+    private final Object paceLock = new Object();
+    private long nextSlot;
+
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<String, Boolean> openItems = new ConcurrentHashMap<>();
+    private final AtomicLong unknownItems = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final Map<Endpoint, Counters> counters = new EnumMap<>(Endpoint.class);
+
+    public StubReportPortalServer(String project) {
+        this.project = project;
+        for (Endpoint endpoint : Endpoint.values()) {
+            counters.put(endpoint, new Counters());
+        }
+    }
+
+    /**
+     * @param port port to listen at, 0 picks a free one
+     * @return this server
+     */
+    public StubReportPortalServer withPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * @param threads number of requests handled at the same time
+     * @return this server
+     */
+    public StubReportPortalServer withThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param latencyMillis time every request takes
+     * @param jitterMillis  max random time added to the latency
+     * @return this server
+     */
+    public StubReportPortalServer withLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        return this;
+    }
+
+    /**
+     * @param requestsPerSecond max number of requests handled per second, 0 or less removes the cap
+     * @return this server
+     */
+    public StubReportPortalServer withThroughput(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+        return this;
+    }
+
+    /**
+     * @param errorRate   share of requests, from 0 to 1, which fail
+     * @param errorStatus HTTP status of the failed requests
+     * @return this server
+     */
+    public StubReportPortalServer withErrors(double errorRate, int errorStatus) {
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+        return this;
+    }
+
+    /**
+     * Switch outage on or off, during the outage every request fails with 503. Can be switched while the server runs.
+     *
+     * @param outage true to start the outage
+     */
+    public void setOutage(boolean outage) {
+        this.outage = outage;
+    }
+
+    /**
+     * Start listening
+     *
+     * @return this server
+     * @throws IOException if the port cannot be bound
+     */
+    public StubReportPortalServer start() throws IOException {
+        // headers and body are written separately, without TCP_NODELAY every response waits for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext(API_BASE, this::handle);
+        server.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * @return base URL of the running server
+     */
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Client parameters pointing to the running server, with the rest set to the client defaults
+     *
+     * @return client parameters
+     */
+    public ListenerParameters getParameters() {
+        ListenerParameters parameters = new ListenerParameters();
+        parameters.setEnable(true);
+        parameters.setBaseUrl(getBaseUrl());
+        parameters.setProjectName(project);
+        parameters.setUuid("00000000-0000-0000-0000-000000000000");
+        return parameters;
+    }
+
+    public long getRequests(Endpoint endpoint) {
+        return counters.get(endpoint).requests.get();
+    }
+
+    public long getErrors(Endpoint endpoint) {
+        return counters.get(endpoint).errors.get();
+    }
+
+    public long getBytes(Endpoint endpoint) {
+        return counters.get(endpoint).bytes.get();
+    }
+
+    /**
+     * @return number of log entries received in successful log requests
+     */
+    public long getLogEntries() {
+        return counters.get(Endpoint.LOG).entries.get();
+    }
+
+    /**
+     * @return number of items started and not finished yet
+     */
+    public int getOpenItems() {
+        return openItems.size();
+    }
+
+    /**
+     * @return number of finish requests for items which were not started or finished already
+     */
+    public long getUnknownItems() {
+        return unknownItems.get();
+    }
+
+    /**
+     * @return max number of requests handled at the same time
+     */
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * Reset statistics and tracked items, configuration is kept
+     */
+    public void reset() {
+        for (Counters endpointCounters : counters.values()) {
+            endpointCounters.reset();
+        }
+        openItems.clear();
+        unknownItems.set(0);
+        maxInFlight.set(0);
+    }
+
+    /**
+     * @return statistics as a table, one line per endpoint which received requests
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder(String.format("%-14s %10s %8s %14s %10s %10s%n",
+                "endpoint", "requests", "errors", "bytes", "avg ms", "max ms"));
+        for (Map.Entry<Endpoint, Counters> entry : counters.entrySet()) {
+            Counters endpointCounters = entry.getValue();
+            long requests = endpointCounters.requests.get();
+            if (requests == 0) {
+                continue;
+            }
+            summary.append(String.format("%-14s %10d %8d %14d %10.1f %10.1f%n",
+                    entry.getKey(),
+                    requests,
+                    endpointCounters.errors.get(),
+                    endpointCounters.bytes.get(),
+                    endpointCounters.nanos.get() / 1e6 / requests,
+                    endpointCounters.maxNanos.get() / 1e6));
+        }
+        summary.append(String.format("log entries: %d, open items: %d, unknown items: %d, max in flight: %d",
+                getLogEntries(), getOpenItems(), getUnknownItems(), getMaxInFlight()));
+        return summary.toString();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long started = System.nanoTime();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        Endpoint endpoint = Endpoint.UNKNOWN;
+        try {
+            byte[] body = readBody(exchange.getRequestBody());
+            String method = exchange.getRequestMethod();
+            Matcher path = PATH.matcher(exchange.getRequestURI().getPath());
+            if (path.matches()) {
+                endpoint = resolve(method, path.group(1));
+            }
+            Counters endpointCounters = counters.get(endpoint);
+            endpointCounters.requests.incrementAndGet();
+            endpointCounters.bytes.addAndGet(body.length);
+
+            pace();
+            delay();
+            if (endpoint == Endpoint.UNKNOWN) {
+                respond(exchange, 404, "{\"errorCode\":4040,\"message\":\"Unknown endpoint " + method + " " + exchange.getRequestURI() + "\"}");
+                endpointCounters.errors.incrementAndGet();
+            } else if (outage || (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate)) {
+                respond(exchange, outage ? 503 : errorStatus, "{\"errorCode\":5000,\"message\":\"Injected failure\"}");
+                endpointCounters.errors.incrementAndGet();
+            } else {
+                respond(exchange, 200, answer(endpoint, path, body));
+            }
+        } finally {
+            inFlight.decrementAndGet();
+            Counters endpointCounters = counters.get(endpoint);
+            long took = System.nanoTime() - started;
+            endpointCounters.nanos.addAndGet(took);
+            endpointCounters.maxNanos.accumulateAndGet(took, Math::max);
+            exchange.close();
+        }
+    }
+
+    private static Endpoint resolve(String method, String path) {
+        if ("POST".equals(method)) {
+            if (path.equals("/launch")) {
+                return Endpoint.START_LAUNCH;
+            }
+            return path.startsWith("/item") ? Endpoint.START_ITEM : path.startsWith("/log") ? Endpoint.LOG : Endpoint.UNKNOWN;
+        }
+        if ("PUT".equals(method)) {
+            if (path.endsWith("/finish")) {
+                return Endpoint.FINISH_LAUNCH;
+            }
+            return path.startsWith("/item/") && path.length() > "/item/".length() ? Endpoint.FINISH_ITEM : Endpoint.UNKNOWN;
+        }
+        return Endpoint.UNKNOWN;
+    }
+
+    private String answer(Endpoint endpoint, Matcher path, byte[] body) {
+        switch (endpoint) {
+            case START_LAUNCH:
+                long number = ids.incrementAndGet();
+                return "{\"id\":\"launch-" + number + "\",\"number\":" + number + "}";
+            case FINISH_LAUNCH:
+                return "{\"msg\":\"Launch with ID = '" + path.group(2) + "' successfully finished.\"}";
+            case START_ITEM:
+                String itemId = "item-" + ids.incrementAndGet();
+                openItems.put(itemId, Boolean.TRUE);
+                return "{\"id\":\"" + itemId + "\",\"uniqueId\":\"" + itemId + "\"}";
+            case FINISH_ITEM:
+                String finished = path.group(3);
+                if (openItems.remove(finished) == null) {
+                    unknownItems.incrementAndGet();
+                }
+                return "{\"msg\":\"TestItem with ID = '" + finished + "' successfully finished.\"}";
+            default:
+                int entries = count(body, LEVEL_FIELD);
+                counters.get(Endpoint.LOG).entries.addAndGet(entries);
+                StringBuilder responses = new StringBuilder("{\"responses\":[");
+                for (int i = 0; i < entries; i++) {
+                    responses.append(i == 0 ? "" : ",").append("{\"id\":\"log-").append(ids.incrementAndGet()).append("\"}");
+                }
+                return responses.append("]}").toString();
+        }
+    }
+
+    /**
+     * Wait for the next free slot under the throughput cap
+     */
+    private void pace() {
+        if (requestsPerSecond <= 0) {
+            return;
+        }
+        long slot;
+        synchronized (paceLock) {
+            long now = System.nanoTime();
+            slot = Math.max(now, nextSlot);
+            nextSlot = slot + (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        }
+        sleepNanos(slot - System.nanoTime());
+    }
+
+    private void delay() {
+        long jitter = jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0L;
+        sleepNanos(TimeUnit.MILLISECONDS.toNanos(latencyMillis + jitter));
+    }
+
+    private static void sleepNanos(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static byte[] readBody(InputStream input) throws IOException {
+        byte[] buffer = new byte[8192];
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Count log entries of a save request: a JSON entry or a JSON array of entries, binary parts may contain the
+     * field by chance, which is fine for statistics
+     */
+    private static int count(byte[] body, byte[] field) {
+        int count = 0;
+        outer:
+        for (int i = 0; i <= body.length - field.length; i++) {
+            for (int j = 0; j < field.length; j++) {
+                if (body[i + j] != field[j]) {
+                    continue outer;
+                }
+            }
+            count++;
+            i += field.length - 1;
+        }
+        return count;
+    }
+
+    /**
+     * Start the server until the JVM is stopped, printing statistics every 10 seconds.
+     * <p>
+     * Arguments: {@code [port [latencyMillis [jitterMillis [requestsPerSecond [errorRate]]]]]}, the project name
+     * in the client settings is arbitrary.
+     *
+     * @param args command line arguments
+     * @throws Exception if the server cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        StubReportPortalServer server = new StubReportPortalServer("stub")
+                .withPort(args.length > 0 ? Integer.parseInt(args[0]) : 8080)
+                .withLatency(args.length > 1 ? Long.parseLong(args[1]) : 0L, args.length > 2 ? Long.parseLong(args[2]) : 0L)
+                .withThroughput(args.length > 3 ? Double.parseDouble(args[3]) : 0)
+                .withErrors(args.length > 4 ? Double.parseDouble(args[4]) : 0, 500)
+                .start();
+        System.out.println("Report Portal stand-in listening at " + server.getBaseUrl());
+        while (true) {
+            TimeUnit.SECONDS.sleep(10);
+            System.out.println(server.getSummary());
+        }
+    }
+
+    private static class Counters {
+
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong entries = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void reset() {
+            requests.set(0);
+            errors.set(0);
+            bytes.set(0);
+            entries.set(0);
+            nanos.set(0);
+            maxNanos.set(0);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber.benchmarks;
+
+import io.cucumber.plugin.event.Argument;
+import io.cucumber.plugin.event.EmbedEvent;
+import io.cucumber.plugin.event.Event;
+import io.cucumber.plugin.event.HookTestStep;
+import io.cucumber.plugin.event.HookType;
+import io.cucumber.plugin.event.PickleStepTestStep;
+import io.cucumber.plugin.event.Result;
+import io.cucumber.plugin.event.Status;
+import io.cucumber.plugin.event.Step;
+import io.cucumber.plugin.event.StepArgument;
+import io.cucumber.plugin.event.TestCase;
+import io.cucumber.plugin.event.TestCaseFinished;
+import io.cucumber.plugin.event.TestCaseStarted;
+import io.cucumber.plugin.event.TestRunFinished;
+import io.cucumber.plugin.event.TestRunStarted;
+import io.cucumber.plugin.event.TestSourceRead;
+import io.cucumber.plugin.event.TestStep;
+import io.cucumber.plugin.event.TestStepFinished;
+import io.cucumber.plugin.event.TestStepStarted;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Pre-built stream of Cucumber events of a whole test run.
+ * <p>
+ * Every feature is generated as Gherkin source together with the test cases Cucumber would expand it into,
+ * so the reporter resolves scenarios and steps exactly as it does for real features. Each test case runs a
+ * before hook, its steps and an after hook which embeds the configured number of attachments.
+ */
+public class SyntheticRun {
+
+    /**
+     * Layout of generated features
+     */
+    public enum Shape {
+        /* plain scenarios */
+        PLAIN,
+        /* plain scenarios sharing a background */
+        BACKGROUND,
+        /* single scenario outline with one example row per test case */
+        OUTLINE
+    }
+
+    private static final Instant START = Instant.parse("2020-01-01T00:00:00Z");
+
+    private static final Result PASSED = new Result(Status.PASSED, Duration.ofMillis(1), null);
+
+    private final List<Event> events = new ArrayList<>();
+
+    private int testCases;
+
+    private SyntheticRun() {
+    }
+
+    /**
+     * Generate test run
+     *
+     * @param shape     layout of the features
+     * @param features  number of features
+     * @param scenarios number of test cases per feature
+     * @param steps     number of steps per test case, excluding background steps
+     * @param embeds    number of attachments embedded by the after hook of each test case
+     * @param embedSize size of each attachment in bytes
+     * @return test run
+     */
+    public static SyntheticRun generate(Shape shape, int features, int scenarios, int steps, int embeds, int embedSize) {
+        SyntheticRun run = new SyntheticRun();
+        run.events.add(new TestRunStarted(START));
+        List<List<TestCase>> featureTestCases = new ArrayList<>(features);
+        for (int f = 0; f < features; f++) {
+            URI uri = URI.create("file:///benchmark/feature-" + f + ".feature");
+            StringBuilder source = new StringBuilder();
+            featureTestCases.add(generateFeature(shape, uri, f, scenarios, steps, source));
+            run.events.add(new TestSourceRead(START, uri, source.toString()));
+        }
+        byte[] attachment = new byte[embedSize];
+        for (List<TestCase> testCases : featureTestCases) {
+            for (TestCase testCase : testCases) {
+                run.addTestCase(testCase, embeds, attachment);
+            }
+        }
+        run.events.add(new TestRunFinished(START));
+        return run;
+    }
+
+    /**
+     * @return events in the order Cucumber publishes them on a single thread
+     */
+    public List<Event> getEvents() {
+        return Collections.unmodifiableList(events);
+    }
+
+    public int getTestCaseCount() {
+        return testCases;
+    }
+
+    private void addTestCase(TestCase testCase, int embeds, byte[] attachment) {
+        testCases++;
+        events.add(new TestCaseStarted(START, testCase));
+        for (TestStep step : testCase.getTestSteps()) {
+            events.add(new TestStepStarted(START, testCase, step));
+            if (step instanceof HookTestStep && ((HookTestStep) step).getHookType() == HookType.AFTER) {
+                for (int i = 0; i < embeds; i++) {
+                    events.add(new EmbedEvent(START, testCase, attachment, "image/png", "screenshot"));
+                }
+            }
+            events.add(new TestStepFinished(START, testCase, step, PASSED));
+        }
+        events.add(new TestCaseFinished(START, testCase, PASSED));
+    }
+
+    private static List<TestCase> generateFeature(Shape shape, URI uri, int index, int scenarios, int steps, StringBuilder source) {
+        List<TestCase> testCases = new ArrayList<>(scenarios);
+        int line = 0;
+        source.append("Feature: Feature ").append(index).append('\n');
+        line++;
+        List<SyntheticStep> background = new ArrayList<>();
+        if (shape == Shape.BACKGROUND) {
+            source.append("\n  Background:\n");
+            line += 2;
+            for (int i = 0; i < 2; i++) {
+                source.append("    Given background step ").append(i).append('\n');
+                background.add(new SyntheticStep("Given ", "background step " + i, ++line));
+            }
+        }
+        if (shape == Shape.OUTLINE) {
+            source.append("\n  Scenario Outline: Outline ").append(index).append('\n');
+            line += 2;
+            List<SyntheticStep> template = new ArrayList<>(steps);
+            for (int i = 0; i < steps; i++) {
+                source.append("    Given step ").append(i).append(" with <value>\n");
+                template.add(new SyntheticStep("Given ", "step " + i + " with <value>", ++line));
+            }
+            source.append("\n    Examples:\n      | value |\n");
+            line += 3;
+            for (int s = 0; s < scenarios; s++) {
+                source.append("      | ").append(s).append(" |\n");
+                List<SyntheticStep> expanded = new ArrayList<>(steps);
+                for (SyntheticStep step : template) {
+                    expanded.add(new SyntheticStep(step.keyword, step.text.replace("<value>", String.valueOf(s)), step.line));
+                }
+                testCases.add(new SyntheticTestCase(uri, "Scenario Outline", "Outline " + index, ++line, background, expanded));
+            }
+            return testCases;
+        }
+        for (int s = 0; s < scenarios; s++) {
+            source.append("\n  Scenario: Scenario ").append(s).append('\n');
+            line += 2;
+            int scenarioLine = line;
+            List<SyntheticStep> scenarioSteps = new ArrayList<>(steps);
+            for (int i = 0; i < steps; i++) {
+                source.append("    Given step ").append(i).append('\n');
+                scenarioSteps.add(new SyntheticStep("Given ", "step " + i, ++line));
+            }
+            testCases.add(new SyntheticTestCase(uri, "Scenario", "Scenario " + s, scenarioLine, background, scenarioSteps));
+        }
+        return testCases;
+    }
+
+    private static class SyntheticTestCase implements TestCase {
+
+        private final URI uri;
+        private final String keyword;
+        private final String name;
+        private final int line;
+        private final List<TestStep> testSteps = new ArrayList<>();
+        private final UUID id = UUID.randomUUID();
+
+        SyntheticTestCase(URI uri, String keyword, String name, int line, List<SyntheticStep> background, List<SyntheticStep> steps) {
+            this.uri = uri;
+            this.keyword = keyword;
+            this.name = name;
+            this.line = line;
+            testSteps.add(new SyntheticHook(HookType.BEFORE));
+            for (SyntheticStep step : background) {
+                testSteps.add(new SyntheticPickleStep(uri, step));
+            }
+            for (SyntheticStep step : steps) {
+                testSteps.add(new SyntheticPickleStep(uri, step));
+            }
+            testSteps.add(new SyntheticHook(HookType.AFTER));
+        }
+
+        @Override
+        public Integer getLine() {
+            return line;
+        }
+
+        @Override
+        public String getKeyword() {
+            return keyword;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getScenarioDesignation() {
+            return uri + ":" + line + " # " + keyword + ": " + name;
+        }
+
+        @Override
+        public List<String> getTags() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<TestStep> getTestSteps() {
+            return testSteps;
+        }
+
+        @Override
+        public URI getUri() {
+            return uri;
+        }
+
+        @Override
+        public UUID getId() {
+            return id;
+        }
+    }
+
+    private static class SyntheticStep implements Step {
+
+        private final String keyword;
+        private final String text;
+        private final int line;
+
+        SyntheticStep(String keyword, String text, int line) {
+            this.keyword = keyword;
+            this.text = text;
+            this.line = line;
+        }
+
+        @Override
+        public StepArgument getArgument() {
+            return null;
+        }
+
+        @Override
+        public String getKeyWord() {
+            return keyword;
+        }
+
+        @Override
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public int getLine() {
+            return line;
+        }
+    }
+
+    private static class SyntheticPickleStep implements PickleStepTestStep {
+
+        private final URI uri;
+        private final SyntheticStep step;
+
+        SyntheticPickleStep(URI uri, SyntheticStep step) {
+            this.uri = uri;
+            this.step = step;
+        }
+
+        @Override
+        public String getPattern() {
+            return step.text;
+        }
+
+        @Override
+        public Step getStep() {
+            return step;
+        }
+
+        @Override
+        public List<Argument> getDefinitionArgument() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public StepArgument getStepArgument() {
+            return null;
+        }
+
+        @Override
+        public int getStepLine() {
+            return step.line;
+        }
+
+        @Override
+        public URI getUri() {
+            return uri;
+        }
+
+        @Override
+        public String getStepText() {
+            return step.text;
+        }
+
+        @Override
+        public String getCodeLocation() {
+            return "BenchmarkSteps.step(String)";
+        }
+    }
+
+    private static class SyntheticHook implements HookTestStep {
+
+        private final HookType hookType;
+
+        SyntheticHook(HookType hookType) {
+            this.hookType = hookType;
+        }
+
+        @Override
+        public HookType getHookType() {
+            return hookType;
+        }
+
+        @Override
+        public String getCodeLocation() {
+            return "BenchmarkHooks." + hookType.name().toLowerCase() + "()";
+        }
+    }
+}
@@ -18,12 +18,15 @@ package io.github.khda91.reportportal.cucumber;
 import com.epam.reportportal.listeners.ListenerParameters;
 import com.epam.reportportal.service.Launch;
 import com.epam.reportportal.service.ReportPortal;
+import com.epam.reportportal.service.ReportPortalClient;
+import com.epam.reportportal.utils.properties.PropertiesLoader;
 import com.epam.ta.reportportal.ws.model.FinishExecutionRQ;
 import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
 import com.epam.ta.reportportal.ws.model.launch.StartLaunchRQ;
 import com.epam.ta.reportportal.ws.model.log.SaveLogRQ.File;
 import io.cucumber.plugin.ConcurrentEventListener;
 import io.cucumber.plugin.event.EmbedEvent;
+import io.cucumber.plugin.event.Event;
 import io.cucumber.plugin.event.EventHandler;
 import io.cucumber.plugin.event.EventPublisher;
 import io.cucumber.plugin.event.HookTestStep;
@@ -40,33 +43,93 @@ import io.cucumber.plugin.event.TestStepFinished;
 import io.cucumber.plugin.event.TestStepStarted;
 import io.cucumber.plugin.event.WriteEvent;
 import io.reactivex.Maybe;
-import org.apache.tika.mime.MimeTypeException;
-import org.apache.tika.mime.MimeTypes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rp.com.google.common.base.Supplier;
 import rp.com.google.common.base.Suppliers;
+import rp.com.google.common.util.concurrent.ThreadFactoryBuilder;
 
-import java.util.Calendar;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Abstract Cucumber 5.x formatter for Report Portal
  */
 public abstract class AbstractReporter implements ConcurrentEventListener {
 
+    protected static final String COLON_INFIX = ": ";
+
+    static final String EAGER_LAUNCH_PROPERTY = "rp.cucumber.launch.eager";
+
+    static final String CONTIGUOUS_FEATURES_PROPERTY = "rp.cucumber.feature.contiguous";
+
+    /* name prefix of the threads Cucumber runs scenarios on with --threads */
+    private static final String CUCUMBER_RUNNER_THREAD = "cucumber-runner-";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractReporter.class);
 
-    protected static final String COLON_INFIX = ": ";
+    private static final ThreadFactory WARM_UP_THREADS = new ThreadFactoryBuilder().setNameFormat("rp-launch-warm-up-%d")
+            .setDaemon(true)
+            .build();
+
+    /* feature contexts by feature URI, completed once the feature is started */
+    protected final Map<String, CompletableFuture<RunningContext.FeatureContext>> featureContexts = new ConcurrentHashMap<>();
 
-    /* feature context */
-    protected RunningContext.FeatureContext currentFeatureContext;
+    /* scenario contexts by running test case */
+    protected final Map<TestCase, RunningContext.ScenarioContext> scenarioContexts = new ConcurrentHashMap<>();
 
-    /* scenario context */
-    protected RunningContext.ScenarioContext currentScenarioContext;
+    protected Supplier<ReportPortal> reportPortal;
 
     protected Supplier<Launch> rp;
 
+    protected Supplier<LogBatcher> logBatcher;
+
+    protected ReportingClock clock = ReportingClock.fromParameters();
+
+    /* hands events over to the reporter thread, null if events are reported on Cucumber threads */
+    private ReportingQueue reportingQueue;
+
+    /* null if metrics are disabled */
+    private ReporterMetrics metrics;
+
+    private final boolean eagerLaunch = ReporterParameters.getBoolean(EAGER_LAUNCH_PROPERTY, true);
+
+    private final boolean contiguousFeatures = ReporterParameters.getBoolean(CONTIGUOUS_FEATURES_PROPERTY, true);
+
+    /* thread the first test case was started on */
+    private final AtomicReference<Thread> runnerThread = new AtomicReference<>();
+
+    /* test cases started and not finished yet, counted on Cucumber threads */
+    private final AtomicInteger runningTestCases = new AtomicInteger();
+
+    /* set once test cases are seen to run in parallel */
+    private volatile boolean parallel;
+
+    /* URI of the feature of the last started test case, tracked while test cases run one at a time */
+    private volatile String lastFeatureUri;
+
+    /* test case and time of the step event being handled, read by the deprecated step and hook methods */
+    private final ThreadLocal<TestCase> eventTestCase = new ThreadLocal<>();
+
+    private final ThreadLocal<Date> eventTime = new ThreadLocal<>();
+
+    /* null if the launch is not shared with other forks */
+    private volatile SharedLaunch sharedLaunch;
+
+    /* bounds requests of the reporter, item requests only of a launch created from the client it wraps */
+    private final RequestWindow requestWindow = RequestWindow.fromParameters();
+
+    /* portal with the client wrapped by the request window, null until it is created */
+    private volatile ReportPortal windowedPortal;
+
+    /* completes once the launch and the root item are started in the background, see warmUpLaunch */
+    private CompletableFuture<Void> launchWarmUp = CompletableFuture.completedFuture(null);
+
     /**
      * Registers an event handler for a specific event.
      * <p>
@@ -82,104 +145,216 @@ public abstract class AbstractReporter implements ConcurrentEventListener {
      * <li>{@link EmbedEvent} - calling scenario.embed in a hook triggers this event.
      * <li>{@link WriteEvent} - calling scenario.write in a hook triggers this event.
      * </ul>
+     * If asynchronous reporting is enabled with {@code rp.cucumber.async}, test case events are only put into a queue on
+     * Cucumber threads and reported by a dedicated reporter thread. Test items are not started on the test thread then,
+     * so logs emitted through {@link ReportPortal#emitLog} from step code are not attached to them.
+     * <p>
+     * Unless {@code rp.cucumber.launch.eager} is disabled, the launch is started in the background as soon as
+     * {@link TestRunStarted} is received, so the first scenario does not wait for the client setup.
+     * <p>
+     * A feature is finished once all its scenarios are finished. When scenarios are filtered out, e.g. by tags, the
+     * feature is finished as soon as a scenario of another feature starts, as long as scenarios are seen to run one
+     * at a time, or else once the run is finished. Disable {@code rp.cucumber.feature.contiguous} when scenarios of
+     * a feature do not run one after another, e.g. with {@code --order random}.
+     * <p>
+     * If {@code rp.cucumber.metrics} is enabled, every handler and Report Portal request is measured, the
+     * measurements are exposed through {@link ReporterMetricsMXBean} and summarized once the launch is finished.
      */
     @Override
     public void setEventPublisher(EventPublisher publisher) {
-        publisher.registerHandlerFor(TestRunStarted.class, getTestRunStartedHandler());
-        publisher.registerHandlerFor(TestSourceRead.class, getTestSourceReadHandler());
-        publisher.registerHandlerFor(TestCaseStarted.class, getTestCaseStartedHandler());
-        publisher.registerHandlerFor(TestStepStarted.class, getTestStepStartedHandler());
-        publisher.registerHandlerFor(TestStepFinished.class, getTestStepFinishedHandler());
-        publisher.registerHandlerFor(TestCaseFinished.class, getTestCaseFinishedHandler());
-        publisher.registerHandlerFor(TestRunFinished.class, getTestRunFinishedHandler());
-        publisher.registerHandlerFor(EmbedEvent.class, getEmbedEventHandler());
-        publisher.registerHandlerFor(WriteEvent.class, getWriteEventHandler());
+        reportingQueue = ReportingQueue.fromParameters();
+        metrics = ReporterMetrics.fromParameters();
+        if (metrics != null && reportingQueue != null) {
+            metrics.setQueueDepth(reportingQueue::size);
+        }
+        publisher.registerHandlerFor(TestRunStarted.class, timed(TestRunStarted.class, getTestRunStartedHandler()));
+        publisher.registerHandlerFor(TestSourceRead.class, timed(TestSourceRead.class, getTestSourceReadHandler()));
+        publisher.registerHandlerFor(TestCaseStarted.class, this::trackTestCaseStarted);
+        publisher.registerHandlerFor(TestCaseFinished.class, event -> runningTestCases.decrementAndGet());
+        publisher.registerHandlerFor(TestCaseStarted.class, dispatched(TestCaseStarted.class, getTestCaseStartedHandler()));
+        publisher.registerHandlerFor(TestStepStarted.class, dispatched(TestStepStarted.class, getTestStepStartedHandler()));
+        publisher.registerHandlerFor(TestStepFinished.class, dispatched(TestStepFinished.class, getTestStepFinishedHandler()));
+        publisher.registerHandlerFor(TestCaseFinished.class, dispatched(TestCaseFinished.class, getTestCaseFinishedHandler()));
+        publisher.registerHandlerFor(TestRunFinished.class, timed(TestRunFinished.class, getTestRunFinishedHandler()));
+        publisher.registerHandlerFor(EmbedEvent.class, dispatched(EmbedEvent.class, getEmbedEventHandler()));
+        publisher.registerHandlerFor(WriteEvent.class, dispatched(WriteEvent.class, getWriteEventHandler()));
+        if (metrics != null) {
+            publisher.registerHandlerFor(TestRunFinished.class, event -> metrics.printSummary());
+        }
     }
 
     /**
      * Manipulations before the launch starts
+     *
+     * @param startTime launch start time
      */
-    protected void beforeLaunch() {
-        startLaunch();
+    protected void beforeLaunch(Date startTime) {
+        startLaunch(startTime);
     }
 
     /**
-     * Finish RP launch
+     * Start the launch, the root item and the log batcher on a background thread. Items started in the meantime
+     * are queued against the pending launch by the client.
      */
-    protected void afterLaunch() {
+    protected void warmUpLaunch() {
+        launchWarmUp = CompletableFuture.runAsync(() -> {
+            rp.get().start();
+            logBatcher.get();
+            getRootItemId();
+        }, task -> WARM_UP_THREADS.newThread(task).start()).exceptionally(e -> {
+            LOGGER.warn("Unable to start launch in background, it is started by the first scenario", e);
+            return null;
+        });
+    }
+
+    /**
+     * Finish RP launch, uploading queued logs within the deadline set by {@code rp.cucumber.flush.deadline}, see {@link LaunchShutdown}
+     *
+     * @param endTime launch end time
+     */
+    protected void afterLaunch(Date endTime) {
         FinishExecutionRQ finishLaunchRq = new FinishExecutionRQ();
-        finishLaunchRq.setEndTime(Calendar.getInstance().getTime());
-        rp.get().finish(finishLaunchRq);
+        finishLaunchRq.setEndTime(endTime);
+        LaunchShutdown.fromParameters(logBatcher.get(), requestWindow, metrics, reportPortal.get().getParameters())
+                .finish(rp.get(), finishLaunchRq);
+        requestWindow.detach(rp.get());
     }
 
     /**
      * Manipulations before the feature starts
+     *
+     * @param featureContext context of the feature to start
+     * @param startTime      start time of the first scenario of the feature
      */
-    protected void beforeFeature() {
-        startFeature();
+    protected void beforeFeature(RunningContext.FeatureContext featureContext, Date startTime) {
+        startFeature(featureContext, startTime);
     }
 
     /**
      * Finish Cucumber feature
+     *
+     * @param featureContext context of the feature to finish
+     * @param endTime        end time of the last scenario of the feature
      */
-    protected void afterFeature() {
-        Utils.finishTestItem(rp.get(), currentFeatureContext.getFeatureId());
-        currentFeatureContext = null;
+    protected void afterFeature(RunningContext.FeatureContext featureContext, Date endTime) {
+        Utils.finishTestItem(rp.get(), featureContext.getFeatureId(), endTime);
     }
 
     /**
      * Start Cucumber scenario
+     *
+     * @param testCase  running test case
+     * @param startTime scenario start time
      */
-    protected void beforeScenario() {
-        Maybe<String> id = Utils.startNonLeafNode(rp.get(),
-                currentFeatureContext.getFeatureId(),
-                Utils.buildNodeName(currentScenarioContext.getKeyword(), AbstractReporter.COLON_INFIX, currentScenarioContext.getName(), currentScenarioContext.getOutlineIteration()),
-                currentFeatureContext.getUri() + ":" + currentScenarioContext.getLine(),
-                currentScenarioContext.getTags(),
-                getScenarioTestItemType()
+    protected void beforeScenario(TestCase testCase, Date startTime) {
+        RunningContext.FeatureContext featureContext = getFeatureContext(testCase);
+        Maybe<String> id = Utils.startTestItem(rp.get(), featureContext.getFeatureId(), buildScenarioRq(testCase, startTime));
+        getScenarioContext(testCase).setId(id);
+    }
+
+    /**
+     * Build request to start Cucumber scenario
+     *
+     * @param testCase  running test case
+     * @param startTime scenario start time
+     * @return start request of the scenario item
+     */
+    protected StartTestItemRQ buildScenarioRq(TestCase testCase, Date startTime) {
+        RunningContext.FeatureContext featureContext = getFeatureContext(testCase);
+        RunningContext.ScenarioContext scenarioContext = getScenarioContext(testCase);
+        return Utils.buildNonLeafNodeRq(
+                Utils.buildNodeName(scenarioContext.getKeyword(), AbstractReporter.COLON_INFIX, scenarioContext.getName(), scenarioContext.getOutlineIteration()),
+                featureContext.getUri() + ":" + scenarioContext.getLine(),
+                scenarioContext.getTags(),
+                getScenarioTestItemType(),
+                startTime
         );
-        currentScenarioContext.setId(id);
     }
 
     /**
      * Finish Cucumber scenario
      */
     protected void afterScenario(TestCaseFinished event) {
-        Utils.finishTestItem(rp.get(), currentScenarioContext.getId(), event.getResult().getStatus().toString());
-        currentScenarioContext = null;
+        RunningContext.ScenarioContext scenarioContext = scenarioContexts.remove(event.getTestCase());
+        if (scenarioContext == null) {
+            throw new IllegalStateException("Trying to finish a scenario which was not started: " + describe(event.getTestCase()));
+        }
+        Utils.finishTestItem(rp.get(), scenarioContext.getId(), event.getResult().getStatus().toString(), clock.getTime(event.getInstant()));
     }
 
     /**
      * Start Cucumber feature
+     *
+     * @param featureContext context of the feature to start
+     * @param startTime      feature start time
      */
-    protected void startFeature() {
+    protected void startFeature(RunningContext.FeatureContext featureContext, Date startTime) {
         StartTestItemRQ rq = new StartTestItemRQ();
         Maybe<String> root = getRootItemId();
-        rq.setDescription(currentFeatureContext.getUri());
-        rq.setName(Utils.buildNodeName(currentFeatureContext.getFeature().getKeyword(), AbstractReporter.COLON_INFIX, currentFeatureContext.getFeature().getName(), null));
-        rq.setTags(currentFeatureContext.getTags());
-        rq.setStartTime(Calendar.getInstance().getTime());
+        rq.setDescription(featureContext.getUri());
+        rq.setName(Utils.buildNodeName(featureContext.getKeyword(), AbstractReporter.COLON_INFIX, featureContext.getName(), null));
+        rq.setTags(featureContext.getTags());
+        rq.setStartTime(startTime);
         rq.setType(getFeatureTestItemType());
-        if (null == root) {
-            currentFeatureContext.setFeatureId(rp.get().startTestItem(rq));
-        } else {
-            currentFeatureContext.setFeatureId(rp.get().startTestItem(root, rq));
+        featureContext.setFeatureId(Utils.startTestItem(rp.get(), root, rq));
+    }
+
+    /**
+     * Return context of the feature the test case belongs to
+     *
+     * @param testCase running test case
+     * @return feature context
+     */
+    protected RunningContext.FeatureContext getFeatureContext(TestCase testCase) {
+        CompletableFuture<RunningContext.FeatureContext> featureContext = featureContexts.get(testCase.getUri().toString());
+        if (featureContext == null) {
+            throw new IllegalStateException("No feature started for scenario: " + describe(testCase));
         }
+        return featureContext.join();
     }
 
     /**
-     * Start RP launch
+     * Return context of the running test case
+     *
+     * @param testCase running test case
+     * @return scenario context
      */
-    protected void startLaunch() {
-        rp = Suppliers.memoize(new Supplier<Launch>() {
+    protected RunningContext.ScenarioContext getScenarioContext(TestCase testCase) {
+        RunningContext.ScenarioContext scenarioContext = scenarioContexts.get(testCase);
+        if (scenarioContext == null) {
+            throw new IllegalStateException("No scenario started for test case: " + describe(testCase));
+        }
+        return scenarioContext;
+    }
 
-            /* should no be lazy */
-            private final Date startTime = Calendar.getInstance().getTime();
+    /**
+     * Start RP launch. If {@code rp.cucumber.journal} is set, the launch is written to a journal in that directory
+     * to be uploaded later by {@link JournalReplay}. Otherwise, if {@code rp.cucumber.launch.rendezvous} is set,
+     * the launch is shared with other forks of the run, see {@link SharedLaunch}. Requests of the launch are bounded
+     * by the {@link RequestWindow} of the reporter, item requests only if the launch is created from the client
+     * set up here.
+     *
+     * @param startTime launch start time
+     */
+    protected void startLaunch(final Date startTime) {
+        reportPortal = Suppliers.memoize(() -> {
+            JournalClient journal = JournalClient.fromParameters();
+            ReportPortal portal = journal == null ? ReportPortal.builder().build()
+                    : ReportPortal.create(journal, new ListenerParameters(PropertiesLoader.load()));
+            ReportPortalClient client = metrics == null ? portal.getClient() : metrics.metered(portal.getClient());
+            client = requestWindow.windowed(client);
+            sharedLaunch = journal == null ? SharedLaunch.fromParameters() : null;
+            if (sharedLaunch != null) {
+                client = sharedLaunch.attached(client);
+            }
+            windowedPortal = ReportPortal.create(client, portal.getParameters());
+            return windowedPortal;
+        });
+        rp = Suppliers.memoize(new Supplier<Launch>() {
 
             @Override
             public Launch get() {
-                final ReportPortal reportPortal = ReportPortal.builder().build();
-                ListenerParameters parameters = reportPortal.getParameters();
+                ListenerParameters parameters = reportPortal.get().getParameters();
 
                 StartLaunchRQ rq = new StartLaunchRQ();
                 rq.setName(parameters.getLaunchName());
@@ -188,37 +363,117 @@ public abstract class AbstractReporter implements ConcurrentEventListener {
                 rq.setTags(parameters.getTags());
                 rq.setDescription(parameters.getDescription());
 
-                return reportPortal.newLaunch(rq);
+                Launch launch;
+                if (sharedLaunch != null) {
+                    Integer timeout = parameters.getReportingTimeout();
+                    launch = sharedLaunch.join(reportPortal.get(), rq, timeout == null ? 300L : timeout);
+                } else {
+                    launch = reportPortal.get().newLaunch(rq);
+                }
+                if (reportPortal.get() == windowedPortal) {
+                    requestWindow.attach(launch);
+                }
+                return launch;
             }
         });
+        logBatcher = Suppliers.memoize(() -> LogBatcher.fromParameters(reportPortal.get().getClient(), requestWindow));
+    }
+
+    /**
+     * Start Cucumber step
+     *
+     * @param testCase  Test case the step belongs to
+     * @param step      Step object
+     * @param startTime Step start time
+     */
+    protected void beforeStep(TestCase testCase, TestStep step, Date startTime) {
     }
 
     /**
      * Start Cucumber step
      *
      * @param step Step object
+     * @deprecated override {@link #beforeStep(TestCase, TestStep, Date)} instead
      */
-    protected abstract void beforeStep(TestStep step);
+    @Deprecated
+    protected void beforeStep(TestStep step) {
+        beforeStep(eventTestCase.get(), step, eventTime.get());
+    }
+
+    /**
+     * Finish Cucumber step
+     *
+     * @param testCase Test case the step belongs to
+     * @param result   Step result
+     * @param endTime  Step end time
+     */
+    protected void afterStep(TestCase testCase, Result result, Date endTime) {
+    }
 
     /**
      * Finish Cucumber step
      *
      * @param result Step result
+     * @deprecated override {@link #afterStep(TestCase, Result, Date)} instead
+     */
+    @Deprecated
+    protected void afterStep(Result result) {
+        afterStep(eventTestCase.get(), result, eventTime.get());
+    }
+
+    /**
+     * Called when before/after-hooks are started
+     *
+     * @param testCase  Test case the hook belongs to
+     * @param hookType  Hook type
+     * @param startTime Hook start time
      */
-    protected abstract void afterStep(Result result);
+    protected void beforeHooks(TestCase testCase, HookType hookType, Date startTime) {
+    }
 
     /**
      * Called when before/after-hooks are started
+     *
+     * @param hookType Hook type
+     * @deprecated override {@link #beforeHooks(TestCase, HookType, Date)} instead
      */
+    @Deprecated
+    protected void beforeHooks(HookType hookType) {
+        beforeHooks(eventTestCase.get(), hookType, eventTime.get());
+    }
 
-    protected abstract void beforeHooks(HookType hookType);
+    /**
+     * Called when before/after-hooks are finished
+     *
+     * @param testCase Test case the hook belongs to
+     * @param isBefore - if true, before-hook is finished, if false - after-hook
+     * @param endTime  Hook end time
+     */
+    protected void afterHooks(TestCase testCase, Boolean isBefore, Date endTime) {
+    }
 
     /**
      * Called when before/after-hooks are finished
      *
      * @param isBefore - if true, before-hook is finished, if false - after-hook
+     * @deprecated override {@link #afterHooks(TestCase, Boolean, Date)} instead
+     */
+    @Deprecated
+    protected void afterHooks(Boolean isBefore) {
+        afterHooks(eventTestCase.get(), isBefore, eventTime.get());
+    }
+
+    /**
+     * Called when a specific before/after-hook is finished
+     *
+     * @param testCase Test case the hook belongs to
+     * @param step     TestStep object
+     * @param result   Hook result
+     * @param isBefore - if true, before-hook, if false - after-hook
+     * @param endTime  Hook end time
      */
-    protected abstract void afterHooks(Boolean isBefore);
+    protected void hookFinished(TestCase testCase, TestStep step, Result result, boolean isBefore, Date endTime) {
+    }
 
     /**
      * Called when a specific before/after-hook is finished
@@ -226,8 +481,12 @@ public abstract class AbstractReporter implements ConcurrentEventListener {
      * @param step     TestStep object
      * @param result   Hook result
      * @param isBefore - if true, before-hook, if false - after-hook
+     * @deprecated override {@link #hookFinished(TestCase, TestStep, Result, boolean, Date)} instead
      */
-    protected abstract void hookFinished(TestStep step, Result result, boolean isBefore);
+    @Deprecated
+    protected void hookFinished(TestStep step, Result result, boolean isBefore) {
+        hookFinished(eventTestCase.get(), step, result, isBefore, eventTime.get());
+    }
 
     /**
      * Return RP test item name mapped to Cucumber feature
@@ -243,40 +502,64 @@ public abstract class AbstractReporter implements ConcurrentEventListener {
      */
     protected abstract String getScenarioTestItemType();
 
+    /**
+     * Return test item which logs of the test case should be attached to
+     *
+     * @param testCase running test case
+     * @return test item ID
+     */
+    protected Maybe<String> getLogTarget(TestCase testCase) {
+        return getScenarioContext(testCase).getId();
+    }
+
     /**
      * Report test item result and error (if present)
      *
-     * @param result  - Cucumber result object
-     * @param message - optional message to be logged in addition
+     * @param testCase - running test case
+     * @param result   - Cucumber result object
+     * @param message  - optional message to be logged in addition
+     * @param logTime  - time to log the result with
      */
-    protected void reportResult(Result result, String message) {
+    protected void reportResult(TestCase testCase, Result result, String message, Date logTime) {
         String cukesStatus = result.getStatus().toString();
         String level = Utils.mapLevel(cukesStatus);
         Throwable error = result.getError();
+        Maybe<String> target = getLogTarget(testCase);
         if (error != null) {
-            Utils.sendLog(error.getMessage(), level, null);
+            Utils.sendLog(logBatcher.get(), target, error.getMessage(), level, null, logTime);
         }
         if (message != null) {
-            Utils.sendLog(message, level, null);
+            Utils.sendLog(logBatcher.get(), target, message, level, null, logTime);
         }
     }
 
-    protected void embedding(String mimeType, byte[] data) {
+    protected void embedding(TestCase testCase, String mimeType, byte[] data, Date logTime) {
         File file = new File();
-        String embeddingName;
-        try {
-            embeddingName = MimeTypes.getDefaultMimeTypes().forName(mimeType).getType().getType();
-        } catch (MimeTypeException e) {
-            LOGGER.warn("Mime-type not found", e);
-            embeddingName = "embedding";
+        MediaTypes.Attachment attachment = MediaTypes.getAttachment(mimeType);
+        file.setName(attachment.getFileName());
+        if (attachment != MediaTypes.DEFAULT) {
+            file.setContentType(mimeType);
         }
-        file.setName(embeddingName);
         file.setContent(data);
-        Utils.sendLog(embeddingName, "UNKNOWN", file);
+        Utils.sendLog(logBatcher.get(), getLogTarget(testCase), attachment.getName(), "UNKNOWN", file, logTime);
     }
 
-    protected void write(String text) {
-        Utils.sendLog(text, "INFO", null);
+    /**
+     * Attach whole multiline argument of a step if it was cut to fit into the bounds
+     *
+     * @param itemId   item to attach the argument to
+     * @param testStep step with the argument
+     * @param logTime  time to log the argument with
+     */
+    protected void attachArgumentOverflow(Maybe<String> itemId, TestStep testStep, Date logTime) {
+        File file = MultilineArguments.getDefault().overflow(testStep);
+        if (file != null) {
+            Utils.sendLog(logBatcher.get(), itemId, "Step argument", "INFO", file, logTime);
+        }
+    }
+
+    protected void write(TestCase testCase, String text, Date logTime) {
+        Utils.sendLog(logBatcher.get(), getLogTarget(testCase), text, "INFO", null, logTime);
     }
 
     protected boolean isBefore(TestStep step) {
@@ -290,8 +573,28 @@ public abstract class AbstractReporter implements ConcurrentEventListener {
      * Private part that responsible for handling events
      */
 
+    private <T extends Event> EventHandler<T> timed(Class<T> eventType, EventHandler<T> handler) {
+        final ReporterMetrics reporterMetrics = metrics;
+        return reporterMetrics == null ? handler : reporterMetrics.timed(eventType, handler);
+    }
+
+    /**
+     * @return handler which hands events over to the reporter thread, if there is one; the handler is measured on
+     * the thread it runs on, so the metrics show the time of reporting rather than of the hand-over
+     */
+    private <T extends Event> EventHandler<T> dispatched(Class<T> eventType, EventHandler<T> handler) {
+        final ReportingQueue queue = reportingQueue;
+        final EventHandler<T> measured = timed(eventType, handler);
+        return queue == null ? measured : event -> queue.submit(measured, event);
+    }
+
     private EventHandler<TestRunStarted> getTestRunStartedHandler() {
-        return event -> beforeLaunch();
+        return event -> {
+            beforeLaunch(clock.getTime(event.getInstant()));
+            if (eagerLaunch) {
+                warmUpLaunch();
+            }
+        };
     }
 
     private EventHandler<TestSourceRead> getTestSourceReadHandler() {
@@ -311,70 +614,161 @@ public abstract class AbstractReporter implements ConcurrentEventListener {
     }
 
     private EventHandler<TestCaseFinished> getTestCaseFinishedHandler() {
-        return this::afterScenario;
+        return this::handleEndOfTestCase;
     }
 
     private EventHandler<TestRunFinished> getTestRunFinishedHandler() {
         return event -> {
-            if (currentFeatureContext != null) {
-                handleEndOfFeature();
+            if (reportingQueue != null) {
+                reportingQueue.close();
+            }
+            launchWarmUp.join();
+            Date endTime = clock.getTime(event.getInstant());
+            // features with filtered out scenarios never reach their expected scenario count
+            // features of parallel runs with filtered out scenarios never reach their expected scenario count
+            for (CompletableFuture<RunningContext.FeatureContext> featureContext : featureContexts.values()) {
+                finishFeature(featureContext, endTime);
             }
-            afterLaunch();
+            RunningContext.FeatureContext.releaseAll();
+            afterLaunch(endTime);
         };
     }
 
     private EventHandler<EmbedEvent> getEmbedEventHandler() {
-        return event -> embedding(event.getMediaType(), event.getData());
+        return event -> embedding(event.getTestCase(), event.getMediaType(), event.getData(), clock.getTime(event.getInstant()));
     }
 
     private EventHandler<WriteEvent> getWriteEventHandler() {
-        return event -> write(event.getText());
+        return event -> write(event.getTestCase(), event.getText(), clock.getTime(event.getInstant()));
     }
 
-    private void handleStartOfFeature(TestCase testCase) {
-        currentFeatureContext = new RunningContext.FeatureContext().processTestSourceReadEvent(testCase);
-        beforeFeature();
+    private RunningContext.FeatureContext handleStartOfFeature(TestCase testCase, Date startTime) {
+        RunningContext.FeatureContext featureContext = new RunningContext.FeatureContext().processTestSourceReadEvent(testCase);
+        beforeFeature(featureContext, startTime);
+        return featureContext;
     }
 
-    private void handleEndOfFeature() {
-        afterFeature();
+    private void handleEndOfFeature(RunningContext.FeatureContext featureContext, Date endTime) {
+        // logs of scenarios are batched across the feature, upload them before the feature is finished
+        logBatcher.get().flush();
+        afterFeature(featureContext, endTime);
+        featureContext.release();
+    }
+
+    /**
+     * Runs on the Cucumber thread of the event, before it is handed over to the reporter thread
+     */
+    private void trackTestCaseStarted(TestCaseStarted event) {
+        Thread current = Thread.currentThread();
+        boolean overlapping = runningTestCases.getAndIncrement() > 0;
+        if (overlapping || current.getName().startsWith(CUCUMBER_RUNNER_THREAD)
+                || !runnerThread.compareAndSet(null, current) && runnerThread.get() != current) {
+            parallel = true;
+        }
     }
 
     private void handleStartOfTestCase(TestCaseStarted event) {
         TestCase testCase = event.getTestCase();
-        if (currentFeatureContext != null && !testCase.getUri().toString().equals(currentFeatureContext.getUri())) {
-            handleEndOfFeature();
+        Date startTime = clock.getTime(event.getInstant());
+        String uri = testCase.getUri().toString();
+        if (contiguousFeatures && !parallel) {
+            // scenarios run one at a time, so the previous feature has no scenarios left to run
+            String previousUri = lastFeatureUri;
+            lastFeatureUri = uri;
+            if (previousUri != null && !previousUri.equals(uri)) {
+                finishFeature(featureContexts.get(previousUri), startTime);
+            }
         }
-        if (currentFeatureContext == null) {
-            handleStartOfFeature(testCase);
+        RunningContext.FeatureContext featureContext = startFeature(testCase, startTime);
+        if (scenarioContexts.putIfAbsent(testCase, featureContext.getScenarioContext(testCase)) != null) {
+            throw new IllegalStateException("Test case is already running: " + describe(testCase));
         }
-        if (!currentFeatureContext.getUri().equals(testCase.getUri().toString())) {
-            throw new IllegalStateException("Scenario URI does not match Feature URI.");
+        beforeScenario(testCase, startTime);
+    }
+
+    private void handleEndOfTestCase(TestCaseFinished event) {
+        RunningContext.FeatureContext featureContext = getFeatureContext(event.getTestCase());
+        afterScenario(event);
+        if (featureContext.finishScenario()) {
+            finishFeature(featureContexts.get(featureContext.getUri()), clock.getTime(event.getInstant()));
         }
-        if (currentScenarioContext == null) {
-            currentScenarioContext = currentFeatureContext.getScenarioContext(testCase);
+    }
+
+    /**
+     * Start the feature of the test case unless it is started already. The feature is started outside of the map
+     * lock, so test cases of other features are not held up by it, while test cases of the same feature wait for it.
+     *
+     * @return context of the started feature
+     */
+    private RunningContext.FeatureContext startFeature(TestCase testCase, Date startTime) {
+        String uri = testCase.getUri().toString();
+        CompletableFuture<RunningContext.FeatureContext> started = new CompletableFuture<>();
+        CompletableFuture<RunningContext.FeatureContext> existing = featureContexts.putIfAbsent(uri, started);
+        if (existing != null) {
+            return existing.join();
+        }
+        try {
+            RunningContext.FeatureContext featureContext = handleStartOfFeature(testCase, startTime);
+            started.complete(featureContext);
+            return featureContext;
+        } catch (RuntimeException e) {
+            featureContexts.remove(uri, started);
+            started.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Finish the feature unless it is finished already or was not started
+     */
+    private void finishFeature(CompletableFuture<RunningContext.FeatureContext> started, Date endTime) {
+        if (started == null || started.isCompletedExceptionally()) {
+            return;
+        }
+        RunningContext.FeatureContext featureContext = started.join();
+        if (featureContexts.remove(featureContext.getUri(), started)) {
+            handleEndOfFeature(featureContext, endTime);
         }
-        beforeScenario();
     }
 
     private void handleTestStepStarted(TestStepStarted event) {
+        TestCase testCase = event.getTestCase();
         TestStep testStep = event.getTestStep();
-        if (testStep instanceof HookTestStep) {
-            beforeHooks(((HookTestStep) testStep).getHookType());
-        } else {
-            if (currentScenarioContext.withBackground()) {
-                currentScenarioContext.nextBackgroundStep();
+        eventTestCase.set(testCase);
+        eventTime.set(clock.getTime(event.getInstant()));
+        try {
+            if (testStep instanceof HookTestStep) {
+                beforeHooks(((HookTestStep) testStep).getHookType());
+            } else {
+                beforeStep(testStep);
             }
-            beforeStep(testStep);
+        } finally {
+            eventTestCase.remove();
+            eventTime.remove();
         }
     }
 
     private void handleTestStepFinished(TestStepFinished event) {
-        if (event.getTestStep() instanceof HookTestStep) {
-            hookFinished(event.getTestStep(), event.getResult(), isBefore(event.getTestStep()));
-            afterHooks(isBefore(event.getTestStep()));
-        } else {
-            afterStep(event.getResult());
+        eventTestCase.set(event.getTestCase());
+        // Cucumber measures the step duration up to the instant of this event, so it is the step end time
+        eventTime.set(clock.getTime(event.getInstant()));
+        try {
+            if (event.getTestStep() instanceof HookTestStep) {
+                hookFinished(event.getTestStep(), event.getResult(), isBefore(event.getTestStep()));
+                afterHooks(isBefore(event.getTestStep()));
+            } else {
+                afterStep(event.getResult());
+            }
+        } finally {
+            eventTestCase.remove();
+            eventTime.remove();
         }
     }
+
+    /**
+     * @return location and name of the test case for error messages
+     */
+    private static String describe(TestCase testCase) {
+        return testCase.getUri() + ":" + testCase.getLine() + " # " + testCase.getName();
+    }
 }
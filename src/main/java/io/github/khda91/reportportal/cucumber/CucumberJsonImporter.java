@@ -0,0 +1,558 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.cucumber.plugin.ConcurrentEventListener;
+import io.cucumber.plugin.event.Argument;
+import io.cucumber.plugin.event.DataTableArgument;
+import io.cucumber.plugin.event.DocStringArgument;
+import io.cucumber.plugin.event.EmbedEvent;
+import io.cucumber.plugin.event.Event;
+import io.cucumber.plugin.event.EventHandler;
+import io.cucumber.plugin.event.EventPublisher;
+import io.cucumber.plugin.event.HookTestStep;
+import io.cucumber.plugin.event.HookType;
+import io.cucumber.plugin.event.PickleStepTestStep;
+import io.cucumber.plugin.event.Result;
+import io.cucumber.plugin.event.Status;
+import io.cucumber.plugin.event.Step;
+import io.cucumber.plugin.event.StepArgument;
+import io.cucumber.plugin.event.TestCase;
+import io.cucumber.plugin.event.TestCaseFinished;
+import io.cucumber.plugin.event.TestCaseStarted;
+import io.cucumber.plugin.event.TestRunFinished;
+import io.cucumber.plugin.event.TestRunStarted;
+import io.cucumber.plugin.event.TestSourceRead;
+import io.cucumber.plugin.event.TestStep;
+import io.cucumber.plugin.event.TestStepFinished;
+import io.cucumber.plugin.event.TestStepStarted;
+import io.cucumber.plugin.event.WriteEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Reports a run to Report Portal after it is finished, from the output of Cucumber JSON formatter.
+ * <p>
+ * The report is read as a stream, one scenario at a time, and replayed as Cucumber events into a reporter,
+ * so test items are mapped exactly as if the reporter was attached to the run itself. A second stream reads
+ * each feature ahead of the replay to rebuild its Gherkin source, which keeps the memory footprint bounded by
+ * the size of a single feature outline and a single scenario regardless of the report size.
+ * <p>
+ * Uploads are pipelined: the importer hands the events over to the reporter thread of {@link ReportingQueue},
+ * unless {@code rp.cucumber.async} is explicitly disabled, and logs are uploaded in batches by {@link LogBatcher}.
+ * <p>
+ * Usage: {@code java -cp <classpath> io.github.khda91.reportportal.cucumber.CucumberJsonImporter [step|scenario] <cucumber.json>}.
+ * Report Portal connection is configured by reportportal.properties as usual.
+ */
+public class CucumberJsonImporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CucumberJsonImporter.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final ImporterEventPublisher publisher = new ImporterEventPublisher();
+
+    /* time of the last replayed event */
+    private Instant now;
+
+    public CucumberJsonImporter(ConcurrentEventListener reporter) {
+        reporter.setEventPublisher(publisher);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: CucumberJsonImporter [step|scenario] <cucumber.json>");
+            System.exit(2);
+        }
+        if (ReporterParameters.getProperty(ReportingQueue.ASYNC_PROPERTY, null) == null) {
+            System.setProperty(ReportingQueue.ASYNC_PROPERTY, Boolean.TRUE.toString());
+        }
+        boolean scenarioReporter = args.length == 2 && "scenario".equalsIgnoreCase(args[0]);
+        AbstractReporter reporter = scenarioReporter ? new ScenarioReporter() : new StepReporter();
+        try {
+            new CucumberJsonImporter(reporter).importReport(Paths.get(args[args.length - 1]));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to import " + args[args.length - 1], e);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Replay a report of a whole test run into the reporter
+     *
+     * @param report path to the output of Cucumber JSON formatter
+     * @throws IOException if the report cannot be read
+     */
+    public void importReport(Path report) throws IOException {
+        try (JsonParser features = open(report); JsonParser elements = open(report)) {
+            now = null;
+            ImportedFeature feature = new ImportedFeature();
+            while (readFeature(features, feature::header, feature::element)) {
+                if (now == null) {
+                    now = feature.getStartTime() == null ? Instant.now() : feature.getStartTime();
+                    publisher.send(new TestRunStarted(now));
+                }
+                FeatureReplay replay = new FeatureReplay(feature.getUri());
+                publisher.send(new TestSourceRead(now, feature.getUri(), feature.buildSource()));
+                readFeature(elements, (field, value) -> {
+                }, replay::element);
+                feature = new ImportedFeature();
+            }
+            if (now == null) {
+                now = Instant.now();
+                publisher.send(new TestRunStarted(now));
+            }
+            publisher.send(new TestRunFinished(now));
+        }
+    }
+
+    private static JsonParser open(Path report) throws IOException {
+        JsonParser parser = MAPPER.getFactory().createParser(report.toFile());
+        JsonToken token = parser.nextToken();
+        if (token != null && token != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new IOException("Cucumber JSON report should contain an array of features: " + report);
+        }
+        return parser;
+    }
+
+    /**
+     * Read next feature of the report field by field, holding no more than a single element in memory
+     *
+     * @return false if there are no more features
+     */
+    private static boolean readFeature(JsonParser parser, FieldConsumer header, ElementConsumer elements) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_ARRAY && "elements".equals(field)) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    elements.accept(MAPPER.readTree(parser));
+                }
+            } else {
+                header.accept(field, MAPPER.readTree(parser));
+            }
+        }
+        return true;
+    }
+
+    private interface FieldConsumer {
+
+        void accept(String field, JsonNode value);
+    }
+
+    private interface ElementConsumer {
+
+        void accept(JsonNode element) throws IOException;
+    }
+
+    /**
+     * Replays elements of a single feature as test cases
+     */
+    private class FeatureReplay {
+
+        private final URI uri;
+        private JsonNode background;
+
+        FeatureReplay(URI uri) {
+            this.uri = uri;
+        }
+
+        void element(JsonNode element) {
+            if ("background".equals(element.path("type").asText())) {
+                // background results are reported as a separate element right before each scenario
+                background = element;
+                return;
+            }
+            if (element.hasNonNull("start_timestamp")) {
+                now = Instant.parse(element.get("start_timestamp").asText());
+            }
+            ImportedTestCase testCase = new ImportedTestCase(uri, element);
+            List<JsonNode> results = new ArrayList<>();
+            addHooks(testCase, element.path("before"), HookType.BEFORE, results);
+            if (background != null) {
+                addHooks(testCase, background.path("before"), HookType.BEFORE, results);
+                addSteps(testCase, background, results);
+                background = null;
+            }
+            addSteps(testCase, element, results);
+            addHooks(testCase, element.path("after"), HookType.AFTER, results);
+
+            publisher.send(new TestCaseStarted(now, testCase));
+            Status status = Status.PASSED;
+            Duration duration = Duration.ZERO;
+            for (int i = 0; i < results.size(); i++) {
+                TestStep step = testCase.getTestSteps().get(i);
+                JsonNode node = results.get(i);
+                Result result = toResult(node.path("result"));
+                publisher.send(new TestStepStarted(now, testCase, step));
+                for (JsonNode output : node.path("output")) {
+                    publisher.send(new WriteEvent(now, testCase, output.asText()));
+                }
+                for (JsonNode embedding : node.path("embeddings")) {
+                    publisher.send(new EmbedEvent(now,
+                            testCase,
+                            Base64.getMimeDecoder().decode(embedding.path("data").asText()),
+                            embedding.path("mime_type").asText(null),
+                            embedding.path("name").asText(null)
+                    ));
+                }
+                now = now.plus(result.getDuration());
+                publisher.send(new TestStepFinished(now, testCase, step, result));
+                if (result.getStatus() != Status.UNUSED && result.getStatus().ordinal() > status.ordinal()) {
+                    status = result.getStatus();
+                }
+                duration = duration.plus(result.getDuration());
+            }
+            publisher.send(new TestCaseFinished(now, testCase, new Result(status, duration, null)));
+        }
+
+        private void addSteps(ImportedTestCase testCase, JsonNode element, List<JsonNode> results) {
+            for (JsonNode step : element.path("steps")) {
+                addHooks(testCase, step.path("before"), HookType.BEFORE_STEP, results);
+                testCase.testSteps.add(new ImportedPickleStep(uri, step));
+                results.add(step);
+                addHooks(testCase, step.path("after"), HookType.AFTER_STEP, results);
+            }
+        }
+
+        private void addHooks(ImportedTestCase testCase, JsonNode hooks, HookType hookType, List<JsonNode> results) {
+            for (JsonNode hook : hooks) {
+                testCase.testSteps.add(new ImportedHook(hookType, hook.path("match").path("location").asText(null)));
+                results.add(hook);
+            }
+        }
+    }
+
+    private static Result toResult(JsonNode result) {
+        Status status;
+        try {
+            status = Status.valueOf(result.path("status").asText("undefined").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            status = Status.UNDEFINED;
+        }
+        Duration duration = Duration.ofNanos(result.path("duration").asLong(0L));
+        String error = result.path("error_message").asText(null);
+        return new Result(status, duration, error == null ? null : new ImportedError(error));
+    }
+
+    /**
+     * Error of a step, known only by the message Cucumber reported it with
+     */
+    private static class ImportedError extends Throwable {
+
+        private static final long serialVersionUID = 1L;
+
+        ImportedError(String message) {
+            super(message, null, false, false);
+        }
+
+        @Override
+        public String toString() {
+            return getMessage();
+        }
+    }
+
+    private static class ImportedTestCase implements TestCase {
+
+        private final URI uri;
+        private final String keyword;
+        private final String name;
+        private final int line;
+        private final List<String> tags;
+        private final List<TestStep> testSteps = new ArrayList<>();
+        private final UUID id = UUID.randomUUID();
+
+        ImportedTestCase(URI uri, JsonNode element) {
+            this.uri = uri;
+            keyword = element.path("keyword").asText();
+            name = element.path("name").asText();
+            line = element.path("line").asInt();
+            List<String> elementTags = new ArrayList<>();
+            for (JsonNode tag : element.path("tags")) {
+                elementTags.add(tag.path("name").asText());
+            }
+            tags = Collections.unmodifiableList(elementTags);
+        }
+
+        @Override
+        public Integer getLine() {
+            return line;
+        }
+
+        @Override
+        public String getKeyword() {
+            return keyword;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        @Deprecated
+        public String getScenarioDesignation() {
+            return uri + ":" + line + " # " + keyword + ": " + name;
+        }
+
+        @Override
+        public List<String> getTags() {
+            return tags;
+        }
+
+        @Override
+        public List<TestStep> getTestSteps() {
+            return testSteps;
+        }
+
+        @Override
+        public URI getUri() {
+            return uri;
+        }
+
+        @Override
+        public UUID getId() {
+            return id;
+        }
+    }
+
+    private static class ImportedStep implements Step {
+
+        private final String keyword;
+        private final String text;
+        private final int line;
+        private final StepArgument argument;
+
+        ImportedStep(JsonNode step) {
+            keyword = step.path("keyword").asText();
+            text = step.path("name").asText();
+            line = step.path("line").asInt();
+            if (step.has("doc_string")) {
+                argument = new ImportedDocString(step.get("doc_string"));
+            } else if (step.has("rows")) {
+                argument = new ImportedDataTable(step.get("rows"), line + 1);
+            } else {
+                argument = null;
+            }
+        }
+
+        @Override
+        public StepArgument getArgument() {
+            return argument;
+        }
+
+        @Override
+        public String getKeyWord() {
+            return keyword;
+        }
+
+        @Override
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public int getLine() {
+            return line;
+        }
+    }
+
+    private static class ImportedPickleStep implements PickleStepTestStep {
+
+        private final URI uri;
+        private final ImportedStep step;
+        private final String codeLocation;
+
+        ImportedPickleStep(URI uri, JsonNode step) {
+            this.uri = uri;
+            this.step = new ImportedStep(step);
+            codeLocation = step.path("match").path("location").asText(null);
+        }
+
+        @Override
+        public String getPattern() {
+            return null;
+        }
+
+        @Override
+        public Step getStep() {
+            return step;
+        }
+
+        @Override
+        public List<Argument> getDefinitionArgument() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        @Deprecated
+        public StepArgument getStepArgument() {
+            return step.argument;
+        }
+
+        @Override
+        @Deprecated
+        public int getStepLine() {
+            return step.line;
+        }
+
+        @Override
+        public URI getUri() {
+            return uri;
+        }
+
+        @Override
+        @Deprecated
+        public String getStepText() {
+            return step.text;
+        }
+
+        @Override
+        public String getCodeLocation() {
+            return codeLocation;
+        }
+    }
+
+    private static class ImportedHook implements HookTestStep {
+
+        private final HookType hookType;
+        private final String codeLocation;
+
+        ImportedHook(HookType hookType, String codeLocation) {
+            this.hookType = hookType;
+            this.codeLocation = codeLocation;
+        }
+
+        @Override
+        public HookType getHookType() {
+            return hookType;
+        }
+
+        @Override
+        public String getCodeLocation() {
+            return codeLocation;
+        }
+    }
+
+    private static class ImportedDocString implements DocStringArgument {
+
+        private final String content;
+        private final String contentType;
+        private final int line;
+
+        ImportedDocString(JsonNode docString) {
+            content = docString.path("value").asText();
+            contentType = docString.path("content_type").asText(null);
+            line = docString.path("line").asInt();
+        }
+
+        @Override
+        public String getContent() {
+            return content;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public int getLine() {
+            return line;
+        }
+    }
+
+    private static class ImportedDataTable implements DataTableArgument {
+
+        private final List<List<String>> cells = new ArrayList<>();
+        private final int line;
+
+        ImportedDataTable(JsonNode rows, int line) {
+            for (JsonNode row : rows) {
+                List<String> rowCells = new ArrayList<>();
+                for (JsonNode cell : row.path("cells")) {
+                    rowCells.add(cell.asText());
+                }
+                cells.add(rowCells);
+            }
+            this.line = line;
+        }
+
+        @Override
+        public List<List<String>> cells() {
+            return cells;
+        }
+
+        @Override
+        public int getLine() {
+            return line;
+        }
+    }
+
+    /**
+     * Delivers replayed events to the handlers registered for their exact class
+     */
+    private static class ImporterEventPublisher implements EventPublisher {
+
+        private final Map<Class<?>, List<EventHandler<Event>>> handlers = new HashMap<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends Event> void registerHandlerFor(Class<T> eventType, EventHandler<T> handler) {
+            handlers.computeIfAbsent(eventType, t -> new ArrayList<>()).add((EventHandler<Event>) handler);
+        }
+
+        @Override
+        public <T extends Event> void removeHandlerFor(Class<T> eventType, EventHandler<T> handler) {
+            List<EventHandler<Event>> registered = handlers.get(eventType);
+            if (registered != null) {
+                registered.remove(handler);
+            }
+        }
+
+        void send(Event event) {
+            List<EventHandler<Event>> registered = handlers.get(event.getClass());
+            if (registered != null) {
+                for (EventHandler<Event> handler : registered) {
+                    handler.receive(event);
+                }
+            }
+        }
+    }
+}
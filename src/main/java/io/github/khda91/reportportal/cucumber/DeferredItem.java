@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.listeners.Statuses;
+import com.epam.reportportal.service.Launch;
+import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
+import io.reactivex.Maybe;
+import io.reactivex.MaybeObserver;
+import io.reactivex.subjects.MaybeSubject;
+
+import java.util.Date;
+
+/**
+ * Test item which is started only once its outcome is known.
+ * <p>
+ * The item ID is available right away, so logs can be emitted to the item while it is running.
+ * Once the item is finished it is either reported with its original start and end time, or skipped,
+ * and then its logs are attached to another item.
+ */
+class DeferredItem {
+
+    private final StartTestItemRQ rq;
+    private final Id id = new Id();
+    private String status;
+    private Date endTime;
+
+    DeferredItem(StartTestItemRQ rq) {
+        this.rq = rq;
+    }
+
+    /**
+     * @return ID of the reported item, or of the item its logs are redirected to
+     */
+    Id getId() {
+        return id;
+    }
+
+    String getName() {
+        return rq.getName();
+    }
+
+    Date getStartTime() {
+        return rq.getStartTime();
+    }
+
+    /**
+     * Record outcome of the item to report it with later
+     *
+     * @param status  item status
+     * @param endTime item end time
+     */
+    void finish(String status, Date endTime) {
+        this.status = status;
+        this.endTime = endTime;
+    }
+
+    boolean isPassed() {
+        return Statuses.PASSED.equals(status);
+    }
+
+    /**
+     * Start the item, it is finished by the caller
+     *
+     * @param launch   launch to report the item to
+     * @param parentId parent item ID
+     * @return ID of the started item
+     */
+    Maybe<String> start(Launch launch, Maybe<String> parentId) {
+        Maybe<String> itemId = Utils.startTestItem(launch, parentId, rq);
+        itemId.subscribe(id.subject::onSuccess, id.subject::onError, id.subject::onComplete);
+        return itemId;
+    }
+
+    /**
+     * Start and finish the item with its recorded outcome
+     *
+     * @param launch   launch to report the item to
+     * @param parentId parent item ID
+     */
+    void report(Launch launch, Maybe<String> parentId) {
+        Utils.finishTestItem(launch, start(launch, parentId), status, endTime);
+    }
+
+    /**
+     * Do not report the item
+     *
+     * @param target item to attach logs of this item to
+     */
+    void skip(Maybe<String> target) {
+        target.subscribe(id.subject::onSuccess, id.subject::onError, id.subject::onComplete);
+    }
+
+    /**
+     * ID of a deferred item, known only once the item is reported or skipped
+     */
+    static final class Id extends Maybe<String> {
+
+        private final MaybeSubject<String> subject = MaybeSubject.create();
+
+        /**
+         * @return true if the item is reported or skipped, so the ID is known or known to be missing
+         */
+        boolean isResolved() {
+            return subject.hasValue() || subject.hasComplete() || subject.hasThrowable();
+        }
+
+        @Override
+        protected void subscribeActual(MaybeObserver<? super String> observer) {
+            subject.subscribe(observer);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import io.cucumber.core.internal.gherkin.ast.Background;
+import io.cucumber.core.internal.gherkin.ast.Examples;
+import io.cucumber.core.internal.gherkin.ast.Feature;
+import io.cucumber.core.internal.gherkin.ast.Scenario;
+import io.cucumber.core.internal.gherkin.ast.ScenarioDefinition;
+import io.cucumber.core.internal.gherkin.ast.ScenarioOutline;
+import io.cucumber.core.internal.gherkin.ast.Step;
+import io.cucumber.core.internal.gherkin.ast.TableRow;
+import io.cucumber.core.internal.gherkin.ast.Tag;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable projection of a parsed feature holding only what the reporter needs, shared by all scenarios of the feature.
+ * <p>
+ * Test case and step lines are kept in primitive arrays and resolved by binary search, they are sorted already
+ * as the parser yields children in document order. Background step lines are kept in a bitmap. Keywords are interned,
+ * tag sets are built once per scenario or examples block, and the Gherkin AST is not referenced once the index is built.
+ */
+final class FeatureIndex {
+
+    private final String keyword;
+    private final String name;
+    private final Set<String> tags;
+    /* upper cased background keyword with colon infix, or null if the feature has no background */
+    private final String backgroundPrefix;
+    private final BitSet backgroundLines;
+    private final int[] stepLines;
+    private final String[] stepKeywords;
+    private final int[] caseLines;
+    private final Definition[] caseScenarios;
+    private final int[] caseExampleRows;
+    private final Set<String>[] caseTags;
+
+    private FeatureIndex(String keyword, String name) {
+        this.keyword = keyword;
+        this.name = name;
+        tags = Collections.emptySet();
+        backgroundPrefix = null;
+        backgroundLines = new BitSet();
+        stepLines = new int[0];
+        stepKeywords = new String[0];
+        caseLines = new int[0];
+        caseScenarios = new Definition[0];
+        caseExampleRows = new int[0];
+        caseTags = newTagSets(0);
+    }
+
+    private FeatureIndex(Feature feature, int stepCount, int caseCount) {
+        keyword = feature.getKeyword().intern();
+        name = feature.getName();
+        tags = tagSet(feature.getTags(), Collections.<Tag>emptyList(), Collections.<Tag>emptyList());
+        stepLines = new int[stepCount];
+        stepKeywords = new String[stepCount];
+        caseLines = new int[caseCount];
+        caseScenarios = new Definition[caseCount];
+        caseExampleRows = new int[caseCount];
+        caseTags = newTagSets(caseCount);
+        backgroundLines = new BitSet();
+        String prefix = null;
+        int steps = 0;
+        int cases = 0;
+        for (ScenarioDefinition definition : feature.getChildren()) {
+            for (Step step : definition.getSteps()) {
+                stepLines[steps] = step.getLocation().getLine();
+                stepKeywords[steps++] = step.getKeyword().intern();
+            }
+            if (definition instanceof Background) {
+                prefix = (definition.getKeyword().toUpperCase() + AbstractReporter.COLON_INFIX).intern();
+                for (Step step : definition.getSteps()) {
+                    backgroundLines.set(step.getLocation().getLine());
+                }
+            } else if (definition instanceof ScenarioOutline) {
+                ScenarioOutline outline = (ScenarioOutline) definition;
+                Definition scenario = new Definition(outline, true);
+                int row = 0;
+                for (Examples examples : outline.getExamples()) {
+                    if (examples.getTableBody() == null) {
+                        continue;
+                    }
+                    Set<String> examplesTags = tagSet(feature.getTags(), outline.getTags(), examples.getTags());
+                    for (TableRow tableRow : examples.getTableBody()) {
+                        caseLines[cases] = tableRow.getLocation().getLine();
+                        caseScenarios[cases] = scenario;
+                        caseExampleRows[cases] = row++;
+                        caseTags[cases++] = examplesTags;
+                    }
+                }
+            } else {
+                caseLines[cases] = definition.getLocation().getLine();
+                caseScenarios[cases] = new Definition(definition, false);
+                caseExampleRows[cases] = -1;
+                caseTags[cases++] = tagSet(feature.getTags(), ((Scenario) definition).getTags(),
+                        Collections.<Tag>emptyList()
+                );
+            }
+        }
+        backgroundPrefix = prefix;
+    }
+
+    /**
+     * Build index for a parsed feature
+     *
+     * @param feature Gherkin feature
+     * @return feature index
+     */
+    static FeatureIndex build(Feature feature) {
+        int stepCount = 0;
+        int caseCount = 0;
+        for (ScenarioDefinition definition : feature.getChildren()) {
+            stepCount += definition.getSteps().size();
+            if (definition instanceof ScenarioOutline) {
+                for (Examples examples : ((ScenarioOutline) definition).getExamples()) {
+                    caseCount += examples.getTableBody() == null ? 0 : examples.getTableBody().size();
+                }
+            } else if (!(definition instanceof Background)) {
+                caseCount++;
+            }
+        }
+        return new FeatureIndex(feature, stepCount, caseCount);
+    }
+
+    /**
+     * Index of a feature which cannot be parsed, scenarios and steps of such a feature are described by Cucumber pickles
+     *
+     * @param name feature name to report
+     * @return index without scenarios and steps
+     */
+    static FeatureIndex empty(String name) {
+        return new FeatureIndex("Feature", name);
+    }
+
+    String getKeyword() {
+        return keyword;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Set<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * @return number of test cases the feature expands into: one per scenario and one per outline example row
+     */
+    int getScenarioCount() {
+        return caseLines.length;
+    }
+
+    /**
+     * Resolve a test case line
+     *
+     * @param line test case line
+     * @return position of the test case in the index or -1 if there is no scenario or example row on the line
+     */
+    int getEntry(int line) {
+        int position = Arrays.binarySearch(caseLines, line);
+        return position < 0 ? -1 : position;
+    }
+
+    Definition getScenario(int entry) {
+        return caseScenarios[entry];
+    }
+
+    /**
+     * @param entry position of the test case
+     * @return zero-based position of the example row across all examples of the outline, -1 for a plain scenario
+     */
+    int getExampleRow(int entry) {
+        return caseExampleRows[entry];
+    }
+
+    /**
+     * @param entry position of the test case
+     * @return tags of the test case as written in the feature: feature, scenario and examples tags
+     */
+    Set<String> getTags(int entry) {
+        return caseTags[entry];
+    }
+
+    /**
+     * @param line step line
+     * @return step keyword or null if there is no step on the line
+     */
+    String getStepKeyword(int line) {
+        int position = Arrays.binarySearch(stepLines, line);
+        return position < 0 ? null : stepKeywords[position];
+    }
+
+    /**
+     * @param line step line
+     * @return background keyword prefix if the step on the line belongs to the background, empty string otherwise
+     */
+    String getStepPrefix(int line) {
+        return backgroundPrefix != null && backgroundLines.get(line) ? backgroundPrefix : "";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<String>[] newTagSets(int size) {
+        return (Set<String>[]) new Set<?>[size];
+    }
+
+    private static Set<String> tagSet(List<Tag> featureTags, List<Tag> scenarioTags, List<Tag> examplesTags) {
+        Set<String> result = new LinkedHashSet<>();
+        for (List<Tag> tags : Arrays.asList(featureTags, scenarioTags, examplesTags)) {
+            for (Tag tag : tags) {
+                result.add(tag.getName());
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Scenario or scenario outline, shared by all example rows of the outline
+     */
+    static final class Definition {
+
+        private final String keyword;
+        private final String name;
+        private final int line;
+        private final boolean outline;
+
+        private Definition(ScenarioDefinition definition, boolean outline) {
+            this(definition.getKeyword().intern(), definition.getName(), definition.getLocation().getLine(), outline);
+        }
+
+        Definition(String keyword, String name, int line, boolean outline) {
+            this.keyword = keyword;
+            this.name = name;
+            this.line = line;
+            this.outline = outline;
+        }
+
+        String getKeyword() {
+            return keyword;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getLine() {
+            return line;
+        }
+
+        boolean isOutline() {
+            return outline;
+        }
+    }
+}
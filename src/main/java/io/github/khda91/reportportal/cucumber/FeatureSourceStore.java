@@ -0,0 +1,200 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps feature sources between the moment they are read and the moment they are parsed.
+ * <p>
+ * Sources can be held as plain strings, deflated on heap or deflated off heap. A source is dropped as soon
+ * as it is parsed, the feature index holds all the reporter needs. Once the retained size exceeds the memory
+ * budget, further sources are parsed as they are read rather than kept, see {@link GherkinDocumentCache}.
+ */
+class FeatureSourceStore {
+
+    static final String MODE_PROPERTY = "rp.cucumber.source.store";
+
+    static final String BUDGET_PROPERTY = "rp.cucumber.source.store.budget";
+
+    private static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    enum Mode {
+        HEAP,
+        COMPRESSED,
+        OFF_HEAP
+    }
+
+    private final Mode mode;
+    private final long budget;
+    private final Map<String, Entry> sources = new ConcurrentHashMap<>();
+    private final AtomicLong retained = new AtomicLong();
+
+    FeatureSourceStore(Mode mode, long budget) {
+        this.mode = mode;
+        this.budget = budget;
+    }
+
+    static FeatureSourceStore fromParameters() {
+        return new FeatureSourceStore(ReporterParameters.getEnum(MODE_PROPERTY, Mode.class, Mode.HEAP),
+                ReporterParameters.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET));
+    }
+
+    void put(String uri, String source) {
+        Entry entry = new Entry(mode, source);
+        Entry previous = sources.put(uri, entry);
+        if (previous != null) {
+            retained.addAndGet(-previous.size);
+        }
+        retained.addAndGet(entry.size);
+    }
+
+    /**
+     * @param uri feature URI
+     * @return feature source or null if it was never read or is already released
+     */
+    String get(String uri) {
+        Entry entry = sources.get(uri);
+        return entry == null ? null : entry.getSource();
+    }
+
+    /**
+     * Drop the source once it is parsed
+     *
+     * @param uri feature URI
+     */
+    void parsed(String uri) {
+        release(uri);
+    }
+
+    /**
+     * Drop the source of a finished feature
+     *
+     * @param uri feature URI
+     */
+    void release(String uri) {
+        Entry entry = sources.remove(uri);
+        if (entry != null) {
+            retained.addAndGet(-entry.size);
+        }
+    }
+
+    /**
+     * Drop all sources, e.g. of features which were never run
+     */
+    void clear() {
+        for (String uri : sources.keySet()) {
+            release(uri);
+        }
+    }
+
+    /**
+     * @return true if the retained size exceeds the memory budget
+     */
+    boolean isOverBudget() {
+        return retained.get() > budget;
+    }
+
+    private static class Entry {
+
+        private final String plain;
+        private final byte[] compressed;
+        private final ByteBuffer offHeap;
+        private final int length;
+        private final long size;
+
+        Entry(Mode mode, String source) {
+            if (mode == Mode.HEAP) {
+                plain = source;
+                compressed = null;
+                offHeap = null;
+                length = source.length();
+                size = 2L * source.length();
+                return;
+            }
+            byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+            byte[] deflated = deflate(bytes);
+            plain = null;
+            length = bytes.length;
+            size = deflated.length;
+            if (mode == Mode.OFF_HEAP) {
+                compressed = null;
+                offHeap = ByteBuffer.allocateDirect(deflated.length);
+                offHeap.put(deflated).flip();
+            } else {
+                compressed = deflated;
+                offHeap = null;
+            }
+        }
+
+        String getSource() {
+            if (plain != null) {
+                return plain;
+            }
+            byte[] deflated = compressed;
+            if (deflated == null) {
+                deflated = new byte[offHeap.remaining()];
+                offHeap.duplicate().get(deflated);
+            }
+            return inflate(deflated, length);
+        }
+
+        private static byte[] deflate(byte[] source) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(source);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, source.length / 4));
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private static String inflate(byte[] deflated, int length) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(deflated);
+                byte[] result = new byte[length];
+                int read = 0;
+                while (read < length && !inflater.finished()) {
+                    int inflated = inflater.inflate(result, read, length - read);
+                    if (inflated == 0 && inflater.needsInput()) {
+                        break;
+                    }
+                    read += inflated;
+                }
+                return new String(result, 0, read, StandardCharsets.UTF_8);
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Stored feature source is corrupted", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
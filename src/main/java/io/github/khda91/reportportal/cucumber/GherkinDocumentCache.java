@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import io.cucumber.core.internal.gherkin.AstBuilder;
+import io.cucumber.core.internal.gherkin.GherkinDialectProvider;
+import io.cucumber.core.internal.gherkin.Parser;
+import io.cucumber.core.internal.gherkin.ParserException;
+import io.cucumber.core.internal.gherkin.TokenMatcher;
+import io.cucumber.core.internal.gherkin.ast.Feature;
+import io.cucumber.core.internal.gherkin.ast.GherkinDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rp.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Parses and indexes every feature source exactly once per run.
+ * <p>
+ * Parsing is started on a background pool as soon as the source is read, so by the time
+ * the first scenario of a feature starts its document is usually ready. If parsing falls behind
+ * and the sources waiting for it exceed the budget of their store, a source is parsed on the
+ * thread which read it instead. Parsers are reused per thread and all of them share a single
+ * dialect provider.
+ */
+class GherkinDocumentCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GherkinDocumentCache.class);
+
+    private static final GherkinDialectProvider DIALECT_PROVIDER = new GherkinDialectProvider();
+
+    private static final ThreadLocal<Parser<GherkinDocument>> PARSER = ThreadLocal.withInitial(() -> new Parser<>(new AstBuilder()));
+
+    private static final ExecutorService PARSE_EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+            new ThreadFactoryBuilder().setNameFormat("rp-gherkin-parser-%d").setDaemon(true).build());
+
+    private static final Map<String, CompletableFuture<FeatureIndex>> FEATURES = new ConcurrentHashMap<>();
+
+    private GherkinDocumentCache() {
+        throw new AssertionError("No instances should exist for the class!");
+    }
+
+    /**
+     * Schedule parsing of a feature source, unless it is already parsed or being parsed
+     *
+     * @param uri     feature URI
+     * @param sources store to take the feature source from
+     */
+    static void parseAsync(String uri, FeatureSourceStore sources) {
+        if (sources.isOverBudget()) {
+            getFeatureIndex(uri, sources);
+            return;
+        }
+        FEATURES.computeIfAbsent(uri, u -> CompletableFuture.supplyAsync(() -> parse(u, sources), PARSE_EXECUTOR));
+    }
+
+    /**
+     * Return index of the parsed feature, waiting for a scheduled parsing or parsing on the calling thread if it was never scheduled
+     *
+     * @param uri     feature URI
+     * @param sources store to take the feature source from, used only if the feature was not scheduled for parsing yet
+     * @return feature index, empty if the source cannot be parsed
+     */
+    static FeatureIndex getFeatureIndex(String uri, FeatureSourceStore sources) {
+        return FEATURES.computeIfAbsent(uri, u -> CompletableFuture.completedFuture(parse(u, sources))).join();
+    }
+
+    /**
+     * Drop parsed feature once it is not needed anymore
+     *
+     * @param uri feature URI
+     */
+    static void release(String uri) {
+        FEATURES.remove(uri);
+    }
+
+    /**
+     * Drop all parsed features once the run is finished, e.g. of features which were never run
+     */
+    static void clear() {
+        FEATURES.clear();
+    }
+
+    private static FeatureIndex parse(String uri, FeatureSourceStore sources) {
+        String source = sources.get(uri);
+        if (source == null) {
+            throw new IllegalStateException("Source of feature " + uri + " is not available");
+        }
+        FeatureIndex featureIndex = parse(uri, source);
+        sources.parsed(uri);
+        return featureIndex;
+    }
+
+    private static FeatureIndex parse(String uri, String source) {
+        GherkinDocument gherkinDocument;
+        try {
+            gherkinDocument = PARSER.get().parse(source, new TokenMatcher(DIALECT_PROVIDER));
+        } catch (ParserException e) {
+            LOGGER.warn("Unable to parse feature " + uri + ", its scenarios are reported as Cucumber runs them", e);
+            return FeatureIndex.empty(uri);
+        }
+        Feature feature = gherkinDocument.getFeature();
+        return feature == null ? FeatureIndex.empty(uri) : FeatureIndex.build(feature);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.cucumber.core.internal.gherkin.GherkinDialect;
+import io.cucumber.core.internal.gherkin.GherkinDialectProvider;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Outline of a feature read from Cucumber JSON report.
+ * <p>
+ * The report does not contain feature sources, so a Gherkin source is rebuilt from the keywords, names and
+ * lines of the reported elements. Every scenario, step and example row is put on the line it is reported at,
+ * so the reporter resolves test cases against the rebuilt source exactly as against the original one.
+ * Only the executed scenarios and example rows are known, others are not part of the rebuilt source.
+ * The report keeps only the names of expanded example rows, so an outline is named after its first reported row.
+ */
+class ImportedFeature {
+
+    static final String OUTLINE_ID_INFIX = ";;";
+
+    private static final GherkinDialectProvider DIALECT_PROVIDER = new GherkinDialectProvider();
+
+    private static final String STEP_INDENT = "    ";
+
+    private static final String TABLE_ROW = "      | - |";
+
+    private final SortedMap<Integer, String> lines = new TreeMap<>();
+    private final Map<String, Outline> outlines = new LinkedHashMap<>();
+
+    private URI uri;
+    private String keyword;
+    private String name = "";
+    private int line = 1;
+    private Instant startTime;
+
+    /**
+     * Account a feature field other than its elements
+     *
+     * @param field field name
+     * @param value field value
+     */
+    void header(String field, JsonNode value) {
+        switch (field) {
+            case "uri":
+                uri = toUri(value.asText());
+                break;
+            case "keyword":
+                keyword = value.asText();
+                break;
+            case "name":
+                name = value.asText();
+                break;
+            case "line":
+                line = value.asInt();
+                break;
+            case "tags":
+                for (JsonNode tag : value) {
+                    int tagLine = tag.path("location").path("line").asInt(tag.path("line").asInt());
+                    lines.merge(tagLine, tag.path("name").asText(), (tags, next) -> tags + " " + next);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Account a reported background or scenario
+     *
+     * @param element element of the feature
+     */
+    void element(JsonNode element) {
+        if (startTime == null && element.hasNonNull("start_timestamp")) {
+            startTime = Instant.parse(element.get("start_timestamp").asText());
+        }
+        String id = element.path("id").asText("");
+        if (!id.contains(OUTLINE_ID_INFIX)) {
+            lines.putIfAbsent(element.path("line").asInt(), "  " + element.path("keyword").asText() + ": " + element.path("name").asText());
+            addSteps(element, lines);
+            return;
+        }
+        JsonNode steps = element.path("steps");
+        StringBuilder key = new StringBuilder(id.substring(0, id.indexOf(OUTLINE_ID_INFIX)));
+        for (JsonNode step : steps) {
+            key.append(':').append(step.path("line").asInt());
+        }
+        Outline outline = outlines.computeIfAbsent(key.toString(), k -> new Outline(element));
+        addSteps(element, outline.steps);
+        outline.rows.add(element.path("line").asInt());
+    }
+
+    URI getUri() {
+        return uri;
+    }
+
+    /**
+     * @return start time of the first reported scenario or null if the report does not contain it
+     */
+    Instant getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Build Gherkin source of the feature, must be called after all fields and elements are accounted
+     *
+     * @return feature source
+     */
+    String buildSource() {
+        GherkinDialect dialect = findDialect(keyword);
+        SortedMap<Integer, String> source = new TreeMap<>(lines);
+        source.put(line, (keyword == null ? dialect.getFeatureKeywords().get(0) : keyword) + ": " + name);
+        for (Outline outline : outlines.values()) {
+            outline.addTo(source, dialect);
+        }
+        if (!dialect.getLanguage().equals(DIALECT_PROVIDER.getDefaultDialect().getLanguage())) {
+            source.putIfAbsent(1, "# language: " + dialect.getLanguage());
+        }
+        StringBuilder result = new StringBuilder();
+        int last = source.isEmpty() ? 0 : source.lastKey();
+        for (int number = 1; number <= last; number++) {
+            String text = source.get(number);
+            if (text != null) {
+                result.append(text);
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    private static void addSteps(JsonNode element, Map<Integer, String> target) {
+        for (JsonNode step : element.path("steps")) {
+            target.putIfAbsent(step.path("line").asInt(), STEP_INDENT + step.path("keyword").asText() + step.path("name").asText());
+        }
+    }
+
+    private static GherkinDialect findDialect(String featureKeyword) {
+        GherkinDialect defaultDialect = DIALECT_PROVIDER.getDefaultDialect();
+        if (featureKeyword == null || defaultDialect.getFeatureKeywords().contains(featureKeyword)) {
+            return defaultDialect;
+        }
+        for (String language : DIALECT_PROVIDER.getLanguages()) {
+            GherkinDialect dialect = DIALECT_PROVIDER.getDialect(language, null);
+            if (dialect.getFeatureKeywords().contains(featureKeyword)) {
+                return dialect;
+            }
+        }
+        return defaultDialect;
+    }
+
+    private static URI toUri(String uri) {
+        try {
+            URI result = URI.create(uri);
+            if (result.getScheme() != null) {
+                return result;
+            }
+        } catch (IllegalArgumentException e) {
+            // not a URI, but a path relative to the working directory
+        }
+        return Paths.get(uri).toUri();
+    }
+
+    /**
+     * Scenario outline rebuilt from its expanded example rows
+     */
+    private static class Outline {
+
+        private final String keyword;
+        private final String name;
+        private final SortedMap<Integer, String> steps = new TreeMap<>();
+        private final SortedSet<Integer> rows = new TreeSet<>();
+
+        Outline(JsonNode element) {
+            keyword = element.path("keyword").asText();
+            name = element.path("name").asText();
+        }
+
+        void addTo(SortedMap<Integer, String> source, GherkinDialect dialect) {
+            int first = steps.isEmpty() ? rows.first() - 2 : steps.firstKey();
+            source.putIfAbsent(first - 1, "  " + keyword + ": " + name);
+            source.putAll(steps);
+            String examples = "    " + dialect.getExamplesKeywords().get(0) + ":";
+            int previous = 0;
+            for (int row : rows) {
+                // blank lines and comments may separate rows of a table, a new table takes at least two more lines
+                if (previous == 0 || row - previous > 2) {
+                    source.putIfAbsent(row - 2, examples);
+                    source.putIfAbsent(row - 1, TABLE_ROW);
+                }
+                source.put(row, TABLE_ROW);
+                previous = row;
+            }
+        }
+    }
+}
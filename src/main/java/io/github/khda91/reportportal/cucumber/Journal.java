@@ -0,0 +1,325 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Append-only journal of Report Portal operations.
+ * <p>
+ * The journal is a directory of segment files which are memory-mapped while they are written or read.
+ * Every record is prefixed with its length, the length is written after the record body, so a record
+ * interrupted by a crash is never visible. Zero length marks the end of a segment.
+ */
+final class Journal {
+
+    static final String SEGMENT_PREFIX = "segment-";
+
+    static final String SEGMENT_SUFFIX = ".rpj";
+
+    static final byte START_LAUNCH = 1;
+
+    static final byte START_ITEM = 2;
+
+    static final byte FINISH_ITEM = 3;
+
+    static final byte LOG = 4;
+
+    static final byte FINISH_LAUNCH = 5;
+
+    /* log of an item which already exists in Report Portal, its ID is a Report Portal ID */
+    static final byte ITEM_LOG = 6;
+
+    /* requests are stored as JSON, so the journal does not depend on the client serialization */
+    static final ObjectMapper MAPPER = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private Journal() {
+        throw new AssertionError("No instances should exist for the class!");
+    }
+
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                segments.add(segment);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static int segmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static Path segmentPath(Path directory, int index) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Single journal operation
+     */
+    static class Record {
+
+        private final long position;
+        private final byte type;
+        private final String id;
+        private final String parentId;
+        private final byte[] request;
+        private final byte[] content;
+        private final String contentType;
+
+        Record(long position, byte type, String id, String parentId, byte[] request, byte[] content, String contentType) {
+            this.position = position;
+            this.type = type;
+            this.id = id;
+            this.parentId = parentId;
+            this.request = request;
+            this.content = content;
+            this.contentType = contentType;
+        }
+
+        /**
+         * @return position of the record in the journal, unique across all runs written to the same directory
+         */
+        long getPosition() {
+            return position;
+        }
+
+        byte getType() {
+            return type;
+        }
+
+        /**
+         * @return journal ID of the launch or item the operation is applied to
+         */
+        String getId() {
+            return id;
+        }
+
+        /**
+         * @return journal ID of the parent item or null
+         */
+        String getParentId() {
+            return parentId;
+        }
+
+        /**
+         * @return serialized request
+         */
+        byte[] getRequest() {
+            return request;
+        }
+
+        /**
+         * @return attachment content or null
+         */
+        byte[] getContent() {
+            return content;
+        }
+
+        /**
+         * @return attachment content type or null, it is not a part of the serialized log request
+         */
+        String getContentType() {
+            return contentType;
+        }
+    }
+
+    /**
+     * Appends records to new segments after the existing ones.
+     * <p>
+     * Several writers, e.g. of different JVMs, may share a directory: every segment is claimed by creating its
+     * file exclusively, so a writer skips the indexes taken by the others and never overwrites their records.
+     */
+    static class Writer implements Closeable {
+
+        private final Path directory;
+        private final int segmentSize;
+        private int segmentIndex;
+        private MappedByteBuffer segment;
+
+        Writer(Path directory, int segmentSize) throws IOException {
+            this.directory = Files.createDirectories(directory);
+            this.segmentSize = segmentSize;
+            List<Path> existing = listSegments(directory);
+            segmentIndex = existing.isEmpty() ? -1 : segmentIndex(existing.get(existing.size() - 1));
+        }
+
+        synchronized void append(byte type, String id, String parentId, byte[] request, byte[] content, String contentType) {
+            byte[] body = encode(type, id, parentId, request, content, contentType);
+            try {
+                if (segment == null || segment.remaining() < body.length + 4) {
+                    nextSegment(body.length + 4);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to create journal segment in " + directory, e);
+            }
+            int start = segment.position();
+            segment.position(start + 4);
+            segment.put(body);
+            segment.putInt(start, body.length);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (segment != null) {
+                segment.force();
+                segment = null;
+            }
+        }
+
+        private void nextSegment(int minSize) throws IOException {
+            close();
+            Path path;
+            while (true) {
+                path = segmentPath(directory, ++segmentIndex);
+                try {
+                    Files.createFile(path);
+                    break;
+                } catch (FileAlreadyExistsException e) {
+                    // claimed by another writer
+                }
+            }
+            // the mapping stays valid after the file is closed
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, minSize));
+            }
+        }
+
+        private static byte[] encode(byte type, String id, String parentId, byte[] request, byte[] content, String contentType) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + request.length + (content == null ? 0 : content.length));
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeByte(type);
+                writeBytes(out, id == null ? null : id.getBytes(StandardCharsets.UTF_8));
+                writeBytes(out, parentId == null ? null : parentId.getBytes(StandardCharsets.UTF_8));
+                writeBytes(out, request);
+                writeBytes(out, content);
+                writeBytes(out, contentType == null ? null : contentType.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(value.length);
+                out.write(value);
+            }
+        }
+    }
+
+    /**
+     * Reads records of all segments in the order they were written
+     */
+    static class Reader implements Iterator<Record> {
+
+        private final Iterator<Path> segments;
+        private MappedByteBuffer segment;
+        private long segmentBase;
+        private Record next;
+
+        Reader(Path directory) throws IOException {
+            segments = listSegments(directory).iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = readNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record result = next;
+            next = null;
+            return result;
+        }
+
+        private Record readNext() {
+            while (true) {
+                if (segment != null && segment.remaining() >= 4) {
+                    int position = segment.position();
+                    int length = segment.getInt();
+                    if (length > 0) {
+                        byte type = segment.get();
+                        String id = readString();
+                        String parentId = readString();
+                        byte[] request = readBytes();
+                        byte[] content = readBytes();
+                        String contentType = readString();
+                        segment.position(position + 4 + length);
+                        return new Record(segmentBase | position, type, id, parentId, request, content, contentType);
+                    }
+                }
+                if (!segments.hasNext()) {
+                    return null;
+                }
+                Path path = segments.next();
+                try (FileChannel channel = FileChannel.open(path)) {
+                    segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Unable to read journal segment " + path, e);
+                }
+                segmentBase = ((long) segmentIndex(path)) << 32;
+            }
+        }
+
+        private String readString() {
+            byte[] bytes = readBytes();
+            return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private byte[] readBytes() {
+            int length = segment.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            segment.get(bytes);
+            return bytes;
+        }
+    }
+}
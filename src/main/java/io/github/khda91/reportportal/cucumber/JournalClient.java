@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.restendpoint.http.MultiPartRequest;
+import com.epam.reportportal.service.ReportPortalClient;
+import com.epam.ta.reportportal.ws.model.BatchSaveOperatingRS;
+import com.epam.ta.reportportal.ws.model.EntryCreatedRS;
+import com.epam.ta.reportportal.ws.model.FinishExecutionRQ;
+import com.epam.ta.reportportal.ws.model.FinishTestItemRQ;
+import com.epam.ta.reportportal.ws.model.OperationCompletionRS;
+import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
+import com.epam.ta.reportportal.ws.model.item.ItemCreatedRS;
+import com.epam.ta.reportportal.ws.model.launch.LaunchResource;
+import com.epam.ta.reportportal.ws.model.launch.MergeLaunchesRQ;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRQ;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRS;
+import com.epam.ta.reportportal.ws.model.log.SaveLogRQ;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.reactivex.Maybe;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Report Portal client which appends every operation to a local {@link Journal} instead of sending it.
+ * <p>
+ * Launches and items get journal IDs immediately, so the test run never waits for Report Portal.
+ * The journal is uploaded afterwards by {@link JournalReplay}.
+ */
+class JournalClient implements ReportPortalClient {
+
+    static final String JOURNAL_PROPERTY = "rp.cucumber.journal";
+
+    static final String SEGMENT_SIZE_PROPERTY = "rp.cucumber.journal.segment.size";
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final Journal.Writer writer;
+
+    /* type of log records, logs of items started in Report Portal refer to them by Report Portal IDs */
+    private final byte logType;
+
+    /* journal IDs of different runs written to the same directory must not collide */
+    private final String idPrefix = UUID.randomUUID().toString() + "-";
+    private final AtomicLong ids = new AtomicLong();
+
+    JournalClient(Path directory, int segmentSize) throws IOException {
+        this(directory, segmentSize, Journal.LOG);
+    }
+
+    private JournalClient(Path directory, int segmentSize, byte logType) throws IOException {
+        writer = new Journal.Writer(directory, segmentSize);
+        this.logType = logType;
+    }
+
+    /**
+     * Create client which journals logs of items already started in Report Portal, see {@link Journal#ITEM_LOG}
+     *
+     * @param directory journal directory
+     * @return journal client for logs only
+     * @throws IOException if the journal cannot be created
+     */
+    static JournalClient forItemLogs(Path directory) throws IOException {
+        return new JournalClient(directory, ReporterParameters.getInt(SEGMENT_SIZE_PROPERTY, DEFAULT_SEGMENT_SIZE), Journal.ITEM_LOG);
+    }
+
+    /**
+     * @return journal client if journal mode is enabled or null otherwise
+     */
+    static JournalClient fromParameters() {
+        String directory = ReporterParameters.getProperty(JOURNAL_PROPERTY, null);
+        if (directory == null) {
+            return null;
+        }
+        try {
+            return new JournalClient(Paths.get(directory), ReporterParameters.getInt(SEGMENT_SIZE_PROPERTY, DEFAULT_SEGMENT_SIZE));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open journal in " + directory, e);
+        }
+    }
+
+    @Override
+    public Maybe<StartLaunchRS> startLaunch(StartLaunchRQ rq) {
+        String id = nextId();
+        append(Journal.START_LAUNCH, id, null, rq, null, null);
+        return Maybe.just(new StartLaunchRS(id, 0L));
+    }
+
+    @Override
+    public Maybe<LaunchResource> mergeLaunches(MergeLaunchesRQ rq) {
+        return Maybe.error(new UnsupportedOperationException("Launches cannot be merged in journal mode"));
+    }
+
+    @Override
+    public Maybe<OperationCompletionRS> finishLaunch(String launch, FinishExecutionRQ rq) {
+        append(Journal.FINISH_LAUNCH, launch, null, rq, null, null);
+        return Maybe.just(new OperationCompletionRS("Launch " + launch + " is journaled"));
+    }
+
+    @Override
+    public Maybe<ItemCreatedRS> startTestItem(StartTestItemRQ rq) {
+        return startTestItem(null, rq);
+    }
+
+    @Override
+    public Maybe<ItemCreatedRS> startTestItem(String parent, StartTestItemRQ rq) {
+        String id = nextId();
+        append(Journal.START_ITEM, id, parent, rq, null, null);
+        return Maybe.just(new ItemCreatedRS(id, null));
+    }
+
+    @Override
+    public Maybe<OperationCompletionRS> finishTestItem(String item, FinishTestItemRQ rq) {
+        append(Journal.FINISH_ITEM, item, null, rq, null, null);
+        return Maybe.just(new OperationCompletionRS("Item " + item + " is journaled"));
+    }
+
+    @Override
+    public Maybe<EntryCreatedRS> log(SaveLogRQ rq) {
+        SaveLogRQ.File file = rq.getFile();
+        append(logType, rq.getTestItemId(), null, rq, file == null ? null : file.getContent(), file == null ? null : file.getContentType());
+        return Maybe.just(new EntryCreatedRS(nextId()));
+    }
+
+    @Override
+    public Maybe<BatchSaveOperatingRS> log(MultiPartRequest rq) {
+        try {
+            // a log with a file does not always have a binary part, so parts are matched by file name as the server does
+            Map<String, Deque<MultiPartRequest.MultiPartBinary>> binaries = new HashMap<>();
+            for (MultiPartRequest.MultiPartBinary binary : rq.getBinaryRQs()) {
+                binaries.computeIfAbsent(binary.getFilename(), name -> new ArrayDeque<>()).add(binary);
+            }
+            for (MultiPartRequest.MultiPartSerialized<?> part : rq.getSerializedRQs()) {
+                for (Object request : (List<?>) part.getRequest()) {
+                    SaveLogRQ logRq = (SaveLogRQ) request;
+                    byte[] content = null;
+                    String contentType = null;
+                    Deque<MultiPartRequest.MultiPartBinary> named = logRq.getFile() == null ? null : binaries.get(logRq.getFile().getName());
+                    if (named != null && !named.isEmpty()) {
+                        MultiPartRequest.MultiPartBinary binary = named.poll();
+                        content = binary.getData().read();
+                        contentType = binary.getContentType();
+                    }
+                    append(logType, logRq.getTestItemId(), null, logRq, content, contentType);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return Maybe.error(e);
+        }
+        return Maybe.just(new BatchSaveOperatingRS());
+    }
+
+    @Override
+    public void close() {
+        writer.close();
+    }
+
+    private void append(byte type, String id, String parentId, Object rq, byte[] content, String contentType) {
+        byte[] request;
+        try {
+            request = Journal.MAPPER.writeValueAsBytes(rq);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize " + rq.getClass().getSimpleName(), e);
+        }
+        writer.append(type, id, parentId, request, content, contentType);
+    }
+
+    private String nextId() {
+        return idPrefix + ids.incrementAndGet();
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.restendpoint.http.MultiPartRequest;
+import com.epam.reportportal.service.ReportPortal;
+import com.epam.reportportal.service.ReportPortalClient;
+import com.epam.ta.reportportal.ws.model.FinishExecutionRQ;
+import com.epam.ta.reportportal.ws.model.FinishTestItemRQ;
+import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRQ;
+import com.epam.ta.reportportal.ws.model.log.SaveLogRQ;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rp.com.google.common.base.Strings;
+import rp.com.google.common.io.ByteSource;
+import rp.com.google.common.net.MediaType;
+import rp.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads a journal written in journal mode to Report Portal.
+ * <p>
+ * Operations are sent in parallel as soon as the operations they depend on are done: an item is started
+ * after its parent, and finished after its own logs and its children. Logs are journaled when their batch
+ * is flushed, which may be after the item is finished, so finishes are submitted once the whole journal is read. Every uploaded operation is appended
+ * to a progress file in the journal directory, so an interrupted replay resumes where it stopped.
+ * <p>
+ * A journal of logs spilled by {@link LaunchShutdown} refers to items of an already reported launch,
+ * such logs are uploaded to those items directly.
+ * <p>
+ * Usage: {@code java -cp <classpath> io.github.khda91.reportportal.cucumber.JournalReplay <journal directory>}.
+ * Report Portal connection is configured by reportportal.properties as usual.
+ */
+public final class JournalReplay {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournalReplay.class);
+
+    static final String PROGRESS_FILE = "replay.progress";
+
+    static final String THREADS_PROPERTY = "rp.cucumber.journal.replay.threads";
+
+    private final ReportPortalClient client;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /* Report Portal IDs by journal IDs of launches and items */
+    private final Map<String, CompletableFuture<String>> ids = new ConcurrentHashMap<>();
+
+    /* operations which have to be done before a launch or an item is finished, by its journal ID */
+    private final Map<String, List<CompletableFuture<?>>> dependents = new ConcurrentHashMap<>();
+
+    /* journal IDs of parents (items or launches) of unfinished items */
+    private final Map<String, String> parents = new ConcurrentHashMap<>();
+
+    private final Set<Long> replayed = new HashSet<>();
+    private final BufferedWriter progress;
+
+    private JournalReplay(Path directory, ReportPortalClient client, int threads) throws IOException {
+        this.client = client;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("rp-journal-replay-%d").build());
+        this.maxInFlight = threads * 4;
+        this.inFlight = new Semaphore(maxInFlight);
+        Path progressFile = directory.resolve(PROGRESS_FILE);
+        if (Files.exists(progressFile)) {
+            for (String line : Files.readAllLines(progressFile, StandardCharsets.UTF_8)) {
+                String[] parts = line.split(" ");
+                if (parts.length == 0 || parts[0].isEmpty()) {
+                    continue;
+                }
+                replayed.add(Long.parseLong(parts[0]));
+                if (parts.length == 3) {
+                    ids.put(parts[1], CompletableFuture.completedFuture(parts[2]));
+                }
+            }
+        }
+        progress = Files.newBufferedWriter(progressFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: JournalReplay <journal directory>");
+            System.exit(2);
+        }
+        ReportPortalClient client = ReportPortal.builder().build().getClient();
+        boolean success;
+        try {
+            success = replay(Paths.get(args[0]), client, ReporterParameters.getInt(THREADS_PROPERTY, 16));
+        } finally {
+            client.close();
+        }
+        System.exit(success ? 0 : 1);
+    }
+
+    /**
+     * Upload journal, skipping operations uploaded by previous replays of the same journal
+     *
+     * @param directory journal directory
+     * @param client    Report Portal client to upload with
+     * @param threads   max number of concurrent requests
+     * @return true if all operations were uploaded
+     */
+    public static boolean replay(Path directory, ReportPortalClient client, int threads) {
+        try {
+            return new JournalReplay(directory, client, Math.max(1, threads)).replay(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to replay journal " + directory, e);
+        }
+    }
+
+    private boolean replay(Path directory) throws IOException {
+        int skipped = 0;
+        int submitted = 0;
+        List<Journal.Record> finishes = new ArrayList<>();
+        try {
+            Journal.Reader reader = new Journal.Reader(directory);
+            while (reader.hasNext()) {
+                Journal.Record record = reader.next();
+                if (replayed.contains(record.getPosition())) {
+                    if (record.getType() == Journal.START_ITEM) {
+                        // children finished in this replay still have to be done before the parent is finished
+                        parents.put(record.getId(), getParentKey(record, readRequest(record, StartTestItemRQ.class)));
+                    }
+                    skipped++;
+                    continue;
+                }
+                if (record.getType() == Journal.FINISH_ITEM || record.getType() == Journal.FINISH_LAUNCH) {
+                    // logs of the item may follow its finish in the journal
+                    finishes.add(record);
+                    continue;
+                }
+                submitted++;
+                submitLimited(record);
+            }
+            // journal order finishes children before their parents and items before their launch
+            for (Journal.Record record : finishes) {
+                submitted++;
+                submitLimited(record);
+            }
+            inFlight.acquireUninterruptibly(maxInFlight);
+        } finally {
+            executor.shutdown();
+            progress.close();
+        }
+        LOGGER.info("Journal {} replayed: {} operations uploaded, {} failed, {} uploaded before", directory, submitted - failures.get(),
+                failures.get(), skipped);
+        return failures.get() == 0;
+    }
+
+    private void submitLimited(Journal.Record record) {
+        inFlight.acquireUninterruptibly();
+        try {
+            submit(record).whenComplete((r, e) -> inFlight.release());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            failures.incrementAndGet();
+            LOGGER.error("Unable to replay journal operation at " + record.getPosition(), e);
+        }
+    }
+
+    private CompletableFuture<?> submit(Journal.Record record) {
+        switch (record.getType()) {
+            case Journal.START_LAUNCH:
+                return startLaunch(record);
+            case Journal.START_ITEM:
+                return startItem(record);
+            case Journal.FINISH_ITEM:
+                return finishItem(record);
+            case Journal.LOG:
+            case Journal.ITEM_LOG:
+                return log(record);
+            case Journal.FINISH_LAUNCH:
+                return finishLaunch(record);
+            default:
+                throw new IllegalStateException("Unknown journal record type " + record.getType() + " at " + record.getPosition());
+        }
+    }
+
+    private CompletableFuture<String> startLaunch(Journal.Record record) {
+        StartLaunchRQ rq = readRequest(record, StartLaunchRQ.class);
+        CompletableFuture<String> id = CompletableFuture.supplyAsync(() -> client.startLaunch(rq).blockingGet().getId(), executor);
+        ids.put(record.getId(), track(record, id, true));
+        return id;
+    }
+
+    private CompletableFuture<String> startItem(Journal.Record record) {
+        StartTestItemRQ rq = readRequest(record, StartTestItemRQ.class);
+        String parentKey = getParentKey(record, rq);
+        CompletableFuture<String> parent = record.getParentId() == null ? CompletableFuture.completedFuture(null) : getId(record.getParentId());
+        CompletableFuture<String> id = parent.thenCombineAsync(getId(rq.getLaunchId()), (parentId, launchId) -> {
+            rq.setLaunchId(launchId);
+            return parentId == null ? client.startTestItem(rq).blockingGet().getId() : client.startTestItem(parentId, rq).blockingGet().getId();
+        }, executor);
+        parents.put(record.getId(), parentKey);
+        ids.put(record.getId(), track(record, id, true));
+        return id;
+    }
+
+    private CompletableFuture<?> finishItem(Journal.Record record) {
+        FinishTestItemRQ rq = readRequest(record, FinishTestItemRQ.class);
+        CompletableFuture<?> finished = afterDependents(record.getId()).thenApplyAsync(itemId -> client.finishTestItem(itemId, rq).blockingGet(),
+                executor);
+        String parentKey = parents.remove(record.getId());
+        if (parentKey != null) {
+            addDependent(parentKey, finished);
+        }
+        return track(record, finished, false);
+    }
+
+    private CompletableFuture<?> log(Journal.Record record) {
+        SaveLogRQ rq = readRequest(record, SaveLogRQ.class);
+        byte[] content = record.getContent();
+        boolean journaledItem = record.getType() == Journal.LOG;
+        CompletableFuture<String> item = journaledItem ? getId(record.getId()) : CompletableFuture.completedFuture(record.getId());
+        CompletableFuture<?> logged = item.thenApplyAsync(itemId -> {
+            rq.setTestItemId(itemId);
+            SaveLogRQ.File file = rq.getFile();
+            if (file == null || content == null) {
+                return client.log(rq).blockingGet();
+            }
+            return client.log(new MultiPartRequest.Builder().addSerializedPart("json_request_part", Collections.singletonList(rq))
+                    .addBinaryPart("binary_part",
+                            file.getName(),
+                            Strings.isNullOrEmpty(record.getContentType()) ? MediaType.OCTET_STREAM.toString() : record.getContentType(),
+                            ByteSource.wrap(content))
+                    .build()).blockingGet();
+        }, executor);
+        if (journaledItem) {
+            addDependent(record.getId(), logged);
+        }
+        return track(record, logged, false);
+    }
+
+    private CompletableFuture<?> finishLaunch(Journal.Record record) {
+        FinishExecutionRQ rq = readRequest(record, FinishExecutionRQ.class);
+        return track(record, afterDependents(record.getId()).thenApplyAsync(launchId -> client.finishLaunch(launchId, rq).blockingGet(), executor),
+                false);
+    }
+
+    private static <T> T readRequest(Journal.Record record, Class<T> type) {
+        try {
+            return Journal.MAPPER.readValue(record.getRequest(), type);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + type.getSimpleName() + " at " + record.getPosition(), e);
+        }
+    }
+
+    /**
+     * @return journal ID of the parent item or, for root items, of the launch
+     */
+    private static String getParentKey(Journal.Record record, StartTestItemRQ rq) {
+        return record.getParentId() == null ? rq.getLaunchId() : record.getParentId();
+    }
+
+    /**
+     * @return future of the Report Portal ID of the launch or item, completed after all its dependent operations are done
+     */
+    private CompletableFuture<String> afterDependents(String journalId) {
+        List<CompletableFuture<?>> operations = dependents.remove(journalId);
+        CompletableFuture<String> id = getId(journalId);
+        if (operations == null || operations.isEmpty()) {
+            return id;
+        }
+        return CompletableFuture.allOf(operations.toArray(new CompletableFuture<?>[0])).thenCombine(id, (v, itemId) -> itemId);
+    }
+
+    private CompletableFuture<String> getId(String journalId) {
+        CompletableFuture<String> id = journalId == null ? null : ids.get(journalId);
+        if (id == null) {
+            CompletableFuture<String> missing = new CompletableFuture<>();
+            missing.completeExceptionally(new IllegalStateException("Launch or item " + journalId + " was never started in the journal"));
+            return missing;
+        }
+        return id;
+    }
+
+    private void addDependent(String journalId, CompletableFuture<?> operation) {
+        dependents.computeIfAbsent(journalId, k -> Collections.synchronizedList(new ArrayList<>())).add(operation);
+    }
+
+    private <T> CompletableFuture<T> track(Journal.Record record, CompletableFuture<T> operation, boolean createsId) {
+        return operation.whenComplete((result, error) -> {
+            if (error != null) {
+                failures.incrementAndGet();
+                LOGGER.error("Unable to replay journal operation at " + record.getPosition(), error);
+                return;
+            }
+            String line = createsId ? record.getPosition() + " " + record.getId() + " " + result : String.valueOf(record.getPosition());
+            synchronized (progress) {
+                try {
+                    progress.write(line);
+                    progress.newLine();
+                    progress.flush();
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to save replay progress", e);
+                }
+            }
+        });
+    }
+}
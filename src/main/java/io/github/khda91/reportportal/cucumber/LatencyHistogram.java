@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of durations with power of two buckets.
+ * <p>
+ * Percentiles are reported as the upper bound of the bucket they fall into, capped by the maximum, so they are exact
+ * within a factor of two, which is enough to tell microseconds from milliseconds without any allocation on the recording path.
+ */
+class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos measured duration in nanoseconds
+     */
+    void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        buckets[BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+        total.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return point in time view of the histogram with durations in microseconds
+     */
+    ReporterMetricsMXBean.Latency snapshot() {
+        long[] counts = new long[BUCKETS];
+        long recorded = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            recorded += counts[i];
+        }
+        long longest = max.get();
+        return new ReporterMetricsMXBean.Latency(recorded,
+                recorded == 0 ? 0L : toMicros(total.sum() / recorded),
+                toMicros(Math.min(longest, percentile(counts, recorded, 0.5))),
+                toMicros(Math.min(longest, percentile(counts, recorded, 0.99))),
+                toMicros(longest)
+        );
+    }
+
+    private static long percentile(long[] counts, long recorded, double quantile) {
+        long rank = (long) Math.ceil(recorded * quantile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return i == 0 ? 0L : (1L << Math.min(62, i)) - 1;
+            }
+        }
+        return 0L;
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
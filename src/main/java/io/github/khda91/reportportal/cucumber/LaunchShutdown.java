@@ -0,0 +1,254 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.listeners.ListenerParameters;
+import com.epam.reportportal.service.Launch;
+import com.epam.ta.reportportal.ws.model.FinishExecutionRQ;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rp.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Final phase of a launch: waits until queued logs are uploaded and then until the launch is finished,
+ * logging the progress of logs and item requests every {@code rp.cucumber.flush.progress} milliseconds.
+ * <p>
+ * The phase is bounded by {@code rp.cucumber.flush.deadline} seconds, the reporting timeout of the client by default.
+ * Once the deadline passes {@code rp.cucumber.flush.policy} decides what happens to the rest:
+ * <ul>
+ * <li>{@link Policy#WAIT} - logs are still waited for, as finishing the launch closes the client they are uploaded
+ * through, and so is the launch finish, both at most for the reporting timeout of the client past the deadline
+ * <li>{@link Policy#DROP} - logs which are not sent yet are dropped
+ * <li>{@link Policy#JOURNAL} - logs which are not sent yet are written to a journal in {@code rp.cucumber.flush.journal}
+ * to be uploaded later by {@link JournalReplay}
+ * </ul>
+ * With the last two policies the launch finish is not waited for past the deadline either, except for a single
+ * progress interval if the deadline passed while logs were uploaded. Logs left unsent, including those whose upload
+ * failed, are logged and recorded in {@link ReporterMetrics}.
+ */
+final class LaunchShutdown {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LaunchShutdown.class);
+
+    static final String DEADLINE_PROPERTY = "rp.cucumber.flush.deadline";
+
+    static final String PROGRESS_PROPERTY = "rp.cucumber.flush.progress";
+
+    static final String POLICY_PROPERTY = "rp.cucumber.flush.policy";
+
+    static final String JOURNAL_PROPERTY = "rp.cucumber.flush.journal";
+
+    private static final ThreadFactory FINISH_THREADS = new ThreadFactoryBuilder().setNameFormat("rp-launch-finish-%d")
+            .setDaemon(true)
+            .build();
+
+    /**
+     * What to do with the data which is not sent when the deadline passes
+     */
+    enum Policy {
+        WAIT,
+        DROP,
+        JOURNAL
+    }
+
+    private final LogBatcher logBatcher;
+    private final RequestWindow window;
+    private final ReporterMetrics metrics;
+    private final long deadlineNanos;
+    /* how long the WAIT policy waits past the deadline */
+    private final long graceNanos;
+    private final long progressNanos;
+    private final Policy policy;
+    private final Path journalDirectory;
+
+    /* state of the last progress report, to compute the upload rate */
+    private long reportedAt;
+    private long reportedLogs;
+
+    /* journal of logs which were not uploaded in time, only with the JOURNAL policy */
+    private JournalClient journal;
+
+    LaunchShutdown(LogBatcher logBatcher, RequestWindow window, ReporterMetrics metrics, long deadlineSeconds, long graceSeconds,
+            long progressMillis, Policy policy, Path journalDirectory) {
+        this.logBatcher = logBatcher;
+        this.window = window;
+        this.metrics = metrics;
+        this.deadlineNanos = TimeUnit.SECONDS.toNanos(Math.max(0L, deadlineSeconds));
+        this.graceNanos = TimeUnit.SECONDS.toNanos(Math.max(0L, graceSeconds));
+        this.progressNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(100L, progressMillis));
+        this.policy = policy;
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * Create shutdown phase configured by reporter parameters
+     *
+     * @param logBatcher log batcher of the launch
+     * @param window     request window of the reporter
+     * @param metrics    reporter metrics or null if they are disabled
+     * @param parameters client parameters
+     * @return shutdown phase
+     */
+    static LaunchShutdown fromParameters(LogBatcher logBatcher, RequestWindow window, ReporterMetrics metrics,
+            ListenerParameters parameters) {
+        Integer reportingTimeout = parameters.getReportingTimeout();
+        long timeout = reportingTimeout == null ? 300L : reportingTimeout;
+        return new LaunchShutdown(logBatcher,
+                window,
+                metrics,
+                ReporterParameters.getLong(DEADLINE_PROPERTY, timeout),
+                timeout,
+                ReporterParameters.getLong(PROGRESS_PROPERTY, 5000L),
+                ReporterParameters.getEnum(POLICY_PROPERTY, Policy.class, Policy.WAIT),
+                Paths.get(ReporterParameters.getProperty(JOURNAL_PROPERTY,
+                        Paths.get(System.getProperty("java.io.tmpdir"), "rp-unsent-logs").toString()))
+        );
+    }
+
+    /**
+     * Upload queued logs and finish the launch within the deadline
+     *
+     * @param launch launch to finish
+     * @param rq     finish request
+     */
+    void finish(Launch launch, FinishExecutionRQ rq) {
+        long started = System.nanoTime();
+        long deadline = started + deadlineNanos;
+        long limit = deadline + graceNanos;
+        reportedAt = started;
+        reportedLogs = logBatcher.getPendingLogs();
+
+        boolean flushed = awaitLogs(deadline);
+        if (!flushed) {
+            applyPolicy();
+            if (policy == Policy.WAIT && !awaitLogs(limit)) {
+                LOGGER.warn("Logs are not uploaded {} s past the flush deadline, finishing launch with {} logs pending",
+                        TimeUnit.NANOSECONDS.toSeconds(graceNanos), logBatcher.getPendingLogs());
+            }
+        }
+
+        CompletableFuture<Void> finished = CompletableFuture.runAsync(() -> launch.finish(rq), task -> FINISH_THREADS.newThread(task).start());
+        long finishDeadline = policy == Policy.WAIT ? limit : deadline;
+        boolean launchFinished = awaitFinish(finished, Math.max(finishDeadline, System.nanoTime() + progressNanos));
+        if (journal != null) {
+            journal.close();
+        }
+
+        long pendingLogs = logBatcher.getPendingLogs();
+        long droppedLogs = logBatcher.getDroppedLogs();
+        long failedLogs = logBatcher.getFailedLogs();
+        long unsentLogs = pendingLogs + droppedLogs + failedLogs;
+        long unsentBytes = logBatcher.getPendingBytes() + logBatcher.getDroppedBytes() + logBatcher.getFailedBytes();
+        if (metrics != null) {
+            metrics.logsUnsent(unsentLogs, unsentBytes);
+        }
+        long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        if (launchFinished && unsentLogs == 0) {
+            LOGGER.info("Launch finished in {} ms", took);
+        } else {
+            LOGGER.warn("Launch {} in {} ms, {} logs ({} bytes) were not uploaded: {} pending, {} dropped, {} failed",
+                    launchFinished ? "finished" : "was left unfinished", took, unsentLogs, unsentBytes, pendingLogs, droppedLogs, failedLogs);
+        }
+    }
+
+    private boolean awaitLogs(long deadline) {
+        while (true) {
+            long left = deadline - System.nanoTime();
+            if (logBatcher.awaitUploaded(Math.max(0L, Math.min(left, progressNanos)), TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+            if (left <= progressNanos || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            reportProgress("uploading logs", deadline - System.nanoTime());
+        }
+    }
+
+    private boolean awaitFinish(CompletableFuture<Void> finished, long deadline) {
+        while (true) {
+            long left = deadline - System.nanoTime();
+            try {
+                finished.get(Math.max(0L, Math.min(left, progressNanos)), TimeUnit.NANOSECONDS);
+                return true;
+            } catch (TimeoutException e) {
+                if (left <= progressNanos) {
+                    return false;
+                }
+                reportProgress("finishing launch", deadline - System.nanoTime());
+            } catch (ExecutionException e) {
+                LOGGER.error("Unable to finish launch", e.getCause());
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private void applyPolicy() {
+        switch (policy) {
+            case DROP:
+                LOGGER.warn("Flush deadline passed with {} logs not uploaded, dropping those which are not sent yet", logBatcher.getPendingLogs());
+                logBatcher.drop();
+                break;
+            case JOURNAL:
+                try {
+                    journal = JournalClient.forItemLogs(journalDirectory);
+                    logBatcher.redirect(journal);
+                    LOGGER.warn("Flush deadline passed with {} logs not uploaded, those which are not sent yet are written to {}, "
+                            + "upload them with JournalReplay", logBatcher.getPendingLogs(), journalDirectory);
+                    // journaling is local, so logs of started items are written right away
+                    logBatcher.awaitUploaded(progressNanos, TimeUnit.NANOSECONDS);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("Unable to create journal in " + journalDirectory + ", dropping logs which are not uploaded yet", e);
+                    logBatcher.drop();
+                }
+                break;
+            default:
+                LOGGER.warn("Flush deadline passed, {} logs are still uploading, waiting for them", logBatcher.getPendingLogs());
+        }
+    }
+
+    /**
+     * @param left time left to the deadline of the phase
+     */
+    private void reportProgress(String phase, long left) {
+        long now = System.nanoTime();
+        long logs = logBatcher.getPendingLogs();
+        double seconds = (now - reportedAt) / 1e9;
+        long rate = seconds <= 0 ? 0L : Math.max(0L, Math.round((reportedLogs - logs) / seconds));
+        reportedAt = now;
+        reportedLogs = logs;
+        StringBuilder message = new StringBuilder("Report Portal flush, ").append(phase).append(": ")
+                .append(logs).append(" logs (").append(logBatcher.getPendingBytes()).append(" bytes) remaining, ")
+                .append(rate).append(" logs/s, ")
+                .append(window.getItemRequests()).append(" item requests pending");
+        if (metrics != null) {
+            message.append(", ").append(metrics.getInFlightRequests()).append(" requests in flight");
+        }
+        message.append(", ").append(TimeUnit.NANOSECONDS.toSeconds(Math.max(0L, left))).append(" s to deadline");
+        LOGGER.info(message.toString());
+    }
+}
@@ -0,0 +1,536 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.restendpoint.http.MultiPartRequest;
+import com.epam.reportportal.service.ReportPortalClient;
+import com.epam.ta.reportportal.ws.model.log.SaveLogRQ;
+import io.reactivex.Maybe;
+import io.reactivex.schedulers.Schedulers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rp.com.google.common.base.Strings;
+import rp.com.google.common.io.ByteSource;
+import rp.com.google.common.io.MoreFiles;
+import rp.com.google.common.net.MediaType;
+import rp.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups log requests of all test items into multipart batch uploads.
+ * <p>
+ * A batch is sent once it reaches the configured number of logs or size in bytes, or once its
+ * oldest log waited for the configured delay. Reporters flush the batch explicitly when a scenario
+ * or the launch is finished.
+ * <p>
+ * Attachments larger than the spill threshold are written to a temporary file as soon as they are
+ * emitted and streamed from disk on upload, so the batch does not keep their content on the heap.
+ * <p>
+ * Logs occupy the {@link RequestWindow} from emitting until upload. When the window is full, the window policy
+ * decides whether a log waits, is dropped, or has its attachment spilled regardless of the threshold.
+ * <p>
+ * When the launch cannot be flushed in time, logs which are not sent yet can be redirected to another client,
+ * e.g. a journal, or dropped.
+ */
+public class LogBatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogBatcher.class);
+
+    static final String BATCH_COUNT_PROPERTY = "rp.cucumber.log.batch.count";
+
+    static final String BATCH_BYTES_PROPERTY = "rp.cucumber.log.batch.bytes";
+
+    static final String BATCH_DELAY_PROPERTY = "rp.cucumber.log.batch.delay";
+
+    static final String SPILL_THRESHOLD_PROPERTY = "rp.cucumber.log.spill.threshold";
+
+    static final String SPILL_DIRECTORY_PROPERTY = "rp.cucumber.log.spill.dir";
+
+    private static final String JSON_REQUEST_PART = "json_request_part";
+
+    private static final String BINARY_PART = "binary_part";
+
+    private volatile ReportPortalClient client;
+    private volatile boolean dropping;
+    private final int maxCount;
+    private final long maxBytes;
+    private final long maxDelayNanos;
+    private final long spillThreshold;
+    private final Path spillDirectory;
+    private final ScheduledExecutorService timer;
+    /* null if logs are not bounded by a window */
+    private final RequestWindow window;
+
+    private final Object batchLock = new Object();
+    private List<Entry> batch = new ArrayList<>();
+    private long batchBytes;
+    private long batchStarted;
+
+    private final Object pendingLock = new Object();
+    private long pending;
+    private long pendingBytes;
+    private long droppedLogs;
+    private long droppedBytes;
+    private long failedLogs;
+    private long failedBytes;
+
+    public LogBatcher(ReportPortalClient client, int maxCount, long maxBytes, long maxDelayMillis) {
+        this(client, maxCount, maxBytes, maxDelayMillis, Long.MAX_VALUE, null);
+    }
+
+    public LogBatcher(ReportPortalClient client, int maxCount, long maxBytes, long maxDelayMillis, long spillThreshold,
+            Path spillDirectory) {
+        this(client, maxCount, maxBytes, maxDelayMillis, spillThreshold, spillDirectory, null);
+    }
+
+    LogBatcher(ReportPortalClient client, int maxCount, long maxBytes, long maxDelayMillis, long spillThreshold, Path spillDirectory,
+            RequestWindow window) {
+        this.client = client;
+        this.window = window;
+        this.maxCount = Math.max(1, maxCount);
+        this.maxBytes = maxBytes;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.spillThreshold = spillThreshold;
+        this.spillDirectory = spillDirectory;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("rp-log-batcher-%d")
+                .setDaemon(true)
+                .build());
+        long tick = Math.max(10L, maxDelayMillis / 4);
+        timer.scheduleWithFixedDelay(this::flushIfExpired, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create batcher configured by reporter parameters, bounded by a window of its own
+     *
+     * @param client ReportPortal client to upload logs with
+     * @return log batcher
+     */
+    public static LogBatcher fromParameters(ReportPortalClient client) {
+        return fromParameters(client, RequestWindow.fromParameters());
+    }
+
+    /**
+     * Create batcher configured by reporter parameters
+     *
+     * @param client ReportPortal client to upload logs with
+     * @param window window of the reporter
+     * @return log batcher
+     */
+    static LogBatcher fromParameters(ReportPortalClient client, RequestWindow window) {
+        return new LogBatcher(client,
+                ReporterParameters.getInt(BATCH_COUNT_PROPERTY, 50),
+                ReporterParameters.getLong(BATCH_BYTES_PROPERTY, 8L * 1024 * 1024),
+                ReporterParameters.getLong(BATCH_DELAY_PROPERTY, 1000L),
+                ReporterParameters.getLong(SPILL_THRESHOLD_PROPERTY, 1024L * 1024),
+                Paths.get(ReporterParameters.getProperty(SPILL_DIRECTORY_PROPERTY, System.getProperty("java.io.tmpdir"))),
+                window);
+    }
+
+    /**
+     * Queue log request for a test item. The request is added to a batch once the item ID is known.
+     *
+     * @param itemId test item ID
+     * @param rq     log request without test item ID
+     */
+    public void emit(Maybe<String> itemId, final SaveLogRQ rq) {
+        // a deferred item is resolved by the thread which emits its logs, so the logs cannot wait for the window
+        final boolean deferred = itemId instanceof DeferredItem.Id && !((DeferredItem.Id) itemId).isResolved();
+        final Entry entry = deferred ? createEntry(rq) : admit(createEntry(rq));
+        if (entry == null) {
+            return;
+        }
+        addPending(1, entry.size);
+        itemId.subscribe(id -> {
+            rq.setTestItemId(id);
+            if (deferred && window != null) {
+                // the log is uploaded now, so its upload is bounded like any other
+                window.forceAcquire(entry.getHeapSize());
+                entry.windowed = true;
+            }
+            add(entry);
+        }, e -> {
+            LOGGER.error("Unable to send log to a test item which was not started", e);
+            released(entry);
+            synchronized (pendingLock) {
+                failedLogs++;
+                failedBytes += entry.size;
+            }
+            addPending(-1, -entry.size);
+        }, () -> {
+            released(entry);
+            addPending(-1, -entry.size);
+        });
+    }
+
+    /**
+     * Send current batch if it is not empty
+     */
+    public void flush() {
+        List<Entry> toSend;
+        synchronized (batchLock) {
+            toSend = swapBatch();
+        }
+        send(toSend);
+    }
+
+    /**
+     * Send current batch and wait until all queued logs are uploaded
+     *
+     * @param timeout max time to wait
+     * @param unit    time unit of the timeout
+     * @return true if all logs were uploaded in time
+     */
+    public boolean close(long timeout, TimeUnit unit) {
+        timer.shutdown();
+        if (!awaitUploaded(timeout, unit)) {
+            LOGGER.warn("{} logs were not uploaded in time", getPendingLogs());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Wait until all queued logs are uploaded, flushing the batch while waiting
+     *
+     * @param timeout max time to wait
+     * @param unit    time unit of the timeout
+     * @return true if all logs were uploaded in time
+     */
+    boolean awaitUploaded(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (pendingLock) {
+            while (pending > 0) {
+                // logs may reach the batch after their items are started, so keep flushing while waiting
+                flush();
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                try {
+                    pendingLock.wait(Math.max(1L, Math.min(TimeUnit.NANOSECONDS.toMillis(left), 100L)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Send current and further batches with another client
+     *
+     * @param target client to send logs with
+     */
+    void redirect(ReportPortalClient target) {
+        client = target;
+        flush();
+    }
+
+    /**
+     * Drop current and further batches instead of sending them
+     */
+    void drop() {
+        dropping = true;
+        flush();
+    }
+
+    /**
+     * @return number of emitted logs which are not uploaded yet
+     */
+    long getPendingLogs() {
+        synchronized (pendingLock) {
+            return pending;
+        }
+    }
+
+    /**
+     * @return size of messages and attachments of emitted logs which are not uploaded yet
+     */
+    long getPendingBytes() {
+        synchronized (pendingLock) {
+            return pendingBytes;
+        }
+    }
+
+    long getDroppedLogs() {
+        synchronized (pendingLock) {
+            return droppedLogs;
+        }
+    }
+
+    long getDroppedBytes() {
+        synchronized (pendingLock) {
+            return droppedBytes;
+        }
+    }
+
+    /**
+     * @return number of logs which were rejected by Report Portal or whose upload failed
+     */
+    long getFailedLogs() {
+        synchronized (pendingLock) {
+            return failedLogs;
+        }
+    }
+
+    long getFailedBytes() {
+        synchronized (pendingLock) {
+            return failedBytes;
+        }
+    }
+
+    private Entry createEntry(SaveLogRQ rq) {
+        long size = rq.getMessage() == null ? 0 : rq.getMessage().length();
+        SaveLogRQ.File file = rq.getFile();
+        if (file == null || file.getContent() == null) {
+            return new Entry(rq, null, null, size);
+        }
+        byte[] content = file.getContent();
+        size += content.length;
+        if (content.length > spillThreshold) {
+            Entry spilled = spill(rq, size);
+            if (spilled != null) {
+                return spilled;
+            }
+        }
+        return new Entry(rq, ByteSource.wrap(content), null, size);
+    }
+
+    private Entry spill(SaveLogRQ rq, long size) {
+        if (spillDirectory == null) {
+            return null;
+        }
+        SaveLogRQ.File file = rq.getFile();
+        try {
+            Path spilled = Files.createTempFile(spillDirectory, "rp-attachment-", ".bin");
+            Files.write(spilled, file.getContent());
+            file.setContent(null);
+            return new Entry(rq, MoreFiles.asByteSource(spilled), spilled, size);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to spill attachment to " + spillDirectory + ", keeping it in memory", e);
+            return null;
+        }
+    }
+
+    /**
+     * Take space in the window for the log, applying the window policy if it is full
+     *
+     * @return entry to queue or null if the log is dropped
+     */
+    private Entry admit(Entry entry) {
+        if (window == null) {
+            return entry;
+        }
+        entry.windowed = true;
+        if (window.tryAcquire(entry.getHeapSize())) {
+            return entry;
+        }
+        switch (window.getPolicy()) {
+            case DROP:
+                if (isLowPriority(entry)) {
+                    entry.release();
+                    synchronized (pendingLock) {
+                        droppedLogs++;
+                        droppedBytes += entry.size;
+                    }
+                    return null;
+                }
+                break;
+            case SPILL:
+                if (entry.spilled == null && entry.content != null) {
+                    Entry spilled = spill(entry.rq, entry.size);
+                    if (spilled != null) {
+                        window.forceAcquire(spilled.getHeapSize());
+                        spilled.windowed = true;
+                        return spilled;
+                    }
+                }
+                break;
+            default:
+        }
+        window.acquire(entry.getHeapSize());
+        return entry;
+    }
+
+    /**
+     * @return true if the log may be dropped when the window is full: a log below WARN level or without a known level,
+     * or an attachment below ERROR level, as attachments take most of the window
+     */
+    private static boolean isLowPriority(Entry entry) {
+        String level = entry.rq.getLevel();
+        if ("ERROR".equalsIgnoreCase(level) || "FATAL".equalsIgnoreCase(level)) {
+            return false;
+        }
+        return entry.content != null || entry.spilled != null || !"WARN".equalsIgnoreCase(level);
+    }
+
+    private void released(Entry entry) {
+        entry.release();
+        if (window != null && entry.windowed) {
+            window.release(entry.getHeapSize());
+        }
+    }
+
+    private void add(Entry entry) {
+        List<Entry> toSend = null;
+        synchronized (batchLock) {
+            if (batch.isEmpty()) {
+                batchStarted = System.nanoTime();
+            }
+            batch.add(entry);
+            batchBytes += entry.size;
+            if (batch.size() >= maxCount || batchBytes >= maxBytes) {
+                toSend = swapBatch();
+            }
+        }
+        send(toSend);
+    }
+
+    private void flushIfExpired() {
+        List<Entry> toSend = null;
+        synchronized (batchLock) {
+            if (!batch.isEmpty() && System.nanoTime() - batchStarted >= maxDelayNanos) {
+                toSend = swapBatch();
+            }
+        }
+        send(toSend);
+    }
+
+    private List<Entry> swapBatch() {
+        if (batch.isEmpty()) {
+            return null;
+        }
+        List<Entry> result = batch;
+        batch = new ArrayList<>();
+        batchBytes = 0;
+        return result;
+    }
+
+    private void send(final List<Entry> toSend) {
+        if (toSend == null) {
+            return;
+        }
+        if (dropping) {
+            long bytes = 0;
+            for (Entry entry : toSend) {
+                bytes += entry.size;
+            }
+            synchronized (pendingLock) {
+                droppedLogs += toSend.size();
+                droppedBytes += bytes;
+            }
+            sent(toSend);
+            return;
+        }
+        List<SaveLogRQ> requests = new ArrayList<>(toSend.size());
+        for (Entry entry : toSend) {
+            requests.add(entry.rq);
+        }
+        MultiPartRequest.Builder builder = new MultiPartRequest.Builder();
+        builder.addSerializedPart(JSON_REQUEST_PART, requests);
+        for (Entry entry : toSend) {
+            SaveLogRQ.File file = entry.rq.getFile();
+            if (file != null && entry.content != null) {
+                builder.addBinaryPart(BINARY_PART,
+                        file.getName(),
+                        Strings.isNullOrEmpty(file.getContentType()) ? MediaType.OCTET_STREAM.toString() : file.getContentType(),
+                        entry.content);
+            }
+        }
+        client.log(builder.build()).subscribeOn(Schedulers.io()).subscribe(rs -> sent(toSend), e -> {
+            LOGGER.error("Unable to send logs batch", e);
+            failed(toSend);
+        }, () -> sent(toSend));
+    }
+
+    private void failed(List<Entry> entries) {
+        long bytes = 0;
+        for (Entry entry : entries) {
+            bytes += entry.size;
+        }
+        synchronized (pendingLock) {
+            failedLogs += entries.size();
+            failedBytes += bytes;
+        }
+        sent(entries);
+    }
+
+    private void sent(List<Entry> entries) {
+        long bytes = 0;
+        for (Entry entry : entries) {
+            released(entry);
+            bytes += entry.size;
+        }
+        addPending(-entries.size(), -bytes);
+    }
+
+    private void addPending(int delta, long bytesDelta) {
+        synchronized (pendingLock) {
+            pending += delta;
+            pendingBytes += bytesDelta;
+            if (pending <= 0) {
+                pendingLock.notifyAll();
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final SaveLogRQ rq;
+        private final ByteSource content;
+        private final Path spilled;
+        private final long size;
+        /* size kept on the heap until the log is uploaded, a spilled attachment is not counted */
+        private final long heapSize;
+        /* true once the heap size is taken in the window */
+        private volatile boolean windowed;
+
+        Entry(SaveLogRQ rq, ByteSource content, Path spilled, long size) {
+            this.rq = rq;
+            this.content = content;
+            this.spilled = spilled;
+            this.size = size;
+            this.heapSize = spilled == null ? size : rq.getMessage() == null ? 0 : rq.getMessage().length();
+        }
+
+        long getHeapSize() {
+            return heapSize;
+        }
+
+        /**
+         * Delete spilled attachment once it is uploaded or cannot be uploaded anymore
+         */
+        void release() {
+            if (spilled != null) {
+                try {
+                    Files.deleteIfExists(spilled);
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to delete spilled attachment " + spilled, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import org.apache.tika.mime.MimeType;
+import org.apache.tika.mime.MimeTypeException;
+import org.apache.tika.mime.MimeTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves names and file extensions of embedded attachments by their media types.
+ * <p>
+ * Common media types are resolved from a built-in table, Tika MIME registry is loaded only
+ * when a media type outside of the table is embedded. Resolved attachments are cached.
+ */
+final class MediaTypes {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MediaTypes.class);
+
+    static final Attachment DEFAULT = new Attachment("embedding", "");
+
+    /* bounds the cache if media types are generated by tests */
+    private static final int MAX_CACHED = 256;
+
+    private static final Map<String, Attachment> ATTACHMENTS = new ConcurrentHashMap<>();
+
+    static {
+        ATTACHMENTS.put("image/png", new Attachment("image", ".png"));
+        ATTACHMENTS.put("image/jpeg", new Attachment("image", ".jpg"));
+        ATTACHMENTS.put("image/jpg", new Attachment("image", ".jpg"));
+        ATTACHMENTS.put("image/gif", new Attachment("image", ".gif"));
+        ATTACHMENTS.put("application/json", new Attachment("application", ".json"));
+        ATTACHMENTS.put("text/plain", new Attachment("text", ".txt"));
+        ATTACHMENTS.put("text/html", new Attachment("text", ".html"));
+        ATTACHMENTS.put("video/mp4", new Attachment("video", ".mp4"));
+    }
+
+    private MediaTypes() {
+        throw new AssertionError("No instances should exist for the class!");
+    }
+
+    /**
+     * Return attachment for a media type
+     *
+     * @param mediaType media type of the embedding
+     * @return attachment named by the primary type of the media type or {@link #DEFAULT} if the media type is not valid
+     */
+    static Attachment getAttachment(String mediaType) {
+        if (mediaType == null) {
+            return DEFAULT;
+        }
+        Attachment attachment = ATTACHMENTS.get(mediaType);
+        if (attachment == null) {
+            attachment = resolve(mediaType);
+            if (ATTACHMENTS.size() < MAX_CACHED) {
+                ATTACHMENTS.putIfAbsent(mediaType, attachment);
+            }
+        }
+        return attachment;
+    }
+
+    private static Attachment resolve(String mediaType) {
+        try {
+            MimeType mimeType = TikaHolder.MIME_TYPES.forName(mediaType);
+            return new Attachment(mimeType.getType().getType(), mimeType.getExtension());
+        } catch (MimeTypeException e) {
+            LOGGER.warn("Mime-type not found", e);
+            return DEFAULT;
+        }
+    }
+
+    /**
+     * Name and file extension of an embedded attachment
+     */
+    static final class Attachment {
+
+        private final String name;
+        /* extension with the leading dot, empty if the media type has no known extension */
+        private final String extension;
+
+        Attachment(String name, String extension) {
+            this.name = name;
+            this.extension = extension;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getExtension() {
+            return extension;
+        }
+
+        String getFileName() {
+            return name + extension;
+        }
+    }
+
+    private static class TikaHolder {
+
+        private static final MimeTypes MIME_TYPES = MimeTypes.getDefaultMimeTypes();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.restendpoint.http.MultiPartRequest;
+import com.epam.reportportal.service.ReportPortalClient;
+import com.epam.ta.reportportal.ws.model.BatchSaveOperatingRS;
+import com.epam.ta.reportportal.ws.model.EntryCreatedRS;
+import com.epam.ta.reportportal.ws.model.FinishExecutionRQ;
+import com.epam.ta.reportportal.ws.model.FinishTestItemRQ;
+import com.epam.ta.reportportal.ws.model.OperationCompletionRS;
+import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
+import com.epam.ta.reportportal.ws.model.item.ItemCreatedRS;
+import com.epam.ta.reportportal.ws.model.launch.LaunchResource;
+import com.epam.ta.reportportal.ws.model.launch.MergeLaunchesRQ;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRQ;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRS;
+import com.epam.ta.reportportal.ws.model.log.SaveLogRQ;
+import io.reactivex.Maybe;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Report Portal client decorator which records latency, outcome and payload of every request into {@link ReporterMetrics}.
+ * <p>
+ * A request is measured from the moment it is subscribed to until it completes, so retries are measured separately.
+ */
+class MeteredReportPortalClient implements ReportPortalClient {
+
+    private final ReportPortalClient delegate;
+    private final ReporterMetrics metrics;
+
+    MeteredReportPortalClient(ReportPortalClient delegate, ReporterMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Maybe<StartLaunchRS> startLaunch(StartLaunchRQ rq) {
+        return metered("startLaunch", delegate.startLaunch(rq), null);
+    }
+
+    @Override
+    public Maybe<LaunchResource> mergeLaunches(MergeLaunchesRQ rq) {
+        return metered("mergeLaunches", delegate.mergeLaunches(rq), null);
+    }
+
+    @Override
+    public Maybe<OperationCompletionRS> finishLaunch(String launch, FinishExecutionRQ rq) {
+        return metered("finishLaunch", delegate.finishLaunch(launch, rq), null);
+    }
+
+    @Override
+    public Maybe<ItemCreatedRS> startTestItem(StartTestItemRQ rq) {
+        return metered("startTestItem", delegate.startTestItem(rq), metrics::itemStarted);
+    }
+
+    @Override
+    public Maybe<ItemCreatedRS> startTestItem(String parent, StartTestItemRQ rq) {
+        return metered("startTestItem", delegate.startTestItem(parent, rq), metrics::itemStarted);
+    }
+
+    @Override
+    public Maybe<OperationCompletionRS> finishTestItem(String item, FinishTestItemRQ rq) {
+        return metered("finishTestItem", delegate.finishTestItem(item, rq), metrics::itemFinished);
+    }
+
+    @Override
+    public Maybe<EntryCreatedRS> log(SaveLogRQ rq) {
+        SaveLogRQ.File file = rq.getFile();
+        final int attachments = file == null || file.getContent() == null ? 0 : 1;
+        final long bytes = attachments == 0 ? 0L : file.getContent().length;
+        return metered("log", delegate.log(rq), () -> metrics.logsUploaded(1, attachments, bytes));
+    }
+
+    @Override
+    public Maybe<BatchSaveOperatingRS> log(MultiPartRequest rq) {
+        int logs = 0;
+        for (MultiPartRequest.MultiPartSerialized<?> part : rq.getSerializedRQs()) {
+            Object request = part.getRequest();
+            logs += request instanceof List ? ((List<?>) request).size() : 1;
+        }
+        long bytes = 0L;
+        for (MultiPartRequest.MultiPartBinary binary : rq.getBinaryRQs()) {
+            try {
+                bytes += binary.getData().size();
+            } catch (IOException e) {
+                // spilled attachment is already gone, the upload fails on its own
+            }
+        }
+        final int logCount = logs;
+        final int attachments = rq.getBinaryRQs().size();
+        final long uploaded = bytes;
+        return metered("logBatch", delegate.log(rq), () -> metrics.logsUploaded(logCount, attachments, uploaded));
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private <T> Maybe<T> metered(String operation, Maybe<T> request, Runnable onSuccess) {
+        final LatencyHistogram latency = metrics.requestLatency(operation);
+        return Maybe.defer(() -> {
+            final long started = System.nanoTime();
+            metrics.requestStarted();
+            Maybe<T> measured = request.doOnError(e -> metrics.requestFailed())
+                    .doFinally(() -> metrics.requestFinished(latency, System.nanoTime() - started));
+            return onSuccess == null ? measured : measured.doOnSuccess(rs -> onSuccess.run());
+        });
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.ta.reportportal.ws.model.log.SaveLogRQ.File;
+import io.cucumber.plugin.event.DataTableArgument;
+import io.cucumber.plugin.event.DocStringArgument;
+import io.cucumber.plugin.event.PickleStepTestStep;
+import io.cucumber.plugin.event.StepArgument;
+import io.cucumber.plugin.event.TestStep;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Renders DataTable and DocString step arguments within configured bounds.
+ * <p>
+ * Rendering stops at {@code rp.cucumber.argument.max.rows} table rows, {@code rp.cucumber.argument.max.columns}
+ * table columns and {@code rp.cucumber.argument.max.length} characters, whatever comes first, and states how much
+ * was left out. A value of 0 or less removes the bound. Arguments are rendered into a buffer reused by the thread.
+ * <p>
+ * With {@code rp.cucumber.argument.attach=true} an argument which does not fit is also rendered in full,
+ * straight into the bytes of a text attachment.
+ */
+final class MultilineArguments {
+
+    static final String MAX_ROWS_PROPERTY = "rp.cucumber.argument.max.rows";
+
+    static final String MAX_COLUMNS_PROPERTY = "rp.cucumber.argument.max.columns";
+
+    static final String MAX_LENGTH_PROPERTY = "rp.cucumber.argument.max.length";
+
+    static final String ATTACH_PROPERTY = "rp.cucumber.argument.attach";
+
+    static final String ATTACHMENT_NAME = "argument.txt";
+
+    private static final String TABLE_SEPARATOR = "|";
+    private static final String ROW_SEPARATOR = "\r\n";
+    private static final String DOCSTRING_DECORATOR = "\n\"\"\"\n";
+    private static final String ELLIPSIS = "...";
+
+    /* buffers which grew above this size by unbounded rendering are not kept by the thread */
+    private static final int MAX_RETAINED_BUFFER = 1 << 20;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private static final MultilineArguments DEFAULT = new MultilineArguments(ReporterParameters.getInt(MAX_ROWS_PROPERTY, 100),
+            ReporterParameters.getInt(MAX_COLUMNS_PROPERTY, 32),
+            ReporterParameters.getInt(MAX_LENGTH_PROPERTY, 64 * 1024),
+            ReporterParameters.getBoolean(ATTACH_PROPERTY, false)
+    );
+
+    private final int maxRows;
+    private final int maxColumns;
+    private final int maxLength;
+    private final boolean attachOverflow;
+
+    MultilineArguments(int maxRows, int maxColumns, int maxLength, boolean attachOverflow) {
+        this.maxRows = maxRows > 0 ? maxRows : Integer.MAX_VALUE;
+        this.maxColumns = maxColumns > 0 ? maxColumns : Integer.MAX_VALUE;
+        this.maxLength = maxLength > 0 ? maxLength : Integer.MAX_VALUE;
+        this.attachOverflow = attachOverflow;
+    }
+
+    /**
+     * @return renderer configured by reporter settings
+     */
+    static MultilineArguments getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Render argument of a step
+     *
+     * @param step Cucumber step
+     * @return bounded argument representation or empty string if the step has no argument
+     */
+    String render(TestStep step) {
+        StepArgument argument = getArgument(step);
+        if (argument == null) {
+            return "";
+        }
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        if (argument instanceof DataTableArgument) {
+            renderTable(((DataTableArgument) argument).cells(), buffer);
+        } else if (argument instanceof DocStringArgument) {
+            renderDocString(((DocStringArgument) argument).getContent(), buffer);
+        }
+        String rendered = buffer.toString();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove();
+        }
+        return rendered;
+    }
+
+    /**
+     * Render argument of a step in full if it does not fit into the bounds and overflow attachments are enabled
+     *
+     * @param step Cucumber step
+     * @return text attachment with the whole argument or null
+     */
+    File overflow(TestStep step) {
+        if (!attachOverflow) {
+            return null;
+        }
+        StepArgument argument = getArgument(step);
+        if (argument == null || !exceeds(argument)) {
+            return null;
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(content, StandardCharsets.UTF_8)) {
+            if (argument instanceof DataTableArgument) {
+                for (List<String> row : ((DataTableArgument) argument).cells()) {
+                    writer.write(TABLE_SEPARATOR);
+                    for (String cell : row) {
+                        writer.append(' ').append(cell).append(' ').append(TABLE_SEPARATOR);
+                    }
+                    writer.write(ROW_SEPARATOR);
+                }
+            } else {
+                writer.write(((DocStringArgument) argument).getContent());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        File file = new File();
+        file.setName(ATTACHMENT_NAME);
+        file.setContentType("text/plain");
+        file.setContent(content.toByteArray());
+        return file;
+    }
+
+    private void renderTable(List<List<String>> rows, StringBuilder buffer) {
+        buffer.append(ROW_SEPARATOR);
+        int rendered = 0;
+        for (List<String> row : rows) {
+            if (rendered == maxRows || buffer.length() >= maxLength) {
+                break;
+            }
+            int rowStart = buffer.length();
+            buffer.append(TABLE_SEPARATOR);
+            int columns = Math.min(row.size(), maxColumns);
+            for (int i = 0; i < columns && buffer.length() <= maxLength; i++) {
+                String cell = row.get(i);
+                /* a cell is cut right past the bound, so a single huge cell is never copied in full */
+                int room = maxLength - buffer.length();
+                buffer.append(' ').append(cell, 0, Math.min(cell.length(), Math.max(room, 0))).append(' ').append(TABLE_SEPARATOR);
+            }
+            if (columns < row.size()) {
+                buffer.append(' ').append(ELLIPSIS).append(' ').append(row.size() - columns).append(" more columns");
+            }
+            if (buffer.length() > maxLength && rendered > 0) {
+                buffer.setLength(rowStart);
+                break;
+            }
+            if (buffer.length() > maxLength) {
+                buffer.setLength(maxLength);
+                buffer.append(ELLIPSIS);
+            }
+            buffer.append(ROW_SEPARATOR);
+            rendered++;
+        }
+        if (rendered < rows.size()) {
+            buffer.append(ELLIPSIS).append(' ').append(rows.size() - rendered).append(" more rows").append(ROW_SEPARATOR);
+        }
+    }
+
+    private void renderDocString(String content, StringBuilder buffer) {
+        if (content.isEmpty()) {
+            return;
+        }
+        buffer.append(DOCSTRING_DECORATOR);
+        if (content.length() > maxLength) {
+            buffer.append(content, 0, maxLength).append('\n')
+                    .append(ELLIPSIS).append(' ').append(content.length() - maxLength).append(" more characters");
+        } else {
+            buffer.append(content);
+        }
+        buffer.append(DOCSTRING_DECORATOR);
+    }
+
+    private boolean exceeds(StepArgument argument) {
+        if (argument instanceof DocStringArgument) {
+            return ((DocStringArgument) argument).getContent().length() > maxLength;
+        }
+        if (!(argument instanceof DataTableArgument)) {
+            return false;
+        }
+        List<List<String>> rows = ((DataTableArgument) argument).cells();
+        if (rows.size() > maxRows) {
+            return true;
+        }
+        long length = ROW_SEPARATOR.length();
+        for (List<String> row : rows) {
+            if (row.size() > maxColumns) {
+                return true;
+            }
+            length += TABLE_SEPARATOR.length() + ROW_SEPARATOR.length();
+            for (String cell : row) {
+                length += cell.length() + 3;
+            }
+            if (length - ROW_SEPARATOR.length() > maxLength) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static StepArgument getArgument(TestStep step) {
+        return step instanceof PickleStepTestStep ? ((PickleStepTestStep) step).getStep().getArgument() : null;
+    }
+}
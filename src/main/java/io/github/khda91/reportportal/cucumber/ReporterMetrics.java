@@ -0,0 +1,269 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.service.ReportPortalClient;
+import io.cucumber.plugin.event.Event;
+import io.cucumber.plugin.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latency histograms of a reporter, exposed through JMX and summarized at the end of the run.
+ * <p>
+ * Every recording path is a handful of uncontended adder updates, but metrics register an MBean and print
+ * a summary, so they are disabled by default and switched on with {@code rp.cucumber.metrics=true}.
+ */
+class ReporterMetrics implements ReporterMetricsMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReporterMetrics.class);
+
+    static final String METRICS_PROPERTY = "rp.cucumber.metrics";
+
+    static final String OBJECT_NAME = "io.github.khda91.reportportal.cucumber:type=ReporterMetrics";
+
+    private final Map<String, LatencyHistogram> handlerLatencies = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> requestLatencies = new ConcurrentHashMap<>();
+    private final LongAdder itemsStarted = new LongAdder();
+    private final LongAdder itemsFinished = new LongAdder();
+    private final LongAdder logs = new LongAdder();
+    private final LongAdder attachments = new LongAdder();
+    private final LongAdder bytesUploaded = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder requestErrors = new LongAdder();
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final LongAdder unsentLogs = new LongAdder();
+    private final LongAdder unsentBytes = new LongAdder();
+
+    private volatile LongSupplier queueDepth = () -> 0L;
+
+    /**
+     * Create metrics and register them in the platform MBean server, replacing metrics of a previous reporter
+     *
+     * @return metrics or null if they are disabled
+     */
+    static ReporterMetrics fromParameters() {
+        if (!ReporterParameters.getBoolean(METRICS_PROPERTY, false)) {
+            return null;
+        }
+        ReporterMetrics metrics = new ReporterMetrics();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+        } catch (JMException | RuntimeException e) {
+            LOGGER.warn("Unable to register reporter metrics MBean", e);
+        }
+        return metrics;
+    }
+
+    /**
+     * Wrap event handler to measure its latency
+     *
+     * @param eventType type of the handled event
+     * @param handler   handler to measure
+     * @param <T>       event type
+     * @return measured handler
+     */
+    <T extends Event> EventHandler<T> timed(Class<T> eventType, EventHandler<T> handler) {
+        LatencyHistogram latency = handlerLatencies.computeIfAbsent(eventType.getSimpleName(), t -> new LatencyHistogram());
+        return event -> {
+            long started = System.nanoTime();
+            try {
+                handler.receive(event);
+            } finally {
+                latency.record(System.nanoTime() - started);
+            }
+        };
+    }
+
+    /**
+     * Wrap Report Portal client to measure its requests
+     *
+     * @param client client to measure
+     * @return measured client
+     */
+    ReportPortalClient metered(ReportPortalClient client) {
+        return new MeteredReportPortalClient(client, this);
+    }
+
+    void setQueueDepth(LongSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    LatencyHistogram requestLatency(String operation) {
+        return requestLatencies.computeIfAbsent(operation, o -> new LatencyHistogram());
+    }
+
+    void requestStarted() {
+        requests.increment();
+        inFlightRequests.incrementAndGet();
+    }
+
+    void requestFinished(LatencyHistogram latency, long nanos) {
+        inFlightRequests.decrementAndGet();
+        latency.record(nanos);
+    }
+
+    void requestFailed() {
+        requestErrors.increment();
+    }
+
+    void itemStarted() {
+        itemsStarted.increment();
+    }
+
+    void itemFinished() {
+        itemsFinished.increment();
+    }
+
+    void logsUploaded(int count, int attachmentCount, long bytes) {
+        logs.add(count);
+        attachments.add(attachmentCount);
+        bytesUploaded.add(bytes);
+    }
+
+    /**
+     * Record logs which were not uploaded when the launch was finished
+     *
+     * @param count number of logs
+     * @param bytes size of the logs
+     */
+    void logsUnsent(long count, long bytes) {
+        unsentLogs.add(count);
+        unsentBytes.add(bytes);
+    }
+
+    /**
+     * Log summary of the run
+     */
+    void printSummary() {
+        LOGGER.info(getSummary());
+    }
+
+    @Override
+    public Map<String, Latency> getHandlerLatencies() {
+        return snapshot(handlerLatencies);
+    }
+
+    @Override
+    public Map<String, Latency> getRequestLatencies() {
+        return snapshot(requestLatencies);
+    }
+
+    @Override
+    public long getItemsStarted() {
+        return itemsStarted.sum();
+    }
+
+    @Override
+    public long getItemsFinished() {
+        return itemsFinished.sum();
+    }
+
+    @Override
+    public long getLogs() {
+        return logs.sum();
+    }
+
+    @Override
+    public long getAttachments() {
+        return attachments.sum();
+    }
+
+    @Override
+    public long getBytesUploaded() {
+        return bytesUploaded.sum();
+    }
+
+    @Override
+    public long getUnsentLogs() {
+        return unsentLogs.sum();
+    }
+
+    @Override
+    public long getUnsentBytes() {
+        return unsentBytes.sum();
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getRequestErrors() {
+        return requestErrors.sum();
+    }
+
+    @Override
+    public double getRequestErrorRate() {
+        long total = requests.sum();
+        return total == 0 ? 0.0 : (double) requestErrors.sum() / total;
+    }
+
+    @Override
+    public int getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return queueDepth.getAsLong();
+    }
+
+    @Override
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder("Report Portal reporter summary:");
+        summary.append("\n  items: ").append(getItemsStarted()).append(" started, ").append(getItemsFinished()).append(" finished");
+        summary.append("\n  logs: ").append(getLogs()).append(", attachments: ").append(getAttachments())
+                .append(", uploaded: ").append(getBytesUploaded()).append(" bytes")
+                .append(", unsent: ").append(getUnsentLogs()).append(" logs, ").append(getUnsentBytes()).append(" bytes");
+        summary.append("\n  requests: ").append(getRequests()).append(", failed: ").append(getRequestErrors())
+                .append(String.format(" (%.2f%%)", getRequestErrorRate() * 100))
+                .append(", in flight: ").append(getInFlightRequests())
+                .append(", queue depth: ").append(getQueueDepth());
+        for (Map.Entry<String, Latency> entry : getRequestLatencies().entrySet()) {
+            summary.append("\n  request ").append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        for (Map.Entry<String, Latency> entry : getHandlerLatencies().entrySet()) {
+            summary.append("\n  handler ").append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+        return summary.toString();
+    }
+
+    private static Map<String, Latency> snapshot(Map<String, LatencyHistogram> histograms) {
+        Map<String, Latency> result = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return result;
+    }
+}
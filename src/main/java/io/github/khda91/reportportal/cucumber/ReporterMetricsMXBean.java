@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+
+/**
+ * Management interface of the reporter, registered as {@code io.github.khda91.reportportal.cucumber:type=ReporterMetrics}.
+ * <p>
+ * Durations are in microseconds.
+ */
+public interface ReporterMetricsMXBean {
+
+    /**
+     * @return latency of reporter handlers by Cucumber event type
+     */
+    Map<String, Latency> getHandlerLatencies();
+
+    /**
+     * @return latency of Report Portal requests by operation
+     */
+    Map<String, Latency> getRequestLatencies();
+
+    long getItemsStarted();
+
+    long getItemsFinished();
+
+    long getLogs();
+
+    long getAttachments();
+
+    long getBytesUploaded();
+
+    /**
+     * @return number of logs which were not uploaded when the launch was finished, dropped or still in flight
+     */
+    long getUnsentLogs();
+
+    long getUnsentBytes();
+
+    long getRequests();
+
+    long getRequestErrors();
+
+    double getRequestErrorRate();
+
+    int getInFlightRequests();
+
+    /**
+     * @return number of events waiting for the reporter thread, always 0 if asynchronous reporting is disabled
+     */
+    long getQueueDepth();
+
+    /**
+     * @return all metrics in a compact human readable form
+     */
+    String getSummary();
+
+    /**
+     * Distribution of measured durations
+     */
+    class Latency {
+
+        private final long count;
+        private final long mean;
+        private final long p50;
+        private final long p99;
+        private final long max;
+
+        @ConstructorProperties({"count", "mean", "p50", "p99", "max"})
+        public Latency(long count, long mean, long p50, long p99, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + count + " mean=" + mean + "us p50=" + p50 + "us p99=" + p99 + "us max=" + max + "us";
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.utils.properties.PropertiesLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rp.com.google.common.base.Supplier;
+import rp.com.google.common.base.Suppliers;
+
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Reporter specific settings.
+ * <p>
+ * Values are taken from system properties first and then from reportportal.properties,
+ * the same file the client reads its own settings from.
+ */
+final class ReporterParameters {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReporterParameters.class);
+
+    private static final Supplier<Properties> PROPERTIES = Suppliers.memoize(() -> {
+        try {
+            return PropertiesLoader.load().getProperties();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to load reportportal.properties, reporter settings fall back to defaults", e);
+            return new Properties();
+        }
+    });
+
+    private ReporterParameters() {
+        throw new AssertionError("No instances should exist for the class!");
+    }
+
+    static String getProperty(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            value = PROPERTIES.get().getProperty(name);
+        }
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    static boolean getBoolean(String name, boolean defaultValue) {
+        return Boolean.parseBoolean(getProperty(name, String.valueOf(defaultValue)));
+    }
+
+    static int getInt(String name, int defaultValue) {
+        return (int) getLong(name, defaultValue);
+    }
+
+    static long getLong(String name, long defaultValue) {
+        String value = getProperty(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Property '{}' should be a number, but was '{}'. Using default value {}", name, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    static <E extends Enum<E>> E getEnum(String name, Class<E> type, E defaultValue) {
+        String value = getProperty(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Unknown value '{}' of property '{}'. Using default value {}", value, name, defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * Source of the times which test items and logs are reported with
+ */
+public interface ReportingClock {
+
+    String CLOCK_PROPERTY = "rp.cucumber.clock";
+
+    /**
+     * Times of Cucumber events, so reported times do not depend on when the event is processed
+     */
+    ReportingClock EVENT = Date::from;
+
+    /**
+     * System time at the moment the event is processed
+     */
+    ReportingClock SYSTEM = eventTime -> new Date();
+
+    /**
+     * Return time to report an event with
+     *
+     * @param eventTime time of the Cucumber event
+     * @return time to report
+     */
+    Date getTime(Instant eventTime);
+
+    /**
+     * @return clock configured by {@code rp.cucumber.clock}: EVENT (default) or SYSTEM
+     */
+    static ReportingClock fromParameters() {
+        return "SYSTEM".equalsIgnoreCase(ReporterParameters.getProperty(CLOCK_PROPERTY, "EVENT")) ? SYSTEM : EVENT;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import io.cucumber.plugin.event.Event;
+import io.cucumber.plugin.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded ring buffer which hands Cucumber events over from test threads to a single reporter thread.
+ * <p>
+ * Producers claim a slot with a single CAS and publish the event handler together with the event,
+ * the reporter thread invokes the handlers in the order the slots were claimed. Events of one test
+ * thread keep their order. When the buffer is full producers wait for the reporter thread to catch up.
+ */
+class ReportingQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReportingQueue.class);
+
+    static final String ASYNC_PROPERTY = "rp.cucumber.async";
+
+    static final String CAPACITY_PROPERTY = "rp.cucumber.async.queue.size";
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int SPINS = 100;
+
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final EventHandler<?>[] handlers;
+    private final Event[] events;
+    private final AtomicLong tail = new AtomicLong();
+    private final Thread worker;
+
+    private long head;
+    private volatile long processed;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+
+    ReportingQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        handlers = new EventHandler<?>[size];
+        events = new Event[size];
+        worker = new Thread(this::run, "rp-reporter");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * @return reporting queue if asynchronous reporting is enabled or null otherwise
+     */
+    static ReportingQueue fromParameters() {
+        if (!ReporterParameters.getBoolean(ASYNC_PROPERTY, false)) {
+            return null;
+        }
+        return new ReportingQueue(ReporterParameters.getInt(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+    }
+
+    /**
+     * Put event into the queue, waiting for a free slot if the queue is full
+     *
+     * @param handler handler to invoke on the reporter thread
+     * @param event   Cucumber event
+     * @param <T>     event type
+     */
+    <T extends Event> void submit(EventHandler<T> handler, T event) {
+        if (closed) {
+            throw new IllegalStateException("Reporting queue is already closed");
+        }
+        int idle = 0;
+        for (; ; ) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    handlers[index] = handler;
+                    events[index] = event;
+                    sequences.set(index, position + 1);
+                    if (sleeping) {
+                        LockSupport.unpark(worker);
+                    }
+                    return;
+                }
+            } else if (available < 0) {
+                idle = backOff(idle);
+            }
+        }
+    }
+
+    /**
+     * @return number of submitted events which are not processed yet
+     */
+    long size() {
+        return Math.max(0L, tail.get() - processed);
+    }
+
+    /**
+     * Process all submitted events and stop the reporter thread
+     */
+    void close() {
+        closed = true;
+        long target = tail.get();
+        while (processed < target && worker.isAlive()) {
+            LockSupport.unpark(worker);
+            LockSupport.parkNanos(this, MAX_PARK_NANOS);
+        }
+        LockSupport.unpark(worker);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void run() {
+        int idle = 0;
+        for (; ; ) {
+            int index = (int) head & mask;
+            if (sequences.get(index) == head + 1) {
+                EventHandler<Event> handler = (EventHandler<Event>) handlers[index];
+                Event event = events[index];
+                handlers[index] = null;
+                events[index] = null;
+                sequences.set(index, head + mask + 1);
+                head++;
+                try {
+                    handler.receive(event);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Unable to report " + event.getClass().getSimpleName(), e);
+                }
+                processed = head;
+                idle = 0;
+            } else if (closed && head == tail.get()) {
+                return;
+            } else if (idle < SPINS) {
+                idle++;
+            } else {
+                sleeping = true;
+                if (sequences.get(index) != head + 1 && !closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    private static int backOff(int idle) {
+        if (idle < SPINS) {
+            return idle + 1;
+        }
+        if (idle < SPINS * 2) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(MAX_PARK_NANOS);
+        }
+        return idle + 1;
+    }
+}
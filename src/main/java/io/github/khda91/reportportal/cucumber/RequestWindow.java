@@ -0,0 +1,292 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.service.Launch;
+import com.epam.reportportal.service.ReportPortalClient;
+import com.epam.ta.reportportal.ws.model.FinishTestItemRQ;
+import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
+import io.reactivex.Maybe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the number and the size of Report Portal requests which are issued by reporters but not completed yet.
+ * <p>
+ * A started item occupies the window until its start request completes, a finished item until its finish request
+ * completes, a log until it is uploaded. The window is bounded by {@code rp.cucumber.window.requests} requests and
+ * {@code rp.cucumber.window.bytes} bytes of logs held on the heap, 0 removes a bound. Once the window is full,
+ * {@code rp.cucumber.window.policy} applies:
+ * <ul>
+ * <li>{@link Policy#BLOCK} - the producing thread waits for free space
+ * <li>{@link Policy#DROP} - logs below WARN level or without a known level, and attachments below ERROR level
+ * are dropped, anything else waits
+ * <li>{@link Policy#SPILL} - attachments of logs are written to disk and the logs are admitted, anything else waits
+ * </ul>
+ * A producer never waits longer than {@code rp.cucumber.window.timeout} milliseconds, its request is admitted above
+ * the bounds then, so a Report Portal outage slows the run down instead of hanging it. Once a wait times out, further
+ * requests are admitted without waiting until the window is back within its bounds, so the timeout is not paid
+ * for every request of an outage. Logs of deferred items are taken into the window only once the items are reported.
+ * <p>
+ * Every reporter has a window of its own. Item finishes are released by the client returned from
+ * {@link #windowed(ReportPortalClient)}, as the launch does not report completion of a finish, so item requests
+ * are bounded only for launches which send their requests through that client and are {@link #attach(Launch) attached}
+ * to the window. Requests of other launches bypass the window.
+ */
+final class RequestWindow {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestWindow.class);
+
+    static final String REQUESTS_PROPERTY = "rp.cucumber.window.requests";
+
+    static final String BYTES_PROPERTY = "rp.cucumber.window.bytes";
+
+    static final String POLICY_PROPERTY = "rp.cucumber.window.policy";
+
+    static final String TIMEOUT_PROPERTY = "rp.cucumber.window.timeout";
+
+    /**
+     * What to do with a request which does not fit into the window
+     */
+    enum Policy {
+        BLOCK,
+        DROP,
+        SPILL
+    }
+
+    /* windows by the launches whose item requests they bound */
+    private static final Map<Launch, RequestWindow> LAUNCH_WINDOWS = new ConcurrentHashMap<>();
+
+    private final long maxRequests;
+    private final long maxBytes;
+    private final Policy policy;
+    private final long timeoutNanos;
+
+    private final Object lock = new Object();
+    private long requests;
+    private long bytes;
+    private long itemRequests;
+    /* true from a timed out wait until the window is back within its bounds, requests are not waited for meanwhile */
+    private boolean overflowing;
+
+    /* item IDs with a finish request in the window, the value is not used */
+    private final Map<String, Boolean> finishing = new ConcurrentHashMap<>();
+
+    RequestWindow(long maxRequests, long maxBytes, Policy policy, long timeoutMillis) {
+        this.maxRequests = maxRequests > 0 ? maxRequests : Long.MAX_VALUE;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.policy = policy;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, timeoutMillis));
+    }
+
+    /**
+     * @return window configured by reporter settings
+     */
+    static RequestWindow fromParameters() {
+        return new RequestWindow(ReporterParameters.getLong(REQUESTS_PROPERTY, 10000L),
+                ReporterParameters.getLong(BYTES_PROPERTY, 64L * 1024 * 1024),
+                ReporterParameters.getEnum(POLICY_PROPERTY, Policy.class, Policy.BLOCK),
+                ReporterParameters.getLong(TIMEOUT_PROPERTY, 60000L)
+        );
+    }
+
+    /**
+     * @param launch launch of a reporter
+     * @return window bounding item requests of the launch or null if they are not bounded
+     */
+    static RequestWindow of(Launch launch) {
+        return LAUNCH_WINDOWS.get(launch);
+    }
+
+    /**
+     * Bound item requests of the launch by the window, the launch has to send its requests through the client
+     * returned from {@link #windowed(ReportPortalClient)}
+     *
+     * @param launch launch to bound
+     */
+    void attach(Launch launch) {
+        LAUNCH_WINDOWS.put(launch, this);
+    }
+
+    /**
+     * Stop bounding item requests of the finished launch
+     *
+     * @param launch launch to release
+     */
+    void detach(Launch launch) {
+        LAUNCH_WINDOWS.remove(launch, this);
+    }
+
+    Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return number of item start and finish requests which are not completed yet
+     */
+    long getItemRequests() {
+        synchronized (lock) {
+            return itemRequests;
+        }
+    }
+
+    /**
+     * Take space in the window if it is free right away
+     *
+     * @param size size of the request on the heap
+     * @return true if the space is taken
+     */
+    boolean tryAcquire(long size) {
+        synchronized (lock) {
+            if (!fits(size)) {
+                return false;
+            }
+            take(size);
+            return true;
+        }
+    }
+
+    /**
+     * Take space in the window, waiting for it at most for the configured timeout
+     *
+     * @param size size of the request on the heap
+     */
+    void acquire(long size) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        synchronized (lock) {
+            while (!overflowing && !fits(size)) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    overflowing = true;
+                    LOGGER.warn("Report Portal requests are not completed for {} ms, admitting requests above the window of {} requests"
+                            + " until it drains", TimeUnit.NANOSECONDS.toMillis(timeoutNanos), maxRequests);
+                    break;
+                }
+                try {
+                    lock.wait(Math.max(1L, Math.min(TimeUnit.NANOSECONDS.toMillis(left), 100L)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            take(size);
+        }
+    }
+
+    /**
+     * Take space in the window regardless of the bounds
+     *
+     * @param size size of the request on the heap
+     */
+    void forceAcquire(long size) {
+        synchronized (lock) {
+            take(size);
+        }
+    }
+
+    /**
+     * Return space of a completed request
+     *
+     * @param size size the request was admitted with
+     */
+    void release(long size) {
+        synchronized (lock) {
+            requests--;
+            bytes -= size;
+            if (overflowing && requests < maxRequests && bytes <= maxBytes) {
+                overflowing = false;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Start test item within the window
+     *
+     * @param launch   launch to start the item in
+     * @param parentId parent item ID or null for a root item
+     * @param rq       start request
+     * @return item ID
+     */
+    Maybe<String> startTestItem(Launch launch, Maybe<String> parentId, StartTestItemRQ rq) {
+        acquireItem();
+        Maybe<String> itemId = parentId == null ? launch.startTestItem(rq) : launch.startTestItem(parentId, rq);
+        itemId.subscribe(id -> releaseItem(), e -> releaseItem(), this::releaseItem);
+        return itemId;
+    }
+
+    /**
+     * Finish test item within the window
+     *
+     * @param launch launch the item belongs to
+     * @param itemId item ID
+     * @param rq     finish request
+     */
+    void finishTestItem(Launch launch, Maybe<String> itemId, FinishTestItemRQ rq) {
+        acquireItem();
+        // subscribed before the launch, so the ID is registered before the finish request can be sent
+        itemId.subscribe(id -> finishing.put(id, Boolean.TRUE), e -> releaseItem(), this::releaseItem);
+        launch.finishTestItem(itemId, rq);
+    }
+
+    /**
+     * Wrap Report Portal client to release finished items from the window
+     *
+     * @param client client to wrap
+     * @return wrapped client
+     */
+    ReportPortalClient windowed(ReportPortalClient client) {
+        return new WindowedReportPortalClient(client, this);
+    }
+
+    /**
+     * Release finish of an item once its finish request is completed, retries of the request are not released again
+     *
+     * @param itemId item ID
+     */
+    void itemFinished(String itemId) {
+        if (finishing.remove(itemId) != null) {
+            releaseItem();
+        }
+    }
+
+    private void acquireItem() {
+        acquire(0L);
+        synchronized (lock) {
+            itemRequests++;
+        }
+    }
+
+    private void releaseItem() {
+        synchronized (lock) {
+            itemRequests--;
+        }
+        release(0L);
+    }
+
+    private boolean fits(long size) {
+        return requests < maxRequests && (bytes == 0 || bytes + size <= maxBytes);
+    }
+
+    private void take(long size) {
+        requests++;
+        bytes += size;
+    }
+}
@@ -15,38 +15,23 @@
  */
 package io.github.khda91.reportportal.cucumber;
 
-import io.cucumber.core.internal.gherkin.AstBuilder;
-import io.cucumber.core.internal.gherkin.Parser;
-import io.cucumber.core.internal.gherkin.ParserException;
-import io.cucumber.core.internal.gherkin.TokenMatcher;
-import io.cucumber.core.internal.gherkin.ast.Background;
-import io.cucumber.core.internal.gherkin.ast.Examples;
-import io.cucumber.core.internal.gherkin.ast.Feature;
-import io.cucumber.core.internal.gherkin.ast.GherkinDocument;
-import io.cucumber.core.internal.gherkin.ast.ScenarioDefinition;
-import io.cucumber.core.internal.gherkin.ast.ScenarioOutline;
-import io.cucumber.core.internal.gherkin.ast.Step;
-import io.cucumber.core.internal.gherkin.ast.TableRow;
 import io.cucumber.plugin.event.PickleStepTestStep;
+import io.cucumber.plugin.event.Step;
 import io.cucumber.plugin.event.TestCase;
 import io.cucumber.plugin.event.TestSourceRead;
 import io.cucumber.plugin.event.TestStep;
 import io.reactivex.Maybe;
 
-import java.util.ArrayDeque;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.github.khda91.reportportal.cucumber.Utils.extractPickleTags;
-import static io.github.khda91.reportportal.cucumber.Utils.extractTags;
 
 /**
  * Running context that contains mostly manipulations with Gherkin objects.
- * Keeps necessary information regarding current Feature, Scenario and Step
+ * Keeps necessary information regarding current Feature, Scenario and Step, resolved through the {@link FeatureIndex}
+ * shared by all scenarios of a feature
  *
  */
 class RunningContext {
@@ -57,69 +42,69 @@ class RunningContext {
 
     public static class FeatureContext {
 
-        private static Map<String, TestSourceRead> pathToReadEventMap = new HashMap<>();
+        private static final FeatureSourceStore SOURCE_STORE = FeatureSourceStore.fromParameters();
 
         private String currentFeatureUri;
         private Maybe<String> currentFeatureId;
-        private Feature currentFeature;
-        private Set<String> tags;
+        private FeatureIndex featureIndex;
+        private AtomicInteger remainingScenarios;
 
         FeatureContext() {
-            tags = new HashSet<>();
+            remainingScenarios = new AtomicInteger();
         }
 
         static void addTestSourceReadEvent(String path, TestSourceRead event) {
-            pathToReadEventMap.put(path, event);
+            SOURCE_STORE.put(path, event.getSource());
+            GherkinDocumentCache.parseAsync(path, SOURCE_STORE);
         }
 
         ScenarioContext getScenarioContext(TestCase testCase) {
-            ScenarioDefinition scenario = getScenario(testCase);
-            ScenarioContext context = new ScenarioContext();
-            context.processScenario(scenario);
-            context.setTestCase(testCase);
-            context.processBackground(getBackground());
-            context.processScenarioOutline(scenario);
-            context.processTags(testCase.getTags());
-            return context;
+            return new ScenarioContext(featureIndex, getScenarioEntry(testCase), testCase);
         }
 
 
         FeatureContext processTestSourceReadEvent(TestCase testCase) {
-            TestSourceRead event = pathToReadEventMap.get(testCase.getUri().toString());
-            currentFeature = getFeature(event.getSource());
-            currentFeatureUri = event.getUri().toString();
-            tags = extractTags(currentFeature.getTags());
+            currentFeatureUri = testCase.getUri().toString();
+            featureIndex = GherkinDocumentCache.getFeatureIndex(currentFeatureUri, SOURCE_STORE);
+            remainingScenarios.set(featureIndex.getScenarioCount());
             return this;
         }
 
-        Feature getFeature(String source) {
-            Parser<GherkinDocument> parser = new Parser<>(new AstBuilder());
-            TokenMatcher matcher = new TokenMatcher();
-            GherkinDocument gherkinDocument;
-            try {
-                gherkinDocument = parser.parse(source, matcher);
-            } catch (ParserException e) {
-                // Ignore exceptions
-                return null;
-            }
-            return gherkinDocument.getFeature();
+        /**
+         * Account a finished scenario of the feature
+         *
+         * @return true if it was the last expected scenario of the feature
+         */
+        boolean finishScenario() {
+            return remainingScenarios.decrementAndGet() == 0;
         }
 
-        Background getBackground() {
-            ScenarioDefinition background = getFeature().getChildren().get(0);
-            if (background instanceof Background) {
-                return (Background) background;
-            } else {
-                return null;
-            }
+        /**
+         * Release source and parsed document of the finished feature
+         */
+        void release() {
+            GherkinDocumentCache.release(currentFeatureUri);
+            SOURCE_STORE.release(currentFeatureUri);
         }
 
-        Feature getFeature() {
-            return currentFeature;
+        /**
+         * Release sources and parsed documents of all features once the run is finished
+         */
+        static void releaseAll() {
+            GherkinDocumentCache.clear();
+            SOURCE_STORE.clear();
+        }
+
+        String getKeyword() {
+            return featureIndex.getKeyword();
+        }
+
+        String getName() {
+            return featureIndex.getName();
         }
 
         Set<String> getTags() {
-            return tags;
+            return featureIndex.getTags();
         }
 
         String getUri() {
@@ -134,25 +119,14 @@ class RunningContext {
             this.currentFeatureId = featureId;
         }
 
-        <T extends ScenarioDefinition> T getScenario(TestCase testCase) {
-            List<ScenarioDefinition> featureScenarios = getFeature().getChildren();
-            for (ScenarioDefinition scenario : featureScenarios) {
-                if (scenario instanceof Background) {
-                    continue;
-                }
-                if (testCase.getLine() == scenario.getLocation().getLine() && testCase.getName().equals(scenario.getName())) {
-                    return (T) scenario;
-                } else {
-                    if (scenario instanceof ScenarioOutline) {
-                        for (Examples example : ((ScenarioOutline) scenario).getExamples()) {
-                            for (TableRow tableRow : example.getTableBody()) {
-                                if (tableRow.getLocation().getLine() == testCase.getLine()) {
-                                    return (T) scenario;
-                                }
-                            }
-                        }
-                    }
-                }
+        /**
+         * @param testCase running test case
+         * @return position of the test case in the feature index or -1 if the feature could not be parsed
+         */
+        int getScenarioEntry(TestCase testCase) {
+            int entry = featureIndex.getEntry(testCase.getLine());
+            if (entry >= 0 || featureIndex.getScenarioCount() == 0) {
+                return entry;
             }
             throw new IllegalStateException("Scenario can't be null!");
         }
@@ -161,61 +135,38 @@ class RunningContext {
 
     public static class ScenarioContext {
 
-        private static Map<Integer, ArrayDeque<String>> outlineIterationsMap = new HashMap<>();
-
         private Maybe<String> id = null;
-        private Background background;
-        private ScenarioDefinition scenario;
-        private Queue<Step> backgroundSteps;
-        private Map<Integer, Step> scenarioLocationMap;
-        private Set<String> tags;
-        private TestCase testCase;
-        private boolean hasBackground = false;
-
-        ScenarioContext() {
-            backgroundSteps = new ArrayDeque<>();
-            scenarioLocationMap = new HashMap<>();
-            tags = new HashSet<>();
-        }
-
-        ScenarioContext processScenario(ScenarioDefinition scenario) {
-            this.scenario = scenario;
-            for (Step step : scenario.getSteps()) {
-                scenarioLocationMap.put(step.getLocation().getLine(), step);
-            }
-            return this;
-        }
-
-        void processBackground(Background background) {
-            if (background != null) {
-                this.background = background;
-                hasBackground = true;
-                backgroundSteps.addAll(background.getSteps());
-                mapBackgroundSteps(background);
-            }
-        }
-
-        void processScenarioOutline(ScenarioDefinition scenarioOutline) {
-            if (isScenarioOutline(scenarioOutline) && !hasOutlineSteps()) {
-                int num = 0;
-                outlineIterationsMap.put(scenario.getLocation().getLine(), new ArrayDeque<>());
-                for (Examples example : ((ScenarioOutline) scenarioOutline).getExamples()) {
-                    num += example.getTableBody().size();
-                }
-                for (int i = 1; i <= num; i++) {
-                    outlineIterationsMap.get(scenario.getLocation().getLine()).add(" [" + i + "]");
-                }
+        private Maybe<String> currentStepId;
+        private Maybe<String> hookStepId;
+        private String hookStatus;
+        private final FeatureIndex featureIndex;
+        private final FeatureIndex.Definition scenario;
+        private final Set<String> tags;
+        private final TestCase testCase;
+        /* position of the example row among all examples of the outline, starting from 1, or 0 for a plain scenario */
+        private final int outlineIteration;
+
+        ScenarioContext(FeatureIndex featureIndex, int entry, TestCase testCase) {
+            this.featureIndex = featureIndex;
+            this.testCase = testCase;
+            if (entry < 0) {
+                // the feature could not be parsed, so the scenario is described by its pickle
+                this.scenario = new FeatureIndex.Definition(testCase.getKeyword(), testCase.getName(), testCase.getLine(), false);
+                this.outlineIteration = 0;
+                this.tags = extractPickleTags(testCase.getTags());
+                return;
             }
+            this.scenario = featureIndex.getScenario(entry);
+            this.outlineIteration = scenario.isOutline() ? featureIndex.getExampleRow(entry) + 1 : 0;
+            this.tags = sharedTags(featureIndex.getTags(entry), testCase.getTags());
         }
 
-        void processTags(List<String> pickleTags) {
-            tags = extractPickleTags(pickleTags);
-        }
-
-        void mapBackgroundSteps(Background background) {
-            for (Step step : background.getSteps()) {
-                scenarioLocationMap.put(step.getLocation().getLine(), step);
+        /* pickle tags almost always are the tags written in the feature, so the set of the index is shared */
+        private static Set<String> sharedTags(Set<String> featureTags, List<String> pickleTags) {
+            if (featureTags.size() == pickleTags.size() && featureTags.containsAll(pickleTags)) {
+                return featureTags;
             }
+            return extractPickleTags(pickleTags);
         }
 
         String getName() {
@@ -227,29 +178,36 @@ class RunningContext {
         }
 
         int getLine() {
-            if (isScenarioOutline(scenario)) {
+            if (scenario.isOutline()) {
                 return testCase.getLine();
             }
-            return scenario.getLocation().getLine();
+            return scenario.getLine();
         }
 
         Set<String> getTags() {
             return tags;
         }
 
-        String getStepPrefix() {
-            if (hasBackground() && withBackground()) {
-                return background.getKeyword().toUpperCase() + AbstractReporter.COLON_INFIX;
-            } else {
-                return "";
-            }
+        /**
+         * @param testStep running step
+         * @return background keyword prefix for background steps, empty string otherwise
+         */
+        String getStepPrefix(TestStep testStep) {
+            return featureIndex.getStepPrefix(((PickleStepTestStep) testStep).getStep().getLine());
         }
 
-        Step getStep(TestStep testStep) {
-            PickleStepTestStep pickleStepTestStep = (PickleStepTestStep) testStep;
-            Step step = scenarioLocationMap.get(pickleStepTestStep.getStep().getLine());
-            if (step != null) {
-                return step;
+        /**
+         * @param testStep running step
+         * @return keyword of the step as written in the feature
+         */
+        String getStepKeyword(TestStep testStep) {
+            Step step = ((PickleStepTestStep) testStep).getStep();
+            String keyword = featureIndex.getStepKeyword(step.getLine());
+            if (keyword != null) {
+                return keyword;
+            }
+            if (featureIndex.getScenarioCount() == 0) {
+                return step.getKeyWord();
             }
             throw new IllegalStateException(String.format("Trying to get step for unknown line in feature. Scenario: %s, line: %s", scenario.getName(), getLine()));
         }
@@ -265,36 +223,42 @@ class RunningContext {
             id = newId;
         }
 
-        void setTestCase(TestCase testCase) {
-            this.testCase = testCase;
+        /**
+         * Replace the ID a deferred scenario was running with by the ID of its reported item
+         *
+         * @param reportedId ID of the reported scenario item
+         */
+        void replaceId(Maybe<String> reportedId) {
+            id = reportedId;
         }
 
-        void nextBackgroundStep() {
-            backgroundSteps.poll();
+        Maybe<String> getCurrentStepId() {
+            return currentStepId;
         }
 
-        boolean isScenarioOutline(ScenarioDefinition scenario) {
-            if (scenario != null) {
-                return scenario instanceof ScenarioOutline;
-            }
-            return false;
+        void setCurrentStepId(Maybe<String> currentStepId) {
+            this.currentStepId = currentStepId;
+        }
+
+        Maybe<String> getHookStepId() {
+            return hookStepId;
         }
 
-        boolean withBackground() {
-            return !backgroundSteps.isEmpty();
+        void setHookStepId(Maybe<String> hookStepId) {
+            this.hookStepId = hookStepId;
         }
 
-        boolean hasBackground() {
-            return hasBackground && background != null;
+        String getHookStatus() {
+            return hookStatus;
         }
 
-        boolean hasOutlineSteps() {
-            return outlineIterationsMap.get(scenario.getLocation().getLine()) != null && !outlineIterationsMap.get(scenario.getLocation().getLine()).isEmpty();
+        void setHookStatus(String hookStatus) {
+            this.hookStatus = hookStatus;
         }
 
         String getOutlineIteration() {
-            if (hasOutlineSteps()) {
-                return outlineIterationsMap.get(scenario.getLocation().getLine()).poll();
+            if (outlineIteration > 0) {
+                return " [" + outlineIteration + "]";
             }
             return null;
         }
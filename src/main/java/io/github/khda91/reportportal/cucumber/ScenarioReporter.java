@@ -16,15 +16,18 @@
 package io.github.khda91.reportportal.cucumber;
 
 import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
-import io.cucumber.core.internal.gherkin.ast.Step;
 import io.cucumber.plugin.event.HookType;
 import io.cucumber.plugin.event.Result;
+import io.cucumber.plugin.event.TestCase;
+import io.cucumber.plugin.event.TestCaseFinished;
 import io.cucumber.plugin.event.TestStep;
 import io.reactivex.Maybe;
 import rp.com.google.common.base.Supplier;
 import rp.com.google.common.base.Suppliers;
 
-import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Cucumber reporter for ReportPortal that reports scenarios as test methods.
@@ -42,45 +45,85 @@ import java.util.Calendar;
  * Background steps and hooks are reported as part of corresponding scenarios.
  * Outline example rows are reported as individual scenarios with [ROW NUMBER]
  * after the name.
+ * <p>
+ * If {@code rp.cucumber.scenario.transcript} is enabled, steps and hooks of a scenario are not logged one by one,
+ * but collected into a transcript which is sent as a single log when the scenario is finished. Errors are still
+ * sent as separate logs.
  *
  */
 public class ScenarioReporter extends AbstractReporter {
     private static final String SEPARATOR = "-------------------------";
 
+    static final String TRANSCRIPT_PROPERTY = "rp.cucumber.scenario.transcript";
+
     protected Supplier<Maybe<String>> rootSuiteId;
 
+    private final boolean transcriptMode = ReporterParameters.getBoolean(TRANSCRIPT_PROPERTY, false);
+
+    /* transcripts of running test cases, used only in transcript mode */
+    private final Map<TestCase, Transcript> transcripts = new ConcurrentHashMap<>();
+
     @Override
-    protected void beforeLaunch() {
-        super.beforeLaunch();
-        startRootItem();
+    protected void beforeLaunch(Date startTime) {
+        super.beforeLaunch(startTime);
+        startRootItem(startTime);
     }
 
     @Override
-    protected void beforeStep(TestStep testStep) {
-        Step step = currentScenarioContext.getStep(testStep);
-        String decoratedStepName = decorateMessage(Utils.buildNodeName(currentScenarioContext.getStepPrefix(), step.getKeyword(), Utils.getStepName(testStep), " "));
+    protected void beforeStep(TestCase testCase, TestStep testStep, Date startTime) {
+        RunningContext.ScenarioContext scenarioContext = getScenarioContext(testCase);
+        String keyword = scenarioContext.getStepKeyword(testStep);
         String multilineArg = Utils.buildMultilineArgument(testStep);
-        Utils.sendLog(decoratedStepName + multilineArg, "INFO", null);
+        attachArgumentOverflow(scenarioContext.getId(), testStep, startTime);
+        if (transcriptMode) {
+            getTranscript(testCase, startTime).startStep(Utils.buildNodeName(scenarioContext.getStepPrefix(testStep),
+                    keyword,
+                    Utils.getStepName(testStep),
+                    multilineArg
+            ));
+            return;
+        }
+        String decoratedStepName = decorateMessage(Utils.buildNodeName(scenarioContext.getStepPrefix(testStep), keyword, Utils.getStepName(testStep), " "));
+        Utils.sendLog(logBatcher.get(), scenarioContext.getId(), decoratedStepName + multilineArg, "INFO", null, startTime);
     }
 
     @Override
-    protected void afterStep(Result result) {
-        reportResult(result, decorateMessage("STEP " + result.getStatus().toString().toUpperCase()));
+    protected void afterStep(TestCase testCase, Result result, Date endTime) {
+        if (transcriptMode) {
+            getTranscript(testCase, endTime).finishStep(result);
+            reportResult(testCase, result, null, endTime);
+            return;
+        }
+        reportResult(testCase, result, decorateMessage("STEP " + result.getStatus().toString().toUpperCase()), endTime);
     }
 
     @Override
-    protected void beforeHooks(HookType hookType) {
+    protected void beforeHooks(TestCase testCase, HookType hookType, Date startTime) {
         // noop
     }
 
     @Override
-    protected void afterHooks(Boolean isBefore) {
+    protected void afterHooks(TestCase testCase, Boolean isBefore, Date endTime) {
         // noop
     }
 
     @Override
-    protected void hookFinished(TestStep step, Result result, boolean isBefore) {
-        reportResult(result, (isBefore ? "@Before" : "@After") + "\n" + step.getCodeLocation());
+    protected void hookFinished(TestCase testCase, TestStep step, Result result, boolean isBefore, Date endTime) {
+        if (transcriptMode) {
+            getTranscript(testCase, endTime).hook((isBefore ? "@Before " : "@After ") + step.getCodeLocation(), result);
+            reportResult(testCase, result, null, endTime);
+            return;
+        }
+        reportResult(testCase, result, (isBefore ? "@Before" : "@After") + "\n" + step.getCodeLocation(), endTime);
+    }
+
+    @Override
+    protected void afterScenario(TestCaseFinished event) {
+        Transcript transcript = transcripts.remove(event.getTestCase());
+        if (transcript != null) {
+            Utils.sendLog(logBatcher.get(), getLogTarget(event.getTestCase()), transcript.toString(), "INFO", null, transcript.startTime);
+        }
+        super.afterScenario(event);
     }
 
     @Override
@@ -100,32 +143,40 @@ public class ScenarioReporter extends AbstractReporter {
     }
 
     @Override
-    protected void afterLaunch() {
-        finishRootItem();
-        super.afterLaunch();
+    protected void afterLaunch(Date endTime) {
+        finishRootItem(endTime);
+        super.afterLaunch(endTime);
     }
 
     /**
      * Start root suite
+     *
+     * @param endTime root suite end time
      */
-    protected void finishRootItem() {
-        Utils.finishTestItem(rp.get(), rootSuiteId.get());
+    protected void finishRootItem(Date endTime) {
+        Utils.finishTestItem(rp.get(), rootSuiteId.get(), endTime);
         rootSuiteId = null;
     }
 
     /**
      * Start root suite
+     *
+     * @param startTime root suite start time
      */
-    protected void startRootItem() {
+    protected void startRootItem(final Date startTime) {
         rootSuiteId = Suppliers.memoize(() -> {
             StartTestItemRQ rq = new StartTestItemRQ();
             rq.setName("Root User Story");
-            rq.setStartTime(Calendar.getInstance().getTime());
+            rq.setStartTime(startTime);
             rq.setType("STORY");
-            return rp.get().startTestItem(rq);
+            return Utils.startTestItem(rp.get(), null, rq);
         });
     }
 
+    private Transcript getTranscript(TestCase testCase, Date time) {
+        return transcripts.computeIfAbsent(testCase, t -> new Transcript(time));
+    }
+
     /**
      * Add separators to log item to distinguish from real log messages
      *
@@ -135,4 +186,49 @@ public class ScenarioReporter extends AbstractReporter {
     private String decorateMessage(String message) {
         return ScenarioReporter.SEPARATOR + message + ScenarioReporter.SEPARATOR;
     }
+
+    /**
+     * Steps and hooks of a running scenario with their statuses
+     */
+    private static class Transcript {
+
+        /* the transcript is logged at the time of its first line, so it precedes errors of the scenario */
+        private final Date startTime;
+        private final StringBuilder lines = new StringBuilder();
+        private String runningStep;
+
+        Transcript(Date startTime) {
+            this.startTime = startTime;
+        }
+
+        void startStep(String step) {
+            runningStep = step;
+        }
+
+        void finishStep(Result result) {
+            append(runningStep, result);
+            runningStep = null;
+        }
+
+        void hook(String hook, Result result) {
+            append(hook, result);
+        }
+
+        private void append(String line, Result result) {
+            if (lines.length() > 0) {
+                lines.append('\n');
+            }
+            // multiline arguments end with a line break of their own
+            int end = line.length();
+            while (end > 0 && (line.charAt(end - 1) == '\n' || line.charAt(end - 1) == '\r')) {
+                end--;
+            }
+            lines.append('[').append(result.getStatus()).append("] ").append(line, 0, end);
+        }
+
+        @Override
+        public String toString() {
+            return lines.toString();
+        }
+    }
 }
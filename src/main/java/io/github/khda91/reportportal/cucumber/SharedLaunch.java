@@ -0,0 +1,279 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.service.Launch;
+import com.epam.reportportal.service.ReportPortal;
+import com.epam.reportportal.service.ReportPortalClient;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRQ;
+import io.reactivex.Maybe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Launch shared by JVMs forked for the same test run, e.g. by surefire with {@code forkCount} above 1.
+ * <p>
+ * Forks meet at the state file set by {@code rp.cucumber.launch.rendezvous}. The first fork starts the launch and
+ * writes its ID to the file, the other forks attach to the launch instead of starting their own. Every fork holds a
+ * shared OS lock on the file while it runs, so the locks of crashed forks are released by the OS, and the fork which
+ * leaves last finishes the launch. Forks which are not started together may set {@code rp.cucumber.launch.forks} to
+ * the number of forks of the run, then the launch is finished only once that many forks joined it. The state of
+ * a finished launch is cleared, so keep the file in the build directory to let an aborted run be cleaned with it.
+ * <p>
+ * OS locks are held by the whole JVM, so reporters of one JVM share the membership of the first one of them to join:
+ * they attach to its launch and the fork leaves the launch once all of them left it.
+ * <p>
+ * Each fork reports its features under its own root items.
+ */
+final class SharedLaunch {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedLaunch.class);
+
+    static final String RENDEZVOUS_PROPERTY = "rp.cucumber.launch.rendezvous";
+
+    static final String FORKS_PROPERTY = "rp.cucumber.launch.forks";
+
+    private static final String LAUNCH_KEY = "launch";
+    private static final String JOINED_KEY = "joined";
+
+    /* lock regions past any content of the file: the first one guards the state, the second one marks running forks */
+    private static final long STATE_REGION = Long.MAX_VALUE - 2;
+    private static final long MEMBERS_REGION = Long.MAX_VALUE - 1;
+
+    /* reporters of this JVM holding the membership of the fork, by their state files; guards the state of all launches */
+    private static final Map<Path, SharedLaunch> MEMBERS = new HashMap<>();
+
+    private final Path file;
+    private final int forks;
+
+    /* reporter holding the membership of the fork, this launch itself if it joined first */
+    private SharedLaunch member;
+
+    /* open while the fork is a member of the shared launch */
+    private FileChannel channel;
+    private FileLock membership;
+    private String launchId;
+    private int reporters;
+
+    SharedLaunch(Path file, int forks) {
+        this.file = file;
+        this.forks = forks;
+    }
+
+    /**
+     * @return shared launch configured by reporter parameters or null if the launch is not shared
+     */
+    static SharedLaunch fromParameters() {
+        String rendezvous = ReporterParameters.getProperty(RENDEZVOUS_PROPERTY, null);
+        return rendezvous == null ? null : new SharedLaunch(Paths.get(rendezvous), ReporterParameters.getInt(FORKS_PROPERTY, 0));
+    }
+
+    /**
+     * Start the shared launch or attach to the launch started by another fork or by another reporter of this JVM.
+     * If the rendezvous fails, the reporter starts a launch of its own.
+     *
+     * @param portal  Report Portal created with the client returned from {@link #attached(ReportPortalClient)}
+     * @param rq      start request of the launch
+     * @param timeout max time to wait for the launch ID in seconds, other forks wait as long for the rendezvous
+     * @return launch to report to
+     */
+    Launch join(ReportPortal portal, StartLaunchRQ rq, long timeout) {
+        synchronized (MEMBERS) {
+            SharedLaunch local = MEMBERS.get(key());
+            if (local != null) {
+                local.reporters++;
+                member = local;
+                LOGGER.info("Attached to launch {} shared through {} by another reporter of this JVM", local.launchId, file);
+                return portal.withLaunch(Maybe.just(local.launchId));
+            }
+            return joinFork(portal, rq, timeout);
+        }
+    }
+
+    private Launch joinFork(ReportPortal portal, StartLaunchRQ rq, long timeout) {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock stateLock = channel.lock(STATE_REGION, 1L, false);
+            try {
+                Properties state = readState();
+                String launchId = state.getProperty(LAUNCH_KEY);
+                int joined = Integer.parseInt(state.getProperty(JOINED_KEY, "0"));
+                if (launchId == null || isFinished(joined)) {
+                    Launch launch = portal.newLaunch(rq);
+                    launchId = launch.start().timeout(timeout, TimeUnit.SECONDS).blockingGet();
+                    if (launchId == null) {
+                        throw new IllegalStateException("Launch was not started");
+                    }
+                    writeState(launchId, 1);
+                    membership = channel.lock(MEMBERS_REGION, 1L, true);
+                    joined(launchId);
+                    LOGGER.info("Started launch {} shared through {}", launchId, file);
+                    return launch;
+                }
+                writeState(launchId, joined + 1);
+                membership = channel.lock(MEMBERS_REGION, 1L, true);
+                joined(launchId);
+                LOGGER.info("Attached to launch {} shared through {} as fork {}", launchId, file, joined + 1);
+                return portal.withLaunch(Maybe.just(launchId));
+            } finally {
+                stateLock.release();
+            }
+        } catch (OverlappingFileLockException e) {
+            LOGGER.warn("State file " + file + " is locked by this JVM outside of the shared launch, e.g. through another "
+                    + "path, starting a launch of this reporter", e);
+            close();
+            return portal.newLaunch(rq);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to share launch through " + file + ", starting a launch of this JVM", e);
+            close();
+            return portal.newLaunch(rq);
+        }
+    }
+
+    private void joined(String launchId) {
+        this.launchId = launchId;
+        reporters = 1;
+        member = this;
+        MEMBERS.put(key(), this);
+    }
+
+    private Path key() {
+        return file.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Wrap Report Portal client to finish the launch only when the last fork leaves it
+     *
+     * @param client client to wrap
+     * @return wrapped client
+     */
+    ReportPortalClient attached(ReportPortalClient client) {
+        return new SharedLaunchClient(client, this);
+    }
+
+    /**
+     * Leave the shared launch once all items of the fork are finished
+     *
+     * @return true if the reporter has to finish the launch: its fork left last or it is not a member of a shared launch
+     */
+    boolean leave() {
+        synchronized (MEMBERS) {
+            SharedLaunch local = member;
+            if (local == null) {
+                return true;
+            }
+            member = null;
+            if (--local.reporters > 0) {
+                LOGGER.info("Left launch shared through {}, it is left by the last reporter of this JVM", file);
+                return false;
+            }
+            MEMBERS.remove(key());
+            return local.leaveFork();
+        }
+    }
+
+    private boolean leaveFork() {
+        try {
+            FileLock stateLock = channel.lock(STATE_REGION, 1L, false);
+            try {
+                membership.release();
+                int joined = Integer.parseInt(readState().getProperty(JOINED_KEY, "0"));
+                if (!isFinished(joined)) {
+                    LOGGER.info("Left launch shared through {}, it is finished by the last fork", file);
+                    return false;
+                }
+                channel.truncate(0L);
+                return true;
+            } finally {
+                stateLock.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to leave launch shared through " + file + ", it is left to other forks to finish", e);
+            return false;
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * @param joined number of forks which joined the launch
+     * @return true if no fork runs and no more forks are expected
+     */
+    private boolean isFinished(int joined) throws IOException {
+        FileLock probe = channel.tryLock(MEMBERS_REGION, 1L, false);
+        if (probe == null) {
+            return false;
+        }
+        probe.release();
+        return forks <= 0 || joined >= forks;
+    }
+
+    private Properties readState() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // read the whole file
+        }
+        Properties state = new Properties();
+        state.load(new ByteArrayInputStream(buffer.array(), 0, buffer.position()));
+        return state;
+    }
+
+    private void writeState(String launchId, int joined) throws IOException {
+        Properties state = new Properties();
+        state.setProperty(LAUNCH_KEY, launchId);
+        state.setProperty(JOINED_KEY, String.valueOf(joined));
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        state.store(content, "Report Portal launch shared by forks");
+        channel.truncate(0L);
+        ByteBuffer buffer = ByteBuffer.wrap(content.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+        channel.force(false);
+    }
+
+    private void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close " + file, e);
+            }
+            channel = null;
+            membership = null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.restendpoint.http.MultiPartRequest;
+import com.epam.reportportal.service.ReportPortalClient;
+import com.epam.ta.reportportal.ws.model.BatchSaveOperatingRS;
+import com.epam.ta.reportportal.ws.model.EntryCreatedRS;
+import com.epam.ta.reportportal.ws.model.FinishExecutionRQ;
+import com.epam.ta.reportportal.ws.model.FinishTestItemRQ;
+import com.epam.ta.reportportal.ws.model.OperationCompletionRS;
+import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
+import com.epam.ta.reportportal.ws.model.item.ItemCreatedRS;
+import com.epam.ta.reportportal.ws.model.launch.LaunchResource;
+import com.epam.ta.reportportal.ws.model.launch.MergeLaunchesRQ;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRQ;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRS;
+import com.epam.ta.reportportal.ws.model.log.SaveLogRQ;
+import io.reactivex.Maybe;
+
+/**
+ * Report Portal client decorator which finishes a {@link SharedLaunch} only when the last fork leaves it.
+ */
+class SharedLaunchClient implements ReportPortalClient {
+
+    private final ReportPortalClient delegate;
+    private final SharedLaunch sharedLaunch;
+
+    SharedLaunchClient(ReportPortalClient delegate, SharedLaunch sharedLaunch) {
+        this.delegate = delegate;
+        this.sharedLaunch = sharedLaunch;
+    }
+
+    @Override
+    public Maybe<StartLaunchRS> startLaunch(StartLaunchRQ rq) {
+        return delegate.startLaunch(rq);
+    }
+
+    @Override
+    public Maybe<LaunchResource> mergeLaunches(MergeLaunchesRQ rq) {
+        return delegate.mergeLaunches(rq);
+    }
+
+    @Override
+    public Maybe<OperationCompletionRS> finishLaunch(String launch, FinishExecutionRQ rq) {
+        // called by the launch once all items of this fork are finished
+        if (!sharedLaunch.leave()) {
+            return Maybe.just(new OperationCompletionRS("Launch " + launch + " is finished by the last fork"));
+        }
+        return delegate.finishLaunch(launch, rq);
+    }
+
+    @Override
+    public Maybe<ItemCreatedRS> startTestItem(StartTestItemRQ rq) {
+        return delegate.startTestItem(rq);
+    }
+
+    @Override
+    public Maybe<ItemCreatedRS> startTestItem(String parent, StartTestItemRQ rq) {
+        return delegate.startTestItem(parent, rq);
+    }
+
+    @Override
+    public Maybe<OperationCompletionRS> finishTestItem(String item, FinishTestItemRQ rq) {
+        return delegate.finishTestItem(item, rq);
+    }
+
+    @Override
+    public Maybe<EntryCreatedRS> log(SaveLogRQ rq) {
+        return delegate.log(rq);
+    }
+
+    @Override
+    public Maybe<BatchSaveOperatingRS> log(MultiPartRequest rq) {
+        return delegate.log(rq);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
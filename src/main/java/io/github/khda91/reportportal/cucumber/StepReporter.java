@@ -15,15 +15,23 @@
  */
 package io.github.khda91.reportportal.cucumber;
 
+import com.epam.reportportal.listeners.ListenerParameters;
 import com.epam.reportportal.listeners.Statuses;
+import com.epam.reportportal.service.LoggingContext;
+import com.epam.reportportal.service.ReportPortal;
 import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
-import io.cucumber.core.internal.gherkin.ast.Step;
 import io.cucumber.plugin.event.HookType;
 import io.cucumber.plugin.event.Result;
+import io.cucumber.plugin.event.TestCase;
+import io.cucumber.plugin.event.TestCaseFinished;
 import io.cucumber.plugin.event.TestStep;
 import io.reactivex.Maybe;
 
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Cucumber reporter for ReportPortal that reports individual steps as test
@@ -40,18 +48,34 @@ import java.util.Calendar;
  * name. Hooks are reported as BEFORE/AFTER_METHOD items (NOTE: all screenshots
  * created in hooks will be attached to these, and not to the actual failing
  * steps!)
+ * <p>
+ * If {@code rp.cucumber.step.lazy} is enabled, steps and hooks are reported only if they did not pass. They are
+ * reported with their original start and end times once they are finished, logs of passed steps and hooks are
+ * attached to the scenario and passed steps are listed in a single log of the scenario. Logs of
+ * {@link ReportPortal#emitLog(String, String, Date)} and log appenders are attached to the scenario as well,
+ * as steps are not started while they run.
+ * <p>
+ * If {@code rp.cucumber.scenario.deferred} is enabled, nothing is sent while a scenario runs. The scenario is
+ * reported with all its steps and hooks in a single burst of requests once it is finished. Logs of
+ * {@link ReportPortal#emitLog(String, String, Date)} and log appenders are held until then and attached to
+ * the scenario.
  *
  */
 public class StepReporter extends AbstractReporter {
-    protected Maybe<String> currentStepId;
-    protected Maybe<String> hookStepId;
-    protected String hookStatus;
+
+    static final String LAZY_STEPS_PROPERTY = "rp.cucumber.step.lazy";
+
+    static final String DEFERRED_SCENARIOS_PROPERTY = "rp.cucumber.scenario.deferred";
+
+    private final boolean lazyMode = ReporterParameters.getBoolean(LAZY_STEPS_PROPERTY, false);
+
+    private final boolean deferredMode = ReporterParameters.getBoolean(DEFERRED_SCENARIOS_PROPERTY, false);
+
+    /* not yet reported items of running test cases, used only in lazy and deferred modes */
+    private final Map<TestCase, DeferredItems> deferredItems = new ConcurrentHashMap<>();
 
     public StepReporter() {
         super();
-        currentStepId = null;
-        hookStepId = null;
-        hookStatus = null;
     }
 
 
@@ -61,25 +85,61 @@ public class StepReporter extends AbstractReporter {
     }
 
     @Override
-    protected void beforeStep(TestStep testStep) {
-        Step step = currentScenarioContext.getStep(testStep);
+    protected void beforeScenario(TestCase testCase, Date startTime) {
+        if (!deferredMode) {
+            super.beforeScenario(testCase, startTime);
+            return;
+        }
+        DeferredItem item = new DeferredItem(buildScenarioRq(testCase, startTime));
+        getDeferredItems(testCase).scenario = item;
+        getScenarioContext(testCase).setId(item.getId());
+        // the logs wait for the scenario to be reported
+        logTo(item.getId());
+    }
+
+    @Override
+    protected void beforeStep(TestCase testCase, TestStep testStep, Date startTime) {
+        RunningContext.ScenarioContext scenarioContext = getScenarioContext(testCase);
+        String keyword = scenarioContext.getStepKeyword(testStep);
         StartTestItemRQ rq = new StartTestItemRQ();
-        rq.setName(Utils.buildNodeName(currentScenarioContext.getStepPrefix(), step.getKeyword(), Utils.getStepName(testStep), " "));
+        rq.setName(Utils.buildNodeName(scenarioContext.getStepPrefix(testStep), keyword, Utils.getStepName(testStep), " "));
         rq.setDescription(Utils.buildMultilineArgument(testStep));
-        rq.setStartTime(Calendar.getInstance().getTime());
+        rq.setStartTime(startTime);
         rq.setType("STEP");
-        currentStepId = rp.get().startTestItem(currentScenarioContext.getId(), rq);
+        if (lazyMode || deferredMode) {
+            DeferredItem item = new DeferredItem(rq);
+            getDeferredItems(testCase).step = item;
+            scenarioContext.setCurrentStepId(item.getId());
+            attachArgumentOverflow(item.getId(), testStep, startTime);
+            return;
+        }
+        Maybe<String> stepId = Utils.startTestItem(rp.get(), scenarioContext.getId(), rq);
+        scenarioContext.setCurrentStepId(stepId);
+        attachArgumentOverflow(stepId, testStep, startTime);
     }
 
     @Override
-    protected void afterStep(Result result) {
-        reportResult(result, null);
-        Utils.finishTestItem(rp.get(), currentStepId, result.getStatus().toString().toUpperCase());
-        currentStepId = null;
+    protected void afterStep(TestCase testCase, Result result, Date endTime) {
+        RunningContext.ScenarioContext scenarioContext = getScenarioContext(testCase);
+        reportResult(testCase, result, null, endTime);
+        String status = result.getStatus().toString().toUpperCase();
+        if (lazyMode || deferredMode) {
+            DeferredItems items = getDeferredItems(testCase);
+            items.step.finish(status, endTime);
+            if (lazyMode && items.step.isPassed()) {
+                items.passed(items.step, result);
+            }
+            finishDeferred(testCase, items, items.step);
+            items.step = null;
+        } else {
+            Utils.finishTestItem(rp.get(), scenarioContext.getCurrentStepId(), status, endTime);
+        }
+        scenarioContext.setCurrentStepId(null);
     }
 
     @Override
-    protected void beforeHooks(HookType hookType) {
+    protected void beforeHooks(TestCase testCase, HookType hookType, Date startTime) {
+        RunningContext.ScenarioContext scenarioContext = getScenarioContext(testCase);
         StartTestItemRQ rq = new StartTestItemRQ();
         String name = null;
         String type = null;
@@ -102,23 +162,77 @@ public class StepReporter extends AbstractReporter {
                 break;
         }
         rq.setName(name);
-        rq.setStartTime(Calendar.getInstance().getTime());
+        rq.setStartTime(startTime);
         rq.setType(type);
 
-        hookStepId = rp.get().startTestItem(currentScenarioContext.getId(), rq);
-        hookStatus = Statuses.PASSED;
+        if (lazyMode || deferredMode) {
+            DeferredItem item = new DeferredItem(rq);
+            getDeferredItems(testCase).hooks = item;
+            scenarioContext.setHookStepId(item.getId());
+        } else {
+            scenarioContext.setHookStepId(Utils.startTestItem(rp.get(), scenarioContext.getId(), rq));
+        }
+        scenarioContext.setHookStatus(Statuses.PASSED);
+    }
+
+    @Override
+    protected void afterHooks(TestCase testCase, Boolean isBefore, Date endTime) {
+        RunningContext.ScenarioContext scenarioContext = getScenarioContext(testCase);
+        if (lazyMode || deferredMode) {
+            DeferredItems items = getDeferredItems(testCase);
+            items.hooks.finish(scenarioContext.getHookStatus(), endTime);
+            finishDeferred(testCase, items, items.hooks);
+            items.hooks = null;
+        } else {
+            Utils.finishTestItem(rp.get(), scenarioContext.getHookStepId(), scenarioContext.getHookStatus(), endTime);
+        }
+        scenarioContext.setHookStepId(null);
+    }
+
+    @Override
+    protected void hookFinished(TestCase testCase, TestStep step, Result result, boolean isBefore, Date endTime) {
+        reportResult(testCase, result, (isBefore ? "Before" : "After") + " hook: " + step.getCodeLocation(), endTime);
+        getScenarioContext(testCase).setHookStatus(result.getStatus().toString());
     }
 
     @Override
-    protected void afterHooks(Boolean isBefore) {
-        Utils.finishTestItem(rp.get(), hookStepId, hookStatus);
-        hookStepId = null;
+    protected void afterScenario(TestCaseFinished event) {
+        DeferredItems items = deferredItems.remove(event.getTestCase());
+        if (items != null) {
+            RunningContext.ScenarioContext scenarioContext = getScenarioContext(event.getTestCase());
+            if (items.scenario != null) {
+                // release the logs of the scenario before its items take over the logging context
+                LoggingContext.complete();
+                Maybe<String> scenarioId = items.scenario.start(rp.get(), getFeatureContext(event.getTestCase()).getFeatureId());
+                for (DeferredItem child : items.children) {
+                    reportDeferred(child, scenarioId);
+                }
+                // the scenario is finished by the real item ID, the deferred one is only good for logs
+                scenarioContext.replaceId(scenarioId);
+            }
+            if (items.passedCount > 0) {
+                Utils.sendLog(logBatcher.get(),
+                        scenarioContext.getId(),
+                        "Passed steps (" + items.passedCount + "):" + items.passedSteps,
+                        "INFO",
+                        null,
+                        items.firstPassedTime
+                );
+            }
+        }
+        super.afterScenario(event);
     }
 
     @Override
-    protected void hookFinished(TestStep step, Result result, boolean isBefore) {
-        reportResult(result, (isBefore ? "Before" : "After") + " hook: " + step.getCodeLocation());
-        hookStatus = result.getStatus().toString();
+    protected Maybe<String> getLogTarget(TestCase testCase) {
+        RunningContext.ScenarioContext scenarioContext = getScenarioContext(testCase);
+        if (scenarioContext.getCurrentStepId() != null) {
+            return scenarioContext.getCurrentStepId();
+        }
+        if (scenarioContext.getHookStepId() != null) {
+            return scenarioContext.getHookStepId();
+        }
+        return scenarioContext.getId();
     }
 
     @Override
@@ -130,4 +244,65 @@ public class StepReporter extends AbstractReporter {
     protected String getScenarioTestItemType() {
         return "SCENARIO";
     }
+
+    private DeferredItems getDeferredItems(TestCase testCase) {
+        return deferredItems.computeIfAbsent(testCase, t -> new DeferredItems());
+    }
+
+    private void finishDeferred(TestCase testCase, DeferredItems items, DeferredItem item) {
+        if (deferredMode) {
+            items.children.add(item);
+            return;
+        }
+        Maybe<String> scenarioId = getScenarioContext(testCase).getId();
+        if (lazyMode && item.isPassed()) {
+            item.skip(scenarioId);
+            return;
+        }
+        // starting and finishing the item takes over the logging context of the thread, so hand it back to the scenario
+        LoggingContext.complete();
+        item.report(rp.get(), scenarioId);
+        logTo(scenarioId);
+    }
+
+    private void reportDeferred(DeferredItem item, Maybe<String> scenarioId) {
+        if (lazyMode && item.isPassed()) {
+            item.skip(scenarioId);
+        } else {
+            item.report(rp.get(), scenarioId);
+        }
+    }
+
+    /**
+     * Send logs emitted through {@link ReportPortal#emitLog(String, String, Date)} and log appenders on the current thread
+     * to the item
+     *
+     * @param itemId item ID, may be not known yet
+     */
+    private void logTo(Maybe<String> itemId) {
+        ListenerParameters parameters = reportPortal.get().getParameters();
+        LoggingContext.init(itemId, reportPortal.get().getClient(), parameters.getBatchLogsSize(), parameters.isConvertImage());
+    }
+
+    /**
+     * Not yet reported items of a running test case and the summary of its passed steps
+     */
+    private static class DeferredItems {
+
+        private DeferredItem scenario;
+        private DeferredItem step;
+        private DeferredItem hooks;
+        private final List<DeferredItem> children = new ArrayList<>();
+        private final StringBuilder passedSteps = new StringBuilder();
+        private int passedCount;
+        private Date firstPassedTime;
+
+        void passed(DeferredItem item, Result result) {
+            if (firstPassedTime == null) {
+                firstPassedTime = item.getStartTime();
+            }
+            passedCount++;
+            passedSteps.append('\n').append(item.getName().trim()).append(" (").append(result.getDuration().toMillis()).append(" ms)");
+        }
+    }
 }
@@ -22,35 +22,46 @@ import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
 import com.epam.ta.reportportal.ws.model.log.SaveLogRQ;
 import com.epam.ta.reportportal.ws.model.log.SaveLogRQ.File;
 import io.cucumber.core.internal.gherkin.ast.Tag;
-import io.cucumber.plugin.event.DataTableArgument;
-import io.cucumber.plugin.event.DocStringArgument;
 import io.cucumber.plugin.event.HookTestStep;
 import io.cucumber.plugin.event.PickleStepTestStep;
-import io.cucumber.plugin.event.StepArgument;
 import io.cucumber.plugin.event.TestStep;
 import io.reactivex.Maybe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Calendar;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 public class Utils {
     private static final Logger LOGGER = LoggerFactory.getLogger(Utils.class);
-    private static final String TABLE_SEPARATOR = "|";
-    private static final String DOCSTRING_DECORATOR = "\n\"\"\"\n";
 
     private Utils() {
 
     }
 
+    /**
+     * @deprecated use {@link #finishTestItem(Launch, Maybe, Date)} with the Cucumber event time
+     */
+    @Deprecated
     public static void finishTestItem(Launch rp, Maybe<String> itemId) {
-        finishTestItem(rp, itemId, null);
+        finishTestItem(rp, itemId, new Date());
     }
 
+    /**
+     * @deprecated use {@link #finishTestItem(Launch, Maybe, String, Date)} with the Cucumber event time
+     */
+    @Deprecated
     public static void finishTestItem(Launch rp, Maybe<String> itemId, String status) {
+        finishTestItem(rp, itemId, status, new Date());
+    }
+
+    public static void finishTestItem(Launch rp, Maybe<String> itemId, Date endTime) {
+        finishTestItem(rp, itemId, null, endTime);
+    }
+
+    public static void finishTestItem(Launch rp, Maybe<String> itemId, String status, Date endTime) {
         if (itemId == null) {
             LOGGER.error("BUG: Trying to finish unspecified test item.");
             return;
@@ -58,31 +69,69 @@ public class Utils {
 
         FinishTestItemRQ rq = new FinishTestItemRQ();
         rq.setStatus(status);
-        rq.setEndTime(Calendar.getInstance().getTime());
-
-        rp.finishTestItem(itemId, rq);
+        rq.setEndTime(endTime);
 
+        RequestWindow window = RequestWindow.of(rp);
+        if (window == null) {
+            rp.finishTestItem(itemId, rq);
+        } else {
+            window.finishTestItem(rp, itemId, rq);
+        }
     }
 
+    /**
+     * @deprecated use {@link #startNonLeafNode(Launch, Maybe, String, String, Set, String, Date)} with the Cucumber event time
+     */
+    @Deprecated
     public static Maybe<String> startNonLeafNode(Launch rp, Maybe<String> rootItemId, String name, String description, Set<String> tags,
                                                  String type) {
+        return startNonLeafNode(rp, rootItemId, name, description, tags, type, new Date());
+    }
+
+    public static Maybe<String> startNonLeafNode(Launch rp, Maybe<String> rootItemId, String name, String description, Set<String> tags,
+                                                 String type, Date startTime) {
+        return startTestItem(rp, rootItemId, buildNonLeafNodeRq(name, description, tags, type, startTime));
+    }
+
+    /**
+     * Start test item within the {@link RequestWindow} of the launch, if it has one
+     *
+     * @param rp       launch to start the item in
+     * @param parentId parent item ID or null for a root item
+     * @param rq       start request
+     * @return item ID
+     */
+    public static Maybe<String> startTestItem(Launch rp, Maybe<String> parentId, StartTestItemRQ rq) {
+        RequestWindow window = RequestWindow.of(rp);
+        if (window == null) {
+            return parentId == null ? rp.startTestItem(rq) : rp.startTestItem(parentId, rq);
+        }
+        return window.startTestItem(rp, parentId, rq);
+    }
+
+    public static StartTestItemRQ buildNonLeafNodeRq(String name, String description, Set<String> tags, String type, Date startTime) {
         StartTestItemRQ rq = new StartTestItemRQ();
         rq.setDescription(description);
         rq.setName(name);
         rq.setTags(tags);
-        rq.setStartTime(Calendar.getInstance().getTime());
+        rq.setStartTime(startTime);
         rq.setType(type);
-
-        return rp.startTestItem(rootItemId, rq);
+        return rq;
     }
 
+    /**
+     * Send log to the item of the current thread right away, bypassing the batcher of the reporter
+     *
+     * @deprecated use {@link #sendLog(LogBatcher, Maybe, String, String, File, Date)} to batch the log
+     */
+    @Deprecated
     public static void sendLog(final String message, final String level, final File file) {
         ReportPortal.emitLog(item -> {
             SaveLogRQ rq = new SaveLogRQ();
             rq.setMessage(message);
             rq.setTestItemId(item);
             rq.setLevel(level);
-            rq.setLogTime(Calendar.getInstance().getTime());
+            rq.setLogTime(new Date());
             if (file != null) {
                 rq.setFile(file);
             }
@@ -90,6 +139,21 @@ public class Utils {
         });
     }
 
+    public static void sendLog(LogBatcher logBatcher, Maybe<String> itemId, String message, String level, File file, Date logTime) {
+        if (itemId == null) {
+            LOGGER.error("BUG: Trying to send log to unspecified test item.");
+            return;
+        }
+        SaveLogRQ rq = new SaveLogRQ();
+        rq.setMessage(message);
+        rq.setLevel(level);
+        rq.setLogTime(logTime);
+        if (file != null) {
+            rq.setFile(file);
+        }
+        logBatcher.emit(itemId, rq);
+    }
+
 
     /**
      * Transform tags from Cucumber to RP format
@@ -156,40 +220,15 @@ public class Utils {
     }
 
     /**
-     * Generate multiline argument (DataTable or DocString) representation
+     * Generate multiline argument (DataTable or DocString) representation,
+     * bounded as configured in {@link MultilineArguments}
      *
      * @param step - Cucumber step object
      * @return - transformed multiline argument (or empty string if there is
      * none)
      */
     public static String buildMultilineArgument(TestStep step) {
-        List<List<String>> table = null;
-        String dockString = "";
-        StringBuilder marg = new StringBuilder();
-        PickleStepTestStep pickleStep = (PickleStepTestStep) step;
-        StepArgument argument = pickleStep.getStep().getArgument();
-        if (argument != null) {
-            if (argument instanceof DocStringArgument) {
-                dockString = ((DocStringArgument) argument).getContent();
-            } else if (argument instanceof DataTableArgument) {
-                table = ((DataTableArgument) argument).cells();
-            }
-        }
-        if (table != null) {
-            marg.append("\r\n");
-            for (List<String> row : table) {
-                marg.append(TABLE_SEPARATOR);
-                for (String cell : row) {
-                    marg.append(" ").append(cell).append(" ").append(TABLE_SEPARATOR);
-                }
-                marg.append("\r\n");
-            }
-        }
-
-        if (!dockString.isEmpty()) {
-            marg.append(DOCSTRING_DECORATOR).append(dockString).append(DOCSTRING_DECORATOR);
-        }
-        return marg.toString();
+        return MultilineArguments.getDefault().render(step);
     }
 
     public static String getStepName(TestStep step) {
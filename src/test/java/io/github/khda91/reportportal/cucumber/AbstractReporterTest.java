@@ -0,0 +1,213 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import io.cucumber.plugin.event.Event;
+import io.cucumber.plugin.event.EventHandler;
+import io.cucumber.plugin.event.EventPublisher;
+import io.cucumber.plugin.event.Result;
+import io.cucumber.plugin.event.Status;
+import io.cucumber.plugin.event.TestCase;
+import io.cucumber.plugin.event.TestCaseFinished;
+import io.cucumber.plugin.event.TestCaseStarted;
+import io.cucumber.plugin.event.TestRunFinished;
+import io.cucumber.plugin.event.TestRunStarted;
+import io.cucumber.plugin.event.TestSourceRead;
+import io.cucumber.plugin.event.TestStep;
+import org.junit.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class AbstractReporterTest {
+
+    private static final String OUTLINE_NUMBERING = "classpath:io/github/khda91/reportportal/cucumber/outline_numbering.feature";
+
+    private static final String ROUND_TRIP = "classpath:io/github/khda91/reportportal/cucumber/round_trip.feature";
+
+    private static final String BATCHING = "classpath:io/github/khda91/reportportal/cucumber/batching.feature";
+
+    private static final URI ALPHA = URI.create("file:///features/alpha.feature");
+
+    private static final URI BETA = URI.create("file:///features/beta.feature");
+
+    private static final Instant START = Instant.parse("2020-04-01T10:00:00Z");
+
+    @Test
+    public void filteredFeatureIsFinishedOnceNextFeatureStarts() {
+        // only the first row of the outline is run, so the feature never reaches its scenario count
+        RecordingClient client = RecordingStepReporter.run(OUTLINE_NUMBERING + ":8", ROUND_TRIP);
+
+        assertThat(client.getEndTime("Feature: Outline numbering"), lessThanOrEqualTo(client.getStartTime("Feature: Round trip")));
+    }
+
+    @Test
+    public void logsOfScenariosAreUploadedOncePerFeature() {
+        System.setProperty(LogBatcher.BATCH_DELAY_PROPERTY, "60000");
+        RecordingClient client;
+        try {
+            client = RecordingStepReporter.runWithFailures(BATCHING);
+        } finally {
+            System.clearProperty(LogBatcher.BATCH_DELAY_PROPERTY);
+        }
+
+        assertThat(client.getBatches(), hasSize(1));
+        assertThat((List<?>) client.getBatches().get(0).getSerializedRQs().get(0).getRequest(), hasSize(2));
+    }
+
+    @Test
+    public void interleavedFeaturesAreFinishedWithTheirLastScenarios() throws Exception {
+        RecordingStepReporter reporter = new RecordingStepReporter();
+        Publisher publisher = new Publisher();
+        reporter.setEventPublisher(publisher);
+        TestCase first = new Case(ALPHA, 3, "First");
+        TestCase second = new Case(ALPHA, 5, "Second");
+        TestCase only = new Case(BETA, 3, "Only");
+
+        publisher.send(new TestRunStarted(at(0)));
+        publisher.send(new TestSourceRead(at(0), ALPHA, "Feature: Alpha\n\n  Scenario: First\n\n  Scenario: Second\n"));
+        publisher.send(new TestSourceRead(at(0), BETA, "Feature: Beta\n\n  Scenario: Only\n"));
+        ExecutorService alphaThread = Executors.newSingleThreadExecutor();
+        ExecutorService betaThread = Executors.newSingleThreadExecutor();
+        try {
+            alphaThread.submit(() -> publisher.send(new TestCaseStarted(at(1), first))).get();
+            betaThread.submit(() -> publisher.send(new TestCaseStarted(at(2), only))).get();
+            alphaThread.submit(() -> publisher.send(new TestCaseFinished(at(3), first, passed()))).get();
+            alphaThread.submit(() -> publisher.send(new TestCaseStarted(at(4), second))).get();
+            betaThread.submit(() -> publisher.send(new TestCaseFinished(at(5), only, passed()))).get();
+            alphaThread.submit(() -> publisher.send(new TestCaseFinished(at(6), second, passed()))).get();
+        } finally {
+            alphaThread.shutdown();
+            betaThread.shutdown();
+        }
+        publisher.send(new TestRunFinished(at(7)));
+
+        RecordingClient client = reporter.getClient();
+        assertThat(client.getItemTree(), contains("Feature: Alpha",
+                "Feature: Alpha / Scenario: First",
+                "Feature: Alpha / Scenario: Second",
+                "Feature: Beta",
+                "Feature: Beta / Scenario: Only"));
+        assertThat(client.getStartTime("Feature: Alpha"), equalTo(Date.from(at(1))));
+        assertThat(client.getEndTime("Feature: Alpha"), equalTo(Date.from(at(6))));
+        assertThat(client.getStartTime("Feature: Beta"), equalTo(Date.from(at(2))));
+        assertThat(client.getEndTime("Feature: Beta"), equalTo(Date.from(at(5))));
+    }
+
+    private static Instant at(int seconds) {
+        return START.plusSeconds(seconds);
+    }
+
+    private static Result passed() {
+        return new Result(Status.PASSED, Duration.ZERO, null);
+    }
+
+    /**
+     * Publisher which hands events to the handlers on the sending thread, as Cucumber does for concurrent listeners
+     */
+    private static class Publisher implements EventPublisher {
+
+        private final Map<Class<?>, List<EventHandler<?>>> handlers = new HashMap<>();
+
+        @Override
+        public <T extends Event> void registerHandlerFor(Class<T> eventType, EventHandler<T> handler) {
+            handlers.computeIfAbsent(eventType, type -> new ArrayList<>()).add(handler);
+        }
+
+        @Override
+        public <T extends Event> void removeHandlerFor(Class<T> eventType, EventHandler<T> handler) {
+            handlers.getOrDefault(eventType, new ArrayList<>()).remove(handler);
+        }
+
+        @SuppressWarnings("unchecked")
+        <T extends Event> void send(T event) {
+            for (EventHandler<?> handler : handlers.getOrDefault(event.getClass(), Collections.emptyList())) {
+                ((EventHandler<T>) handler).receive(event);
+            }
+        }
+    }
+
+    private static class Case implements TestCase {
+
+        private final URI uri;
+        private final int line;
+        private final String name;
+        private final UUID id = UUID.randomUUID();
+
+        Case(URI uri, int line, String name) {
+            this.uri = uri;
+            this.line = line;
+            this.name = name;
+        }
+
+        @Override
+        public Integer getLine() {
+            return line;
+        }
+
+        @Override
+        public String getKeyword() {
+            return "Scenario";
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        @Deprecated
+        public String getScenarioDesignation() {
+            return uri + ":" + line + " # " + name;
+        }
+
+        @Override
+        public List<String> getTags() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<TestStep> getTestSteps() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public URI getUri() {
+            return uri;
+        }
+
+        @Override
+        public UUID getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+public class CucumberJsonImporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void importedReportIsMappedAsTheRunItself() throws IOException {
+        Path report = folder.getRoot().toPath().resolve("cucumber.json");
+        RecordingClient run = RecordingStepReporter.run("--plugin", "json:" + report,
+                "classpath:io/github/khda91/reportportal/cucumber/round_trip.feature");
+
+        RecordingStepReporter importer = new RecordingStepReporter();
+        new CucumberJsonImporter(importer).importReport(report);
+
+        assertThat(importer.getClient().getItemTree(), contains("Feature: Round trip",
+                "Feature: Round trip / Scenario Outline: Outline [1]",
+                "Feature: Round trip / Scenario Outline: Outline [1] / BACKGROUND: Given a background step ",
+                "Feature: Round trip / Scenario Outline: Outline [1] / Given value 1 ",
+                "Feature: Round trip / Scenario Outline: Outline [2]",
+                "Feature: Round trip / Scenario Outline: Outline [2] / BACKGROUND: Given a background step ",
+                "Feature: Round trip / Scenario Outline: Outline [2] / Given value 2 ",
+                "Feature: Round trip / Scenario: Doc string",
+                "Feature: Round trip / Scenario: Doc string / BACKGROUND: Given a background step ",
+                "Feature: Round trip / Scenario: Doc string / Given a doc string "));
+        assertThat(importer.getClient().getItemTree(), equalTo(run.getItemTree()));
+        String docStringStep = "Feature: Round trip / Scenario: Doc string / Given a doc string ";
+        assertThat(importer.getClient().getDescription(docStringStep), containsString("hello"));
+        assertThat(importer.getClient().getDescription(docStringStep), equalTo(run.getDescription(docStringStep)));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FeatureIndexTest {
+
+    @Test
+    public void backgroundStepsArePrefixed() {
+        FeatureIndex index = index(
+                "@feature",
+                "Feature: Background",
+                "  Background:",
+                "    Given a background step",
+                "",
+                "  @scenario",
+                "  Scenario: Plain",
+                "    When a step",
+                "    Then another step");
+
+        assertThat(index.getName(), equalTo("Background"));
+        assertThat(index.getScenarioCount(), equalTo(1));
+        assertThat(index.getStepPrefix(4), equalTo("BACKGROUND: "));
+        assertThat(index.getStepPrefix(8), equalTo(""));
+        assertThat(index.getStepKeyword(4), equalTo("Given "));
+        assertThat(index.getStepKeyword(9), equalTo("Then "));
+        assertThat(index.getStepKeyword(5), nullValue());
+
+        int entry = index.getEntry(7);
+        assertThat(entry, equalTo(0));
+        assertThat(index.getScenario(entry).getName(), equalTo("Plain"));
+        assertFalse(index.getScenario(entry).isOutline());
+        assertThat(index.getExampleRow(entry), equalTo(-1));
+        assertThat(index.getTags(entry), contains("@feature", "@scenario"));
+        assertThat(index.getEntry(3), equalTo(-1));
+    }
+
+    @Test
+    public void outlineRowsAreNumberedAcrossExamples() {
+        FeatureIndex index = index(
+                "Feature: Outline",
+                "  Scenario: Before",
+                "    Given a step",
+                "",
+                "  @outline",
+                "  Scenario Outline: Row <value>",
+                "    Given value <value>",
+                "",
+                "    Examples: first",
+                "      | value |",
+                "      | 1     |",
+                "      | 2     |",
+                "",
+                "    @second",
+                "    Examples: second",
+                "      | value |",
+                "      | 3     |",
+                "      | 4     |",
+                "",
+                "  Scenario: After",
+                "    Given a step");
+
+        assertThat(index.getScenarioCount(), equalTo(6));
+        assertThat(index.getEntry(6), equalTo(-1));
+        assertThat(index.getEntry(10), equalTo(-1));
+        int[] lines = {11, 12, 17, 18};
+        for (int row = 0; row < lines.length; row++) {
+            int entry = index.getEntry(lines[row]);
+            assertThat(entry, equalTo(row + 1));
+            assertTrue(index.getScenario(entry).isOutline());
+            assertThat(index.getScenario(entry).getName(), equalTo("Row <value>"));
+            assertThat(index.getScenario(entry).getLine(), equalTo(6));
+            assertThat(index.getExampleRow(entry), equalTo(row));
+        }
+        assertThat(index.getScenario(1), equalTo(index.getScenario(4)));
+        assertThat(index.getTags(1), contains("@outline"));
+        assertThat(index.getTags(3), contains("@outline", "@second"));
+        assertThat(index.getScenario(index.getEntry(20)).getName(), equalTo("After"));
+        assertThat(index.getStepKeyword(7), equalTo("Given "));
+        assertThat(index.getStepPrefix(7), equalTo(""));
+    }
+
+    @Test
+    public void ruleOfFeatureHeaderIsDescription() {
+        FeatureIndex index = index(
+                "Feature: Rule",
+                "  Rule: The only rule",
+                "",
+                "    Scenario: In the rule",
+                "      Given a step");
+
+        assertThat(index.getName(), equalTo("Rule"));
+        assertThat(index.getScenarioCount(), equalTo(1));
+        assertThat(index.getEntry(2), equalTo(-1));
+        assertThat(index.getScenario(index.getEntry(4)).getName(), equalTo("In the rule"));
+        assertThat(index.getStepKeyword(5), equalTo("Given "));
+        assertThat(index.getStepPrefix(5), equalTo(""));
+    }
+
+    @Test
+    public void featureWithRulesFallsBackToPickles() {
+        String uri = uri();
+        FeatureIndex index = indexAt(uri,
+                "Feature: Rules",
+                "  Background:",
+                "    Given a background step",
+                "",
+                "  Rule: First rule",
+                "    Scenario: In the first rule",
+                "      Given a step",
+                "",
+                "  Rule: Second rule",
+                "    Scenario: In the second rule",
+                "      Given a step");
+
+        assertThat(index.getName(), equalTo(uri));
+        assertThat(index.getScenarioCount(), equalTo(0));
+        assertThat(index.getEntry(6), equalTo(-1));
+        assertThat(index.getStepKeyword(3), nullValue());
+        assertThat(index.getStepPrefix(3), equalTo(""));
+    }
+
+    private static FeatureIndex index(String... lines) {
+        return indexAt(uri(), lines);
+    }
+
+    private static FeatureIndex indexAt(String uri, String... lines) {
+        FeatureSourceStore sources = new FeatureSourceStore(FeatureSourceStore.Mode.HEAP, Long.MAX_VALUE);
+        sources.put(uri, String.join("\n", Arrays.asList(lines)) + "\n");
+        try {
+            return GherkinDocumentCache.getFeatureIndex(uri, sources);
+        } finally {
+            GherkinDocumentCache.release(uri);
+        }
+    }
+
+    private static String uri() {
+        return "file:" + UUID.randomUUID() + ".feature";
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FeatureSourceStoreTest {
+
+    private static final String SOURCE = "# language: ru\nФункция: Хранение\n\n  Сценарий: Чтение\n    Дано value 1\n";
+
+    @Test
+    public void sourceIsReadBackInEveryMode() {
+        for (FeatureSourceStore.Mode mode : FeatureSourceStore.Mode.values()) {
+            FeatureSourceStore store = new FeatureSourceStore(mode, Long.MAX_VALUE);
+            store.put("a.feature", SOURCE);
+            store.put("b.feature", "");
+
+            assertThat(mode.name(), store.get("a.feature"), equalTo(SOURCE));
+            assertThat(mode.name(), store.get("b.feature"), equalTo(""));
+            assertThat(mode.name(), store.get("c.feature"), nullValue());
+        }
+    }
+
+    @Test
+    public void sourceIsDroppedOnceParsed() {
+        FeatureSourceStore store = new FeatureSourceStore(FeatureSourceStore.Mode.COMPRESSED, Long.MAX_VALUE);
+        store.put("a.feature", SOURCE);
+
+        store.parsed("a.feature");
+
+        assertThat(store.get("a.feature"), nullValue());
+    }
+
+    @Test
+    public void storeIsOverBudgetUntilSourcesAreParsed() {
+        FeatureSourceStore store = new FeatureSourceStore(FeatureSourceStore.Mode.HEAP, 2L * SOURCE.length());
+        store.put("a.feature", SOURCE);
+        assertFalse(store.isOverBudget());
+
+        store.put("b.feature", SOURCE);
+        assertTrue(store.isOverBudget());
+        // sources waiting to be parsed are never evicted
+        assertThat(store.get("a.feature"), equalTo(SOURCE));
+        assertThat(store.get("b.feature"), equalTo(SOURCE));
+
+        store.parsed("a.feature");
+        assertFalse(store.isOverBudget());
+    }
+
+    @Test
+    public void replacedAndClearedSourcesAreNotAccounted() {
+        FeatureSourceStore store = new FeatureSourceStore(FeatureSourceStore.Mode.HEAP, 2L * SOURCE.length());
+        store.put("a.feature", SOURCE);
+        store.put("a.feature", SOURCE);
+        assertFalse(store.isOverBudget());
+
+        store.put("b.feature", SOURCE);
+        store.clear();
+
+        assertFalse(store.isOverBudget());
+        assertThat(store.get("a.feature"), nullValue());
+        assertThat(store.get("b.feature"), nullValue());
+    }
+
+    @Test
+    public void sourceOverBudgetIsParsedRightAway() {
+        FeatureSourceStore store = new FeatureSourceStore(FeatureSourceStore.Mode.OFF_HEAP, 0L);
+        store.put("budget.feature", "Feature: Budget\n\n  Scenario: Parsed\n    Given value 1\n");
+        try {
+            GherkinDocumentCache.parseAsync("budget.feature", store);
+
+            assertThat(store.get("budget.feature"), nullValue());
+            assertThat(GherkinDocumentCache.getFeatureIndex("budget.feature", store).getName(), equalTo("Budget"));
+        } finally {
+            GherkinDocumentCache.release("budget.feature");
+        }
+    }
+}
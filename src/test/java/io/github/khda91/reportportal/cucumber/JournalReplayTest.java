@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.restendpoint.http.MultiPartRequest;
+import com.epam.ta.reportportal.ws.model.FinishExecutionRQ;
+import com.epam.ta.reportportal.ws.model.FinishTestItemRQ;
+import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRQ;
+import com.epam.ta.reportportal.ws.model.log.SaveLogRQ;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rp.com.google.common.io.ByteSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertTrue;
+
+public class JournalReplayTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void logJournaledAfterItemFinishIsUploadedBeforeIt() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        JournalClient journal = new JournalClient(directory, 1024);
+        String launch = journal.startLaunch(launchRq()).blockingGet().getId();
+        String suite = journal.startTestItem(itemRq(launch, "suite")).blockingGet().getId();
+        String test = journal.startTestItem(suite, itemRq(launch, "test")).blockingGet().getId();
+        journal.finishTestItem(test, new FinishTestItemRQ()).blockingGet();
+        // a log batch flushed after the item is finished
+        journal.log(logRq(test, "late")).blockingGet();
+        journal.finishTestItem(suite, new FinishTestItemRQ()).blockingGet();
+        journal.finishLaunch(launch, new FinishExecutionRQ()).blockingGet();
+        journal.close();
+
+        RecordingClient client = new RecordingClient();
+        // a single thread sends operations in the order they are submitted
+        assertTrue(JournalReplay.replay(directory, client, 1));
+
+        assertThat(client.getOperations(),
+                contains("startLaunch launch rp-1",
+                        "startItem suite rp-2",
+                        "startItem test rp-3",
+                        "log rp-3 late",
+                        "finishItem rp-3",
+                        "finishItem rp-2",
+                        "finishLaunch rp-1"));
+    }
+
+    @Test
+    public void secondReplayUploadsNothing() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        JournalClient journal = new JournalClient(directory, 1024);
+        String launch = journal.startLaunch(launchRq()).blockingGet().getId();
+        String test = journal.startTestItem(itemRq(launch, "test")).blockingGet().getId();
+        journal.log(logRq(test, "message")).blockingGet();
+        journal.finishTestItem(test, new FinishTestItemRQ()).blockingGet();
+        journal.finishLaunch(launch, new FinishExecutionRQ()).blockingGet();
+        journal.close();
+        assertTrue(JournalReplay.replay(directory, new RecordingClient(), 4));
+
+        RecordingClient client = new RecordingClient();
+        assertTrue(JournalReplay.replay(directory, client, 4));
+
+        List<String> operations = client.getOperations();
+        assertThat(operations, empty());
+    }
+
+    @Test
+    public void binaryPartsAreMatchedToLogsByFileName() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        JournalClient journal = new JournalClient(directory, 1024);
+        String launch = journal.startLaunch(launchRq()).blockingGet().getId();
+        String test = journal.startTestItem(itemRq(launch, "test")).blockingGet().getId();
+        // the first log names a file, but has no binary part
+        SaveLogRQ withoutContent = logRq(test, "without content");
+        withoutContent.setFile(file("missing.txt"));
+        SaveLogRQ withContent = logRq(test, "with content");
+        withContent.setFile(file("screenshot.png"));
+        byte[] screenshot = {1, 2, 3};
+        journal.log(new MultiPartRequest.Builder()
+                .addSerializedPart("json_request_part", Arrays.asList(withoutContent, withContent))
+                .addBinaryPart("binary_part", "screenshot.png", "image/png", ByteSource.wrap(screenshot))
+                .build()).blockingGet();
+        journal.finishTestItem(test, new FinishTestItemRQ()).blockingGet();
+        journal.finishLaunch(launch, new FinishExecutionRQ()).blockingGet();
+        journal.close();
+
+        RecordingClient client = new RecordingClient();
+        assertTrue(JournalReplay.replay(directory, client, 1));
+
+        assertThat(client.getOperations(), hasItems("log rp-2 without content", "log rp-2 with content"));
+        assertThat(client.getAttachment("screenshot.png"), equalTo(screenshot));
+        assertThat(client.getAttachment("missing.txt"), nullValue());
+    }
+
+    private static StartLaunchRQ launchRq() {
+        StartLaunchRQ rq = new StartLaunchRQ();
+        rq.setName("launch");
+        rq.setStartTime(new Date());
+        return rq;
+    }
+
+    private static StartTestItemRQ itemRq(String launch, String name) {
+        StartTestItemRQ rq = new StartTestItemRQ();
+        rq.setLaunchId(launch);
+        rq.setName(name);
+        rq.setStartTime(new Date());
+        return rq;
+    }
+
+    private static SaveLogRQ.File file(String name) {
+        SaveLogRQ.File file = new SaveLogRQ.File();
+        file.setName(name);
+        return file;
+    }
+
+    private static SaveLogRQ logRq(String item, String message) {
+        SaveLogRQ rq = new SaveLogRQ();
+        rq.setTestItemId(item);
+        rq.setMessage(message);
+        rq.setLevel("INFO");
+        rq.setLogTime(new Date());
+        return rq;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsAreReadInTheOrderTheyWereWritten() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (Journal.Writer writer = new Journal.Writer(directory, 64)) {
+            for (int i = 0; i < 5; i++) {
+                append(writer, "item-" + i);
+            }
+        }
+
+        assertThat(readIds(directory), contains("item-0", "item-1", "item-2", "item-3", "item-4"));
+    }
+
+    @Test
+    public void recordWithoutLengthIsNotRead() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (Journal.Writer writer = new Journal.Writer(directory, 1024)) {
+            append(writer, "item-0");
+            append(writer, "item-1");
+            append(writer, "item-2");
+        }
+        List<Journal.Record> records = readRecords(directory);
+        assertThat(records, hasSize(3));
+
+        // a crash after the body of the last record is written, but before its length is
+        try (RandomAccessFile segment = new RandomAccessFile(Journal.listSegments(directory).get(0).toFile(), "rw")) {
+            segment.seek(records.get(2).getPosition() & 0xFFFFFFFFL);
+            segment.writeInt(0);
+        }
+
+        assertThat(readIds(directory), contains("item-0", "item-1"));
+    }
+
+    @Test
+    public void writersSharingDirectoryDoNotOverwriteEachOther() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (Journal.Writer first = new Journal.Writer(directory, 64); Journal.Writer second = new Journal.Writer(directory, 64)) {
+            for (int i = 0; i < 3; i++) {
+                append(first, "first-" + i);
+                append(second, "second-" + i);
+            }
+        }
+
+        List<String> ids = readIds(directory);
+        assertThat(ids, containsInAnyOrder("first-0", "first-1", "first-2", "second-0", "second-1", "second-2"));
+        assertThat(filter(ids, "first-"), contains("first-0", "first-1", "first-2"));
+        assertThat(filter(ids, "second-"), contains("second-0", "second-1", "second-2"));
+    }
+
+    @Test
+    public void writerAppendsAfterSegmentsOfPreviousRuns() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (Journal.Writer writer = new Journal.Writer(directory, 64)) {
+            append(writer, "first-run");
+        }
+        try (Journal.Writer writer = new Journal.Writer(directory, 64)) {
+            append(writer, "second-run");
+        }
+
+        assertThat(readIds(directory), contains("first-run", "second-run"));
+    }
+
+    private static void append(Journal.Writer writer, String id) {
+        writer.append(Journal.START_ITEM, id, null, "{}".getBytes(StandardCharsets.UTF_8), null, null);
+    }
+
+    private static List<Journal.Record> readRecords(Path directory) throws IOException {
+        List<Journal.Record> records = new ArrayList<>();
+        Journal.Reader reader = new Journal.Reader(directory);
+        while (reader.hasNext()) {
+            records.add(reader.next());
+        }
+        return records;
+    }
+
+    private static List<String> readIds(Path directory) throws IOException {
+        List<String> ids = new ArrayList<>();
+        for (Journal.Record record : readRecords(directory)) {
+            ids.add(record.getId());
+        }
+        return ids;
+    }
+
+    private static List<String> filter(List<String> ids, String prefix) {
+        List<String> result = new ArrayList<>();
+        for (String id : ids) {
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.service.Launch;
+import com.epam.reportportal.service.ReportPortal;
+import com.epam.ta.reportportal.ws.model.FinishExecutionRQ;
+import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRQ;
+import com.epam.ta.reportportal.ws.model.log.SaveLogRQ;
+import io.reactivex.Maybe;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class LaunchShutdownTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void waitPolicyFinishesLaunchAfterLogsPastTheDeadline() {
+        RecordingClient client = new RecordingClient();
+        client.setLogDelay(100L);
+        RequestWindow window = new RequestWindow(0L, 0L, RequestWindow.Policy.BLOCK, 0L);
+        LogBatcher logBatcher = new LogBatcher(client, 10, 1024 * 1024, 100L, Long.MAX_VALUE, null, window);
+        Launch launch = ReportPortal.create(client, RecordingStepReporter.parameters()).newLaunch(launchRq());
+        launch.start();
+        Maybe<String> itemId = launch.startTestItem(itemRq());
+        for (int i = 0; i < 30; i++) {
+            SaveLogRQ rq = new SaveLogRQ();
+            rq.setMessage("log " + i);
+            rq.setLevel("INFO");
+            rq.setLogTime(new Date());
+            logBatcher.emit(itemId, rq);
+        }
+
+        new LaunchShutdown(logBatcher, window, null, 0L, 30L, 100L, LaunchShutdown.Policy.WAIT, folder.getRoot().toPath())
+                .finish(launch, new FinishExecutionRQ());
+
+        List<String> operations = client.getOperations();
+        assertThat(operations.get(operations.size() - 1), equalTo("finishLaunch rp-1"));
+        assertThat(logBatcher.getPendingLogs(), equalTo(0L));
+        int logs = 0;
+        for (String operation : operations) {
+            if (operation.startsWith("log ")) {
+                logs++;
+            }
+        }
+        assertThat(logs, equalTo(30));
+    }
+
+    @Test
+    public void waitPolicyGivesUpOnLogsPastTheReportingTimeout() {
+        RecordingClient client = new RecordingClient();
+        client.setLogDelay(5000L);
+        RequestWindow window = new RequestWindow(0L, 0L, RequestWindow.Policy.BLOCK, 0L);
+        LogBatcher logBatcher = new LogBatcher(client, 1, 1024 * 1024, 10L, Long.MAX_VALUE, null, window);
+        Launch launch = ReportPortal.create(client, RecordingStepReporter.parameters()).newLaunch(launchRq());
+        launch.start();
+        Maybe<String> itemId = launch.startTestItem(itemRq());
+        SaveLogRQ rq = new SaveLogRQ();
+        rq.setMessage("slow log");
+        rq.setLevel("INFO");
+        rq.setLogTime(new Date());
+        logBatcher.emit(itemId, rq);
+
+        long started = System.nanoTime();
+        new LaunchShutdown(logBatcher, window, null, 0L, 1L, 100L, LaunchShutdown.Policy.WAIT, folder.getRoot().toPath())
+                .finish(launch, new FinishExecutionRQ());
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), lessThan(4000L));
+        assertThat(logBatcher.getPendingLogs(), equalTo(1L));
+    }
+
+    private static StartLaunchRQ launchRq() {
+        StartLaunchRQ rq = new StartLaunchRQ();
+        rq.setName("launch");
+        rq.setStartTime(new Date());
+        return rq;
+    }
+
+    private static StartTestItemRQ itemRq() {
+        StartTestItemRQ rq = new StartTestItemRQ();
+        rq.setName("test");
+        rq.setType("STEP");
+        rq.setStartTime(new Date());
+        return rq;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.restendpoint.http.MultiPartRequest;
+import com.epam.ta.reportportal.ws.model.log.SaveLogRQ;
+import io.reactivex.Maybe;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertTrue;
+
+public class LogBatcherTest {
+
+    private static final Maybe<String> ITEM = Maybe.just("rp-item");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void batchIsSentAtFiftyLogs() throws InterruptedException {
+        RecordingClient client = new RecordingClient();
+        LogBatcher logBatcher = LogBatcher.fromParameters(client);
+        for (int i = 0; i < 49; i++) {
+            logBatcher.emit(ITEM, log("log " + i, null));
+        }
+        Thread.sleep(300L);
+        assertThat(client.getBatches(), hasSize(0));
+
+        logBatcher.emit(ITEM, log("log 49", null));
+
+        await(() -> client.getBatches().size() == 1);
+        assertThat(requests(client.getBatches().get(0)), hasSize(50));
+        assertTrue(logBatcher.close(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void batchIsSentAtEightMegabytes() throws InterruptedException {
+        RecordingClient client = new RecordingClient();
+        LogBatcher logBatcher = LogBatcher.fromParameters(client);
+        // a megabyte attachment and a one character message, so the eighth log crosses 8 MB
+        for (int i = 0; i < 7; i++) {
+            logBatcher.emit(ITEM, log("a", file("attachment" + i + ".bin", new byte[1024 * 1024])));
+        }
+        Thread.sleep(300L);
+        assertThat(client.getBatches(), hasSize(0));
+
+        logBatcher.emit(ITEM, log("a", file("attachment7.bin", new byte[1024 * 1024])));
+
+        await(() -> client.getBatches().size() == 1);
+        assertThat(requests(client.getBatches().get(0)), hasSize(8));
+        assertThat(client.getBatches().get(0).getBinaryRQs(), hasSize(8));
+        assertTrue(logBatcher.close(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void batchIsSentAfterOneSecond() throws InterruptedException {
+        RecordingClient client = new RecordingClient();
+        LogBatcher logBatcher = LogBatcher.fromParameters(client);
+        long start = System.nanoTime();
+        logBatcher.emit(ITEM, log("log", null));
+        Thread.sleep(500L);
+        assertThat(client.getBatches(), hasSize(0));
+
+        await(() -> client.getBatches().size() == 1);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), greaterThanOrEqualTo(1000L));
+        assertThat(requests(client.getBatches().get(0)), hasSize(1));
+        assertTrue(logBatcher.close(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void binaryPartsMatchFilesOfTheirLogs() throws IOException {
+        RecordingClient client = new RecordingClient();
+        File spillDirectory = folder.newFolder("spill");
+        LogBatcher logBatcher = new LogBatcher(client, 100, Long.MAX_VALUE, 60000L, 16L, spillDirectory.toPath());
+        Map<String, String> contents = new HashMap<>();
+        contents.put("a.txt", "alpha");
+        contents.put("b.txt", "bravo spilled past the threshold");
+        contents.put("c.txt", "charlie");
+        logBatcher.emit(ITEM, log("with a", file("a.txt", bytes("alpha"))));
+        logBatcher.emit(ITEM, log("without file", null));
+        logBatcher.emit(ITEM, log("with b", file("b.txt", bytes("bravo spilled past the threshold"))));
+        assertThat(spillDirectory.list(), arrayWithSize(1));
+        logBatcher.emit(ITEM, log("with empty file", file("empty.txt", null)));
+        logBatcher.emit(ITEM, log("with c", file("c.txt", bytes("charlie"))));
+
+        assertTrue(logBatcher.close(5L, TimeUnit.SECONDS));
+
+        MultiPartRequest batch = client.getBatches().get(0);
+        assertThat(requests(batch), hasSize(5));
+        assertThat(batch.getBinaryRQs(), hasSize(3));
+        for (MultiPartRequest.MultiPartBinary part : batch.getBinaryRQs()) {
+            assertThat(hasFile(batch, part.getFilename()), equalTo(true));
+            assertThat(new String(client.getAttachment(part.getFilename()), StandardCharsets.UTF_8),
+                    equalTo(contents.get(part.getFilename())));
+        }
+        assertThat(spillDirectory.list(), emptyArray());
+    }
+
+    @Test
+    public void failedUploadIsCountedAsFailed() {
+        RecordingClient client = new RecordingClient();
+        client.setFailing(true);
+        LogBatcher logBatcher = new LogBatcher(client, 100, Long.MAX_VALUE, 60000L);
+        logBatcher.emit(ITEM, log("one", null));
+        logBatcher.emit(ITEM, log("two", null));
+        logBatcher.emit(ITEM, log("three", null));
+
+        assertTrue(logBatcher.awaitUploaded(5L, TimeUnit.SECONDS));
+
+        assertThat(logBatcher.getFailedLogs(), equalTo(3L));
+        assertThat(logBatcher.getFailedBytes(), equalTo(11L));
+        assertThat(logBatcher.getPendingLogs(), equalTo(0L));
+        assertThat(logBatcher.getPendingBytes(), equalTo(0L));
+    }
+
+    @Test
+    public void logOfFailedItemIsCountedAsFailed() {
+        LogBatcher logBatcher = new LogBatcher(new RecordingClient(), 100, Long.MAX_VALUE, 60000L);
+
+        logBatcher.emit(Maybe.<String>error(new IllegalStateException("not started")), log("lost", null));
+
+        assertTrue(logBatcher.awaitUploaded(5L, TimeUnit.SECONDS));
+        assertThat(logBatcher.getFailedLogs(), equalTo(1L));
+        assertThat(logBatcher.getFailedBytes(), equalTo(4L));
+    }
+
+    @Test
+    public void pendingLogsAreCountedUntilUploaded() {
+        RecordingClient client = new RecordingClient();
+        client.setLogDelay(300L);
+        LogBatcher logBatcher = new LogBatcher(client, 100, Long.MAX_VALUE, 60000L);
+        logBatcher.emit(ITEM, log("one", null));
+        logBatcher.emit(ITEM, log("two", null));
+        logBatcher.flush();
+
+        assertThat(logBatcher.getPendingLogs(), equalTo(2L));
+        assertThat(logBatcher.getPendingBytes(), equalTo(6L));
+
+        assertTrue(logBatcher.awaitUploaded(5L, TimeUnit.SECONDS));
+        assertThat(logBatcher.getPendingLogs(), equalTo(0L));
+        assertThat(logBatcher.getPendingBytes(), equalTo(0L));
+        assertThat(logBatcher.getFailedLogs(), equalTo(0L));
+    }
+
+    @Test
+    public void droppedLogsAreCountedAsDropped() {
+        RecordingClient client = new RecordingClient();
+        LogBatcher logBatcher = new LogBatcher(client, 100, Long.MAX_VALUE, 60000L);
+        logBatcher.emit(ITEM, log("one", null));
+
+        logBatcher.drop();
+
+        assertTrue(logBatcher.awaitUploaded(5L, TimeUnit.SECONDS));
+        assertThat(client.getBatches(), hasSize(0));
+        assertThat(logBatcher.getDroppedLogs(), equalTo(1L));
+        assertThat(logBatcher.getDroppedBytes(), equalTo(3L));
+    }
+
+    private static SaveLogRQ log(String message, SaveLogRQ.File file) {
+        SaveLogRQ rq = new SaveLogRQ();
+        rq.setMessage(message);
+        rq.setLevel("INFO");
+        rq.setLogTime(new Date());
+        rq.setFile(file);
+        return rq;
+    }
+
+    private static SaveLogRQ.File file(String name, byte[] content) {
+        SaveLogRQ.File file = new SaveLogRQ.File();
+        file.setName(name);
+        file.setContentType("text/plain");
+        file.setContent(content);
+        return file;
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<SaveLogRQ> requests(MultiPartRequest batch) {
+        List<SaveLogRQ> requests = new ArrayList<>();
+        for (MultiPartRequest.MultiPartSerialized<?> part : batch.getSerializedRQs()) {
+            for (Object request : (List<?>) part.getRequest()) {
+                requests.add((SaveLogRQ) request);
+            }
+        }
+        return requests;
+    }
+
+    private static boolean hasFile(MultiPartRequest batch, String name) {
+        for (SaveLogRQ rq : requests(batch)) {
+            if (rq.getFile() != null && name.equals(rq.getFile().getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition was not met in time", System.nanoTime() < deadline);
+            Thread.sleep(10L);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class MediaTypesTest {
+
+    @Test
+    public void commonMediaTypesAreNamedWithTheirExtensions() {
+        assertThat(MediaTypes.getAttachment("image/png").getFileName(), equalTo("image.png"));
+        assertThat(MediaTypes.getAttachment("image/jpeg").getFileName(), equalTo("image.jpg"));
+        assertThat(MediaTypes.getAttachment("text/plain").getFileName(), equalTo("text.txt"));
+        assertThat(MediaTypes.getAttachment("application/json").getName(), equalTo("application"));
+    }
+
+    @Test
+    public void otherMediaTypesAreNamedWithTheirRegisteredExtensions() {
+        MediaTypes.Attachment attachment = MediaTypes.getAttachment("application/pdf");
+
+        assertThat(attachment.getName(), equalTo("application"));
+        assertThat(attachment.getExtension(), equalTo(".pdf"));
+    }
+
+    @Test
+    public void invalidMediaTypeIsNamedByDefault() {
+        assertThat(MediaTypes.getAttachment("not a media type"), sameInstance(MediaTypes.DEFAULT));
+        assertThat(MediaTypes.getAttachment(null).getFileName(), equalTo("embedding"));
+    }
+}
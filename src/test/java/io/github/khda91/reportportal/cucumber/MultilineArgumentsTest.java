@@ -0,0 +1,217 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.ta.reportportal.ws.model.log.SaveLogRQ;
+import io.cucumber.plugin.event.Argument;
+import io.cucumber.plugin.event.DataTableArgument;
+import io.cucumber.plugin.event.DocStringArgument;
+import io.cucumber.plugin.event.PickleStepTestStep;
+import io.cucumber.plugin.event.Step;
+import io.cucumber.plugin.event.StepArgument;
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class MultilineArgumentsTest {
+
+    @Test
+    public void tableIsCutAtMaxRows() {
+        MultilineArguments arguments = new MultilineArguments(2, 0, 0, false);
+
+        assertThat(arguments.render(table(row("a", "1"), row("b", "2"), row("c", "3"), row("d", "4"))),
+                equalTo("\r\n| a | 1 |\r\n| b | 2 |\r\n... 2 more rows\r\n"));
+    }
+
+    @Test
+    public void tableIsCutAtMaxColumns() {
+        MultilineArguments arguments = new MultilineArguments(0, 2, 0, false);
+
+        assertThat(arguments.render(table(row("a", "b", "c", "d"))),
+                equalTo("\r\n| a | b | ... 2 more columns\r\n"));
+    }
+
+    @Test
+    public void tableIsCutAtLastRowWithinMaxLength() {
+        MultilineArguments arguments = new MultilineArguments(0, 0, 20, false);
+
+        assertThat(arguments.render(table(row("a", "1"), row("b", "2"), row("c", "3"))),
+                equalTo("\r\n| a | 1 |\r\n... 2 more rows\r\n"));
+    }
+
+    @Test
+    public void firstRowIsCutAtMaxLength() {
+        MultilineArguments arguments = new MultilineArguments(0, 0, 10, false);
+
+        assertThat(arguments.render(table(row("0123456789abcdef"), row("next"))),
+                equalTo("\r\n| 012345...\r\n... 1 more rows\r\n"));
+    }
+
+    @Test
+    public void docStringIsCutAtMaxLength() {
+        MultilineArguments arguments = new MultilineArguments(0, 0, 4, false);
+
+        assertThat(arguments.render(docString("abcdefghij")),
+                equalTo("\n\"\"\"\nabcd\n... 6 more characters\n\"\"\"\n"));
+    }
+
+    @Test
+    public void argumentsWithinBoundsAreRenderedInFull() {
+        MultilineArguments arguments = new MultilineArguments(2, 2, 1024, true);
+
+        assertThat(arguments.render(table(row("a", "1"), row("b", "2"))), equalTo("\r\n| a | 1 |\r\n| b | 2 |\r\n"));
+        assertThat(arguments.render(docString("hello")), equalTo("\n\"\"\"\nhello\n\"\"\"\n"));
+        assertThat(arguments.render(new ArgumentStep(null)), equalTo(""));
+        assertThat(arguments.overflow(table(row("a", "1"), row("b", "2"))), nullValue());
+    }
+
+    @Test
+    public void overflowAttachmentHoldsWholeArgument() {
+        SaveLogRQ.File table = new MultilineArguments(1, 0, 0, true).overflow(table(row("a", "1"), row("b", "2")));
+        SaveLogRQ.File docString = new MultilineArguments(0, 0, 4, true).overflow(docString("abcdefghij"));
+
+        assertThat(table.getName(), equalTo(MultilineArguments.ATTACHMENT_NAME));
+        assertThat(new String(table.getContent(), StandardCharsets.UTF_8), equalTo("| a | 1 |\r\n| b | 2 |\r\n"));
+        assertThat(new String(docString.getContent(), StandardCharsets.UTF_8), equalTo("abcdefghij"));
+        assertThat(new MultilineArguments(1, 0, 0, false).overflow(table(row("a"), row("b"))), nullValue());
+    }
+
+    private static List<String> row(String... cells) {
+        return Arrays.asList(cells);
+    }
+
+    @SafeVarargs
+    private static ArgumentStep table(List<String>... rows) {
+        List<List<String>> cells = new ArrayList<>();
+        for (List<String> row : rows) {
+            cells.add(row);
+        }
+        return new ArgumentStep(new DataTableArgument() {
+            @Override
+            public List<List<String>> cells() {
+                return cells;
+            }
+
+            @Override
+            public int getLine() {
+                return 2;
+            }
+        });
+    }
+
+    private static ArgumentStep docString(String content) {
+        return new ArgumentStep(new DocStringArgument() {
+            @Override
+            public String getContent() {
+                return content;
+            }
+
+            @Override
+            public String getContentType() {
+                return "";
+            }
+
+            @Override
+            public int getLine() {
+                return 2;
+            }
+        });
+    }
+
+    /**
+     * Step on line 1 with the given argument
+     */
+    private static final class ArgumentStep implements PickleStepTestStep, Step {
+
+        private final StepArgument argument;
+
+        ArgumentStep(StepArgument argument) {
+            this.argument = argument;
+        }
+
+        @Override
+        public String getCodeLocation() {
+            return "steps()";
+        }
+
+        @Override
+        public String getPattern() {
+            return "a step";
+        }
+
+        @Override
+        public Step getStep() {
+            return this;
+        }
+
+        @Override
+        public List<Argument> getDefinitionArgument() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        @Deprecated
+        public StepArgument getStepArgument() {
+            return argument;
+        }
+
+        @Override
+        @Deprecated
+        public int getStepLine() {
+            return 1;
+        }
+
+        @Override
+        public URI getUri() {
+            return URI.create("file:a.feature");
+        }
+
+        @Override
+        @Deprecated
+        public String getStepText() {
+            return "a step";
+        }
+
+        @Override
+        public StepArgument getArgument() {
+            return argument;
+        }
+
+        @Override
+        public String getKeyWord() {
+            return "Given ";
+        }
+
+        @Override
+        public String getText() {
+            return "a step";
+        }
+
+        @Override
+        public int getLine() {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.restendpoint.http.MultiPartRequest;
+import com.epam.reportportal.service.ReportPortalClient;
+import com.epam.ta.reportportal.ws.model.BatchSaveOperatingRS;
+import com.epam.ta.reportportal.ws.model.EntryCreatedRS;
+import com.epam.ta.reportportal.ws.model.FinishExecutionRQ;
+import com.epam.ta.reportportal.ws.model.FinishTestItemRQ;
+import com.epam.ta.reportportal.ws.model.OperationCompletionRS;
+import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
+import com.epam.ta.reportportal.ws.model.item.ItemCreatedRS;
+import com.epam.ta.reportportal.ws.model.launch.LaunchResource;
+import com.epam.ta.reportportal.ws.model.launch.MergeLaunchesRQ;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRQ;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRS;
+import com.epam.ta.reportportal.ws.model.log.SaveLogRQ;
+import io.reactivex.Maybe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Report Portal client which records operations instead of sending them
+ */
+class RecordingClient implements ReportPortalClient {
+
+    private final List<String> operations = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger ids = new AtomicInteger();
+
+    /* paths of started items by their IDs */
+    private final Map<String, String> items = new ConcurrentHashMap<>();
+
+    private volatile long logDelayMillis;
+    private volatile boolean failing;
+
+    /* descriptions of started items by their paths */
+    private final Map<String, String> descriptions = new ConcurrentHashMap<>();
+
+    /* start and end times of items by their paths */
+    private final Map<String, Date> startTimes = new ConcurrentHashMap<>();
+    private final Map<String, Date> endTimes = new ConcurrentHashMap<>();
+
+    /* uploaded batches of logs */
+    private final List<MultiPartRequest> batches = Collections.synchronizedList(new ArrayList<>());
+
+    /* contents of uploaded binary parts by their file names, read on upload as spilled parts are deleted afterwards */
+    private final Map<String, byte[]> attachments = new ConcurrentHashMap<>();
+
+    /**
+     * @param logDelayMillis time each batch of logs takes to upload
+     */
+    void setLogDelay(long logDelayMillis) {
+        this.logDelayMillis = logDelayMillis;
+    }
+
+    /**
+     * @param failing true if item starts and logs should fail
+     */
+    void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    /**
+     * @return operations in the order they were done, e.g. {@code "finishItem rp-2"}
+     */
+    List<String> getOperations() {
+        synchronized (operations) {
+            return new ArrayList<>(operations);
+        }
+    }
+
+    /**
+     * @return started items as paths of item names from the root, e.g. {@code "Feature: F / Scenario: S"}, sorted,
+     * as requests of sibling items may be sent in any order
+     */
+    List<String> getItemTree() {
+        List<String> tree = new ArrayList<>(items.values());
+        Collections.sort(tree);
+        return tree;
+    }
+
+    /**
+     * @param path item path as returned by {@link #getItemTree()}
+     * @return start time the item was reported with or null
+     */
+    Date getStartTime(String path) {
+        return startTimes.get(path);
+    }
+
+    /**
+     * @param path item path as returned by {@link #getItemTree()}
+     * @return end time the item was reported with or null if it is not finished
+     */
+    Date getEndTime(String path) {
+        return endTimes.get(path);
+    }
+
+    /**
+     * @return uploaded batches of logs in the order they were uploaded
+     */
+    List<MultiPartRequest> getBatches() {
+        synchronized (batches) {
+            return new ArrayList<>(batches);
+        }
+    }
+
+    /**
+     * @param fileName file name of an uploaded binary part
+     * @return content of the part or null
+     */
+    byte[] getAttachment(String fileName) {
+        return attachments.get(fileName);
+    }
+
+    /**
+     * @param path item path as returned by {@link #getItemTree()}
+     * @return description of the item or null
+     */
+    String getDescription(String path) {
+        return descriptions.get(path);
+    }
+
+    @Override
+    public Maybe<StartLaunchRS> startLaunch(StartLaunchRQ rq) {
+        String id = nextId();
+        operations.add("startLaunch " + rq.getName() + " " + id);
+        return Maybe.just(new StartLaunchRS(id, 0L));
+    }
+
+    @Override
+    public Maybe<LaunchResource> mergeLaunches(MergeLaunchesRQ rq) {
+        return Maybe.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Maybe<OperationCompletionRS> finishLaunch(String launch, FinishExecutionRQ rq) {
+        operations.add("finishLaunch " + launch);
+        return Maybe.just(new OperationCompletionRS());
+    }
+
+    @Override
+    public Maybe<ItemCreatedRS> startTestItem(StartTestItemRQ rq) {
+        return startTestItem(null, rq);
+    }
+
+    @Override
+    public Maybe<ItemCreatedRS> startTestItem(String parent, StartTestItemRQ rq) {
+        if (failing) {
+            return Maybe.error(new IllegalStateException("Unable to start " + rq.getName()));
+        }
+        String id = nextId();
+        String path = parent == null ? rq.getName() : items.get(parent) + " / " + rq.getName();
+        items.put(id, path);
+        if (rq.getDescription() != null) {
+            descriptions.put(path, rq.getDescription());
+        }
+        if (rq.getStartTime() != null) {
+            startTimes.put(path, rq.getStartTime());
+        }
+        operations.add("startItem " + rq.getName() + " " + id);
+        return Maybe.just(new ItemCreatedRS(id, id));
+    }
+
+    @Override
+    public Maybe<OperationCompletionRS> finishTestItem(String item, FinishTestItemRQ rq) {
+        String path = items.get(item);
+        if (path != null && rq.getEndTime() != null) {
+            endTimes.put(path, rq.getEndTime());
+        }
+        operations.add("finishItem " + item);
+        return Maybe.just(new OperationCompletionRS());
+    }
+
+    @Override
+    public Maybe<EntryCreatedRS> log(SaveLogRQ rq) {
+        operations.add("log " + rq.getTestItemId() + " " + rq.getMessage());
+        return Maybe.just(new EntryCreatedRS(nextId()));
+    }
+
+    @Override
+    public Maybe<BatchSaveOperatingRS> log(MultiPartRequest rq) {
+        if (failing) {
+            return Maybe.error(new IllegalStateException("Unable to save logs"));
+        }
+        return Maybe.fromCallable(() -> {
+            if (logDelayMillis > 0) {
+                Thread.sleep(logDelayMillis);
+            }
+            for (MultiPartRequest.MultiPartSerialized<?> part : rq.getSerializedRQs()) {
+                for (Object request : (List<?>) part.getRequest()) {
+                    SaveLogRQ logRq = (SaveLogRQ) request;
+                    operations.add("log " + logRq.getTestItemId() + " " + logRq.getMessage());
+                }
+            }
+            for (MultiPartRequest.MultiPartBinary part : rq.getBinaryRQs()) {
+                attachments.put(part.getFilename(), part.getData().read());
+            }
+            batches.add(rq);
+            return new BatchSaveOperatingRS();
+        });
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private String nextId() {
+        return "rp-" + ids.incrementAndGet();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.service.ReportPortal;
+import rp.com.google.common.base.Suppliers;
+
+import java.util.Date;
+
+/**
+ * Scenario reporter which sends its requests to a {@link RecordingClient}
+ */
+public class RecordingScenarioReporter extends ScenarioReporter {
+
+    /* the last instance created, e.g. by Cucumber as a plugin */
+    private static volatile RecordingScenarioReporter lastInstance;
+
+    private final RecordingClient client = new RecordingClient();
+
+    public RecordingScenarioReporter() {
+        lastInstance = this;
+    }
+
+    /**
+     * Run features of the test resources with the glue of the tests and a recording scenario reporter,
+     * whatever the outcome of the scenarios is
+     *
+     * @param arguments Cucumber arguments, e.g. features and plugins
+     * @return client of the reporter
+     */
+    static RecordingClient run(String... arguments) {
+        RecordingStepReporter.runCucumber(RecordingScenarioReporter.class, arguments);
+        return lastInstance.client;
+    }
+
+    @Override
+    protected void startLaunch(Date startTime) {
+        super.startLaunch(startTime);
+        reportPortal = Suppliers.memoize(() -> ReportPortal.create(client, RecordingStepReporter.parameters()));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.listeners.ListenerParameters;
+import com.epam.reportportal.service.ReportPortal;
+import com.epam.ta.reportportal.ws.model.launch.Mode;
+import io.cucumber.core.cli.Main;
+import rp.com.google.common.base.Suppliers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Step reporter which sends its requests to a {@link RecordingClient}
+ */
+public class RecordingStepReporter extends StepReporter {
+
+    /* the last instance created, e.g. by Cucumber as a plugin */
+    private static volatile RecordingStepReporter lastInstance;
+
+    private final RecordingClient client = new RecordingClient();
+
+    public RecordingStepReporter() {
+        lastInstance = this;
+    }
+
+    static RecordingStepReporter getLastInstance() {
+        return lastInstance;
+    }
+
+    /**
+     * Run features of the test resources with the glue of the tests and a recording step reporter
+     *
+     * @param arguments Cucumber arguments, e.g. features and plugins
+     * @return client of the reporter
+     */
+    static RecordingClient run(String... arguments) {
+        byte exitStatus = runCucumber(RecordingStepReporter.class, arguments);
+        if (exitStatus != 0) {
+            throw new AssertionError("Cucumber run failed with exit status " + exitStatus);
+        }
+        return lastInstance.getClient();
+    }
+
+    /**
+     * Run features of the test resources with the glue of the tests and a recording step reporter,
+     * whatever the outcome of the scenarios is
+     *
+     * @param arguments Cucumber arguments, e.g. features and plugins
+     * @return client of the reporter
+     */
+    static RecordingClient runWithFailures(String... arguments) {
+        runCucumber(RecordingStepReporter.class, arguments);
+        return lastInstance.getClient();
+    }
+
+    /**
+     * Run features of the test resources with the glue of the tests
+     *
+     * @param plugin    reporter plugin
+     * @param arguments Cucumber arguments, e.g. features and plugins
+     * @return exit status of the run
+     */
+    static byte runCucumber(Class<?> plugin, String... arguments) {
+        List<String> argv = new ArrayList<>(Arrays.asList("--glue", "io.github.khda91.reportportal.cucumber.glue",
+                "--plugin", plugin.getName()));
+        argv.addAll(Arrays.asList(arguments));
+        return Main.run(argv.toArray(new String[0]), Thread.currentThread().getContextClassLoader());
+    }
+
+    RecordingClient getClient() {
+        return client;
+    }
+
+    @Override
+    protected void startLaunch(Date startTime) {
+        super.startLaunch(startTime);
+        reportPortal = Suppliers.memoize(() -> ReportPortal.create(client, parameters()));
+    }
+
+    /**
+     * @return client parameters of a test launch
+     */
+    static ListenerParameters parameters() {
+        ListenerParameters parameters = new ListenerParameters();
+        parameters.setEnable(true);
+        parameters.setLaunchName("test");
+        parameters.setLaunchRunningMode(Mode.DEFAULT);
+        parameters.setTags(Collections.emptySet());
+        parameters.setBatchLogsSize(10);
+        parameters.setReportingTimeout(30);
+        parameters.setIoPoolSize(4);
+        return parameters;
+    }
+}
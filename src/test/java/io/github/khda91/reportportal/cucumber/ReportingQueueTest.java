@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import io.cucumber.plugin.event.Event;
+import io.cucumber.plugin.event.EventHandler;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ReportingQueueTest {
+
+    private static final int PRODUCERS = 8;
+
+    private static final int EVENTS = 100000;
+
+    @Test(timeout = 60000L)
+    public void contendedEventsAreHandledOnceInProducerOrder() throws InterruptedException {
+        ReportingQueue queue = new ReportingQueue(8);
+        List<List<Integer>> received = new ArrayList<>();
+        for (int i = 0; i < PRODUCERS; i++) {
+            received.add(new ArrayList<>());
+        }
+        EventHandler<NumberedEvent> handler = event -> received.get(event.producer).add(event.number);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < PRODUCERS; i++) {
+            int producer = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int number = 0; number < EVENTS; number++) {
+                    queue.submit(handler, new NumberedEvent(producer, number));
+                }
+            });
+            thread.start();
+            producers.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : producers) {
+            thread.join();
+        }
+        queue.close();
+
+        assertThat(queue.size(), equalTo(0L));
+        for (List<Integer> numbers : received) {
+            assertThat(numbers.size(), equalTo(EVENTS));
+            for (int number = 0; number < EVENTS; number++) {
+                assertThat(numbers.get(number), equalTo(number));
+            }
+        }
+    }
+
+    @Test
+    public void failingHandlerDoesNotStopReporting() {
+        ReportingQueue queue = new ReportingQueue(4);
+        List<Integer> received = new ArrayList<>();
+        EventHandler<NumberedEvent> handler = event -> {
+            if (event.number % 2 == 0) {
+                throw new IllegalStateException("failed " + event.number);
+            }
+            received.add(event.number);
+        };
+        for (int number = 0; number < 10; number++) {
+            queue.submit(handler, new NumberedEvent(0, number));
+        }
+        queue.close();
+
+        assertThat(received.toString(), equalTo("[1, 3, 5, 7, 9]"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedQueueRejectsEvents() {
+        ReportingQueue queue = new ReportingQueue(4);
+        queue.close();
+        queue.submit(event -> {
+        }, new NumberedEvent(0, 0));
+    }
+
+    private static final class NumberedEvent implements Event {
+
+        private final Instant instant = Instant.now();
+        private final int producer;
+        private final int number;
+
+        NumberedEvent(int producer, int number) {
+            this.producer = producer;
+            this.number = number;
+        }
+
+        @Override
+        public Instant getInstant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.service.Launch;
+import com.epam.reportportal.service.ReportPortal;
+import com.epam.ta.reportportal.ws.model.FinishTestItemRQ;
+import com.epam.ta.reportportal.ws.model.StartTestItemRQ;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRQ;
+import com.epam.ta.reportportal.ws.model.log.SaveLogRQ;
+import io.reactivex.Maybe;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertTrue;
+
+public class RequestWindowTest {
+
+    private static final long TIMEOUT_MILLIS = 10000L;
+
+    @Test
+    public void itemStartIsReleasedOnError() {
+        RecordingClient client = new RecordingClient();
+        RequestWindow window = new RequestWindow(1L, 0L, RequestWindow.Policy.BLOCK, TIMEOUT_MILLIS);
+        Launch launch = newLaunch(client);
+        client.setFailing(true);
+
+        window.startTestItem(launch, null, itemRq("test"));
+
+        awaitItemRequests(window, 0L);
+        assertTrue(window.tryAcquire(0L));
+    }
+
+    @Test
+    public void itemFinishIsReleasedWhenItemIsNotStarted() {
+        RecordingClient client = new RecordingClient();
+        RequestWindow window = new RequestWindow(1L, 0L, RequestWindow.Policy.BLOCK, TIMEOUT_MILLIS);
+        Launch launch = newLaunch(client);
+
+        window.finishTestItem(launch, Maybe.<String>error(new IllegalStateException("Not started")), new FinishTestItemRQ());
+
+        awaitItemRequests(window, 0L);
+        assertTrue(window.tryAcquire(0L));
+    }
+
+    @Test
+    public void logIsReleasedWhenItsBatchFails() {
+        RecordingClient client = new RecordingClient();
+        client.setFailing(true);
+        RequestWindow window = new RequestWindow(1L, 0L, RequestWindow.Policy.BLOCK, TIMEOUT_MILLIS);
+        LogBatcher logBatcher = new LogBatcher(client, 10, 1024 * 1024, 10L, Long.MAX_VALUE, null, window);
+
+        logBatcher.emit(Maybe.just("item"), logRq("INFO", "message"));
+
+        assertTrue(logBatcher.awaitUploaded(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertThat(logBatcher.getFailedLogs(), equalTo(1L));
+        assertTrue(window.tryAcquire(0L));
+    }
+
+    @Test
+    public void timeoutIsPaidOnceUntilWindowDrains() {
+        RequestWindow window = new RequestWindow(1L, 0L, RequestWindow.Policy.BLOCK, 500L);
+        window.acquire(0L);
+
+        long started = System.nanoTime();
+        window.acquire(0L);
+        window.acquire(0L);
+        window.acquire(0L);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), lessThan(1000L));
+
+        for (int i = 0; i < 4; i++) {
+            window.release(0L);
+        }
+        assertTrue(window.tryAcquire(0L));
+        started = System.nanoTime();
+        window.acquire(0L);
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        assertTrue("the window should be waited for again once it drained, waited " + waited + " ms", waited >= 400L);
+    }
+
+    @Test
+    public void logsOfDeferredItemDoNotWaitForWindow() {
+        RecordingClient client = new RecordingClient();
+        RequestWindow window = new RequestWindow(1L, 0L, RequestWindow.Policy.BLOCK, TIMEOUT_MILLIS);
+        LogBatcher logBatcher = new LogBatcher(client, 10, 1024 * 1024, 10L, Long.MAX_VALUE, null, window);
+        DeferredItem item = new DeferredItem(itemRq("deferred"));
+        window.acquire(0L);
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            logBatcher.emit(item.getId(), logRq("INFO", "message " + i));
+        }
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), lessThan(TIMEOUT_MILLIS / 2));
+
+        window.release(0L);
+        item.skip(Maybe.just("target"));
+        assertTrue(logBatcher.awaitUploaded(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertTrue(window.tryAcquire(0L));
+    }
+
+    @Test
+    public void attachmentsWithoutLevelAreDroppedWhenWindowIsFull() {
+        RecordingClient client = new RecordingClient();
+        RequestWindow window = new RequestWindow(1L, 0L, RequestWindow.Policy.DROP, TIMEOUT_MILLIS);
+        LogBatcher logBatcher = new LogBatcher(client, 10, 1024 * 1024, 10L, Long.MAX_VALUE, null, window);
+        window.acquire(0L);
+
+        SaveLogRQ attachment = logRq(null, "screenshot");
+        SaveLogRQ.File file = new SaveLogRQ.File();
+        file.setName("screenshot.png");
+        file.setContentType("image/png");
+        file.setContent(new byte[1024]);
+        attachment.setFile(file);
+        long started = System.nanoTime();
+        logBatcher.emit(Maybe.just("item"), attachment);
+        logBatcher.emit(Maybe.just("item"), logRq("UNKNOWN", "unknown level"));
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), lessThan(TIMEOUT_MILLIS / 2));
+        assertThat(logBatcher.getDroppedLogs(), equalTo(2L));
+    }
+
+    @Test
+    public void itemsOfLaunchNotAttachedBypassWindow() {
+        RequestWindow window = new RequestWindow(1L, 0L, RequestWindow.Policy.BLOCK, TIMEOUT_MILLIS);
+        Launch launch = newLaunch(new RecordingClient());
+        window.acquire(0L);
+
+        long started = System.nanoTime();
+        Maybe<String> itemId = Utils.startTestItem(launch, null, itemRq("test"));
+        Utils.finishTestItem(launch, itemId, new Date());
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), lessThan(TIMEOUT_MILLIS / 2));
+        assertThat(window.getItemRequests(), equalTo(0L));
+    }
+
+    @Test
+    public void itemsOfAttachedLaunchAreReleasedOnceFinished() {
+        RequestWindow window = new RequestWindow(1L, 0L, RequestWindow.Policy.BLOCK, TIMEOUT_MILLIS);
+        RecordingClient client = new RecordingClient();
+        StartLaunchRQ rq = new StartLaunchRQ();
+        rq.setName("launch");
+        rq.setStartTime(new Date());
+        Launch launch = ReportPortal.create(window.windowed(client), RecordingStepReporter.parameters()).newLaunch(rq);
+        launch.start();
+        window.attach(launch);
+        try {
+            for (int i = 0; i < 3; i++) {
+                Utils.finishTestItem(launch, Utils.startTestItem(launch, null, itemRq("test " + i)), new Date());
+                awaitItemRequests(window, 0L);
+            }
+        } finally {
+            window.detach(launch);
+        }
+
+        assertThat(RequestWindow.of(launch), nullValue());
+        assertThat(client.getItemTree(), hasSize(3));
+    }
+
+    private static Launch newLaunch(RecordingClient client) {
+        StartLaunchRQ rq = new StartLaunchRQ();
+        rq.setName("launch");
+        rq.setStartTime(new Date());
+        Launch launch = ReportPortal.create(client, RecordingStepReporter.parameters()).newLaunch(rq);
+        launch.start();
+        return launch;
+    }
+
+    private static StartTestItemRQ itemRq(String name) {
+        StartTestItemRQ rq = new StartTestItemRQ();
+        rq.setName(name);
+        rq.setType("STEP");
+        rq.setStartTime(new Date());
+        return rq;
+    }
+
+    private static SaveLogRQ logRq(String level, String message) {
+        SaveLogRQ rq = new SaveLogRQ();
+        rq.setLevel(level);
+        rq.setMessage(message);
+        rq.setLogTime(new Date());
+        return rq;
+    }
+
+    private static void awaitItemRequests(RequestWindow window, long expected) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (window.getItemRequests() != expected && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        assertThat(window.getItemRequests(), equalTo(expected));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+
+public class ScenarioReporterTest {
+
+    private static final String TRANSCRIPT = "classpath:io/github/khda91/reportportal/cucumber/transcript.feature";
+
+    @Test
+    public void transcriptIsLoggedOncePerScenario() {
+        RecordingClient client = runWithTranscript();
+
+        assertThat(logs(client, "Scenario: Passing"), containsInAnyOrder(
+                "[PASSED] BACKGROUND: Given a background step\n"
+                        + "[PASSED] Given a doc string\n\"\"\"\nhello\n\"\"\"\n"
+                        + "[PASSED] And value 1"));
+    }
+
+    @Test
+    public void errorsAreLoggedBesideTranscript() {
+        RecordingClient client = runWithTranscript();
+
+        assertThat(logs(client, "Scenario: Failing"), containsInAnyOrder(
+                "[PASSED] BACKGROUND: Given a background step\n"
+                        + "[PASSED] Given value 1\n"
+                        + "[FAILED] When a failing step\n"
+                        + "[SKIPPED] Then value 2",
+                "step failed"));
+    }
+
+    @Test
+    public void stepsAreLoggedOneByOneWithoutTranscript() {
+        RecordingClient client = RecordingScenarioReporter.run(TRANSCRIPT);
+
+        List<String> logs = logs(client, "Scenario: Failing");
+        // start and status of four steps, then the error
+        assertThat(logs, hasSize(9));
+        assertThat(logs, hasItem("step failed"));
+    }
+
+    private static RecordingClient runWithTranscript() {
+        System.setProperty(ScenarioReporter.TRANSCRIPT_PROPERTY, "true");
+        try {
+            return RecordingScenarioReporter.run(TRANSCRIPT);
+        } finally {
+            System.clearProperty(ScenarioReporter.TRANSCRIPT_PROPERTY);
+        }
+    }
+
+    /**
+     * @return messages logged to the scenario item
+     */
+    private static List<String> logs(RecordingClient client, String scenario) {
+        String prefix = null;
+        for (String operation : client.getOperations()) {
+            if (operation.startsWith("startItem " + scenario + " ")) {
+                prefix = "log " + operation.substring(operation.lastIndexOf(' ') + 1) + " ";
+            }
+        }
+        List<String> logs = new ArrayList<>();
+        for (String operation : client.getOperations()) {
+            if (prefix != null && operation.startsWith(prefix)) {
+                logs.add(operation.substring(prefix.length()));
+            }
+        }
+        return logs;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import com.epam.reportportal.service.Launch;
+import com.epam.reportportal.service.ReportPortal;
+import com.epam.ta.reportportal.ws.model.launch.StartLaunchRQ;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SharedLaunchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void lastForkToLeaveFinishesLaunch() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("launch.properties");
+        Process fork = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"), Fork.class.getName(), file.toString())
+                .redirectErrorStream(true)
+                .start();
+        try {
+            BufferedReader output = new BufferedReader(new InputStreamReader(fork.getInputStream(), StandardCharsets.UTF_8));
+            assertThat(awaitLine(output, "joined"), equalTo("joined"));
+
+            RecordingClient client = new RecordingClient();
+            SharedLaunch launch = new SharedLaunch(file, 0);
+            launch.join(ReportPortal.create(client, RecordingStepReporter.parameters()), launchRq(), 10L);
+            assertThat(client.getOperations(), empty());
+            assertThat(readState(file).getProperty("joined"), equalTo("2"));
+            assertFalse(launch.leave());
+
+            fork.getOutputStream().close();
+            assertThat(awaitLine(output, "left "), equalTo("left true"));
+            assertTrue(fork.waitFor(30L, TimeUnit.SECONDS));
+            assertThat(Files.size(file), equalTo(0L));
+        } finally {
+            fork.destroyForcibly();
+        }
+    }
+
+    @Test
+    public void launchIsHandedOverToExpectedForks() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("launch.properties");
+        RecordingClient first = new RecordingClient();
+        SharedLaunch firstLaunch = new SharedLaunch(file, 2);
+        firstLaunch.join(ReportPortal.create(first, RecordingStepReporter.parameters()), launchRq(), 10L);
+        assertThat(first.getOperations(), contains("startLaunch launch rp-1"));
+        assertFalse(firstLaunch.leave());
+
+        RecordingClient second = new RecordingClient();
+        SharedLaunch secondLaunch = new SharedLaunch(file, 2);
+        secondLaunch.join(ReportPortal.create(second, RecordingStepReporter.parameters()), launchRq(), 10L);
+        assertThat(second.getOperations(), empty());
+        assertThat(readState(file).getProperty("launch"), equalTo("rp-1"));
+        assertTrue(secondLaunch.leave());
+        assertThat(Files.size(file), equalTo(0L));
+    }
+
+    @Test
+    public void reportersOfOneJvmShareItsMembership() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("launch.properties");
+        RecordingClient first = new RecordingClient();
+        SharedLaunch firstLaunch = new SharedLaunch(file, 0);
+        firstLaunch.join(ReportPortal.create(first, RecordingStepReporter.parameters()), launchRq(), 10L);
+
+        RecordingClient second = new RecordingClient();
+        SharedLaunch secondLaunch = new SharedLaunch(file, 0);
+        Launch launch = secondLaunch.join(ReportPortal.create(second, RecordingStepReporter.parameters()), launchRq(), 10L);
+        assertThat(second.getOperations(), empty());
+        assertThat(launch.start().blockingGet(), equalTo("rp-1"));
+        assertThat(readState(file).getProperty("joined"), equalTo("1"));
+
+        assertFalse(firstLaunch.leave());
+        assertThat(readState(file).getProperty("launch"), equalTo("rp-1"));
+        assertTrue(secondLaunch.leave());
+        assertThat(Files.size(file), equalTo(0L));
+    }
+
+    @Test
+    public void stateOfFinishedRunIsNotReused() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("launch.properties");
+        Files.write(file, Collections.singletonList("launch=stale\njoined=2"), StandardCharsets.ISO_8859_1);
+
+        RecordingClient client = new RecordingClient();
+        SharedLaunch launch = new SharedLaunch(file, 2);
+        launch.join(ReportPortal.create(client, RecordingStepReporter.parameters()), launchRq(), 10L);
+
+        assertThat(client.getOperations(), contains("startLaunch launch rp-1"));
+        assertThat(readState(file).getProperty("launch"), equalTo("rp-1"));
+        assertThat(readState(file).getProperty("joined"), equalTo("1"));
+        assertFalse(launch.leave());
+    }
+
+    @Test
+    public void stateOfCrashedForksIsNotReused() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("launch.properties");
+        Files.write(file, Collections.singletonList("launch=stale\njoined=1"), StandardCharsets.ISO_8859_1);
+
+        RecordingClient client = new RecordingClient();
+        SharedLaunch launch = new SharedLaunch(file, 0);
+        launch.join(ReportPortal.create(client, RecordingStepReporter.parameters()), launchRq(), 10L);
+
+        assertThat(client.getOperations(), contains("startLaunch launch rp-1"));
+        assertThat(readState(file).getProperty("launch"), equalTo("rp-1"));
+        assertTrue(launch.leave());
+    }
+
+    private static String awaitLine(BufferedReader output, String prefix) throws IOException {
+        String line;
+        while ((line = output.readLine()) != null) {
+            if (line.startsWith(prefix)) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    private static Properties readState(Path file) throws IOException {
+        Properties state = new Properties();
+        try (InputStream content = Files.newInputStream(file)) {
+            state.load(content);
+        }
+        return state;
+    }
+
+    private static StartLaunchRQ launchRq() {
+        StartLaunchRQ rq = new StartLaunchRQ();
+        rq.setName("launch");
+        rq.setStartTime(new Date());
+        return rq;
+    }
+
+    /**
+     * Fork of another JVM: joins the launch shared through the file of the first argument and leaves it once its
+     * input is closed
+     */
+    public static final class Fork {
+
+        public static void main(String[] args) throws IOException {
+            SharedLaunch launch = new SharedLaunch(Paths.get(args[0]), 0);
+            launch.join(ReportPortal.create(new RecordingClient(), RecordingStepReporter.parameters()), launchRq(), 10L);
+            System.out.println("joined");
+            while (System.in.read() >= 0) {
+                // wait for the input to be closed
+            }
+            System.out.println("left " + launch.leave());
+            System.exit(0);
+        }
+    }
+}
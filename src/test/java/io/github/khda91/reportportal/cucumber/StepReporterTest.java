@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+public class StepReporterTest {
+
+    private static final String LOGGING = "classpath:io/github/khda91/reportportal/cucumber/logging.feature";
+
+    private static final String ROUND_TRIP = "classpath:io/github/khda91/reportportal/cucumber/round_trip.feature";
+
+    private static final String OUTLINE_NUMBERING = "classpath:io/github/khda91/reportportal/cucumber/outline_numbering.feature";
+
+    @Test
+    public void outlineRowsAreNumberedAcrossExamplesBlocks() {
+        RecordingClient client = RecordingStepReporter.run(OUTLINE_NUMBERING);
+
+        assertThat(scenarios(client),
+                contains("Scenario Outline: Row <value> [1]",
+                        "Scenario Outline: Row <value> [2]",
+                        "Scenario Outline: Row <value> [3]",
+                        "Scenario Outline: Row <value> [4]",
+                        "Scenario Outline: Row <value> [5]"));
+    }
+
+    @Test
+    public void filteredOutlineRowsKeepTheNumbersOfTheirRows() {
+        RecordingClient client = RecordingStepReporter.run("--tags", "@second", OUTLINE_NUMBERING);
+
+        assertThat(scenarios(client),
+                contains("Scenario Outline: Row <value> [3]",
+                        "Scenario Outline: Row <value> [4]",
+                        "Scenario Outline: Row <value> [5]"));
+    }
+
+    @Test
+    public void parallelRunKeepsItemsUnderTheirParents() {
+        RecordingClient client = RecordingStepReporter.run("--threads", "4", ROUND_TRIP, OUTLINE_NUMBERING);
+
+        assertThat(client.getItemTree(), contains("Feature: Outline numbering",
+                "Feature: Outline numbering / Scenario Outline: Row <value> [1]",
+                "Feature: Outline numbering / Scenario Outline: Row <value> [1] / Given value 1 ",
+                "Feature: Outline numbering / Scenario Outline: Row <value> [2]",
+                "Feature: Outline numbering / Scenario Outline: Row <value> [2] / Given value 2 ",
+                "Feature: Outline numbering / Scenario Outline: Row <value> [3]",
+                "Feature: Outline numbering / Scenario Outline: Row <value> [3] / Given value 3 ",
+                "Feature: Outline numbering / Scenario Outline: Row <value> [4]",
+                "Feature: Outline numbering / Scenario Outline: Row <value> [4] / Given value 4 ",
+                "Feature: Outline numbering / Scenario Outline: Row <value> [5]",
+                "Feature: Outline numbering / Scenario Outline: Row <value> [5] / Given value 5 ",
+                "Feature: Round trip",
+                "Feature: Round trip / Scenario Outline: Outline [1]",
+                "Feature: Round trip / Scenario Outline: Outline [1] / BACKGROUND: Given a background step ",
+                "Feature: Round trip / Scenario Outline: Outline [1] / Given value 1 ",
+                "Feature: Round trip / Scenario Outline: Outline [2]",
+                "Feature: Round trip / Scenario Outline: Outline [2] / BACKGROUND: Given a background step ",
+                "Feature: Round trip / Scenario Outline: Outline [2] / Given value 2 ",
+                "Feature: Round trip / Scenario: Doc string",
+                "Feature: Round trip / Scenario: Doc string / BACKGROUND: Given a background step ",
+                "Feature: Round trip / Scenario: Doc string / Given a doc string "));
+        for (String item : client.getItemTree()) {
+            assertThat(item, client.getEndTime(item), notNullValue());
+        }
+    }
+
+    @Test
+    public void lazyModeReportsOnlyStepsWhichDidNotPass() {
+        RecordingClient client = runWithProperty(StepReporter.LAZY_STEPS_PROPERTY, LOGGING);
+
+        assertThat(client.getItemTree(), contains("Feature: Logging",
+                "Feature: Logging / Scenario: Failing",
+                "Feature: Logging / Scenario: Failing / Then value 2 ",
+                "Feature: Logging / Scenario: Failing / When a slow failing step "));
+        List<String> logs = logs(client, "Scenario: Failing");
+        assertThat(logs, hasItem(allOf(startsWith("Passed steps (2):\nGiven value 1 ("), containsString(" ms)\nAnd a logging step ("))));
+        assertThat(logs, hasItems("step log", "after hook log"));
+    }
+
+    @Test
+    public void lazyModeReportsFailedStepWithItsOriginalTimes() {
+        RecordingClient client = runWithProperty(StepReporter.LAZY_STEPS_PROPERTY, LOGGING);
+
+        Date scenarioStart = client.getStartTime("Feature: Logging / Scenario: Failing");
+        Date scenarioEnd = client.getEndTime("Feature: Logging / Scenario: Failing");
+        Date stepStart = client.getStartTime("Feature: Logging / Scenario: Failing / When a slow failing step ");
+        Date stepEnd = client.getEndTime("Feature: Logging / Scenario: Failing / When a slow failing step ");
+        // the step sleeps before failing and the after hook sleeps after it, reporting the step late would lose both
+        assertThat(stepStart.getTime(), greaterThanOrEqualTo(scenarioStart.getTime()));
+        assertThat(stepEnd.getTime() - stepStart.getTime(), greaterThanOrEqualTo(100L));
+        assertThat(scenarioEnd.getTime() - stepEnd.getTime(), greaterThanOrEqualTo(100L));
+    }
+
+    @Test
+    public void deferredModeReportsScenarioInOneBurstAtItsEnd() {
+        RecordingClient client = runWithProperty(StepReporter.DEFERRED_SCENARIOS_PROPERTY, LOGGING);
+
+        String scenario = "Feature: Logging / Scenario: Failing";
+        List<String> children = Arrays.asList("Given value 1 ", "And a logging step ", "When a slow failing step ", "Then value 2 ",
+                "After hooks");
+        List<String> operations = client.getOperations();
+        int scenarioStart = operations.indexOf(startOperation(operations, "Scenario: Failing"));
+        int scenarioFinish = operations.indexOf("finishItem " + itemId(operations, "Scenario: Failing"));
+        Date previousEnd = client.getStartTime(scenario);
+        for (String child : children) {
+            int start = operations.indexOf(startOperation(operations, child));
+            int finish = operations.indexOf("finishItem " + itemId(operations, child));
+            assertThat(child, start, greaterThan(scenarioStart));
+            assertThat(child, finish, allOf(greaterThan(start), lessThan(scenarioFinish)));
+            // items keep the times they were recorded with, in the order they ran
+            Date childStart = client.getStartTime(scenario + " / " + child);
+            Date childEnd = client.getEndTime(scenario + " / " + child);
+            assertThat(child, childStart, greaterThanOrEqualTo(previousEnd));
+            assertThat(child, childEnd, greaterThanOrEqualTo(childStart));
+            previousEnd = childEnd;
+        }
+        assertThat(client.getEndTime(scenario), greaterThanOrEqualTo(previousEnd));
+        assertThat(client.getItemTree(), hasSize(children.size() + 2));
+    }
+
+    @Test
+    public void deferredModeKeepsLogsOfTheScenario() {
+        RecordingClient client = runWithProperty(StepReporter.DEFERRED_SCENARIOS_PROPERTY, LOGGING);
+
+        assertThat(logs(client, "Scenario: Failing"), hasItems("step log", "after hook log"));
+        assertThat(logs(client, "When a slow failing step "), hasItem("slow step failed"));
+    }
+
+    private static RecordingClient runWithProperty(String property, String... arguments) {
+        System.setProperty(property, "true");
+        try {
+            return RecordingStepReporter.runWithFailures(arguments);
+        } finally {
+            System.clearProperty(property);
+        }
+    }
+
+    /**
+     * @return messages logged to the item of the given name
+     */
+    private static List<String> logs(RecordingClient client, String item) {
+        List<String> operations = client.getOperations();
+        String prefix = "log " + itemId(operations, item) + " ";
+        List<String> logs = new ArrayList<>();
+        for (String operation : operations) {
+            if (operation.startsWith(prefix)) {
+                logs.add(operation.substring(prefix.length()));
+            }
+        }
+        return logs;
+    }
+
+    private static String startOperation(List<String> operations, String item) {
+        for (String operation : operations) {
+            if (operation.startsWith("startItem " + item + " ") && operation.indexOf(' ', 11 + item.length()) < 0) {
+                return operation;
+            }
+        }
+        throw new AssertionError("Item " + item + " was not started");
+    }
+
+    private static String itemId(List<String> operations, String item) {
+        String operation = startOperation(operations, item);
+        return operation.substring(operation.lastIndexOf(' ') + 1);
+    }
+
+    private static List<String> scenarios(RecordingClient client) {
+        List<String> scenarios = new ArrayList<>();
+        for (String item : client.getItemTree()) {
+            String[] path = item.split(" / ");
+            if (path.length == 2) {
+                scenarios.add(path[1]);
+            }
+        }
+        return scenarios;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber.glue;
+
+import com.epam.reportportal.service.ReportPortal;
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+
+import java.util.Date;
+
+public class LoggingSteps {
+
+    @Given("a logging step")
+    public void loggingStep() {
+        ReportPortal.emitLog("step log", "INFO", new Date());
+    }
+
+    @Given("a slow failing step")
+    public void slowFailingStep() throws InterruptedException {
+        Thread.sleep(100L);
+        throw new AssertionError("slow step failed");
+    }
+
+    @After("@logging")
+    public void afterLogging() throws InterruptedException {
+        Thread.sleep(100L);
+        ReportPortal.emitLog("after hook log", "INFO", new Date());
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.khda91.reportportal.cucumber.glue;
+
+import io.cucumber.java.en.Given;
+
+public class RoundTripSteps {
+
+    @Given("a background step")
+    public void backgroundStep() {
+    }
+
+    @Given("a doc string")
+    public void docString(String docString) {
+    }
+
+    @Given("value {int}")
+    public void value(int value) {
+    }
+}
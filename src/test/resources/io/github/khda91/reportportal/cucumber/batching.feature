@@ -0,0 +1,7 @@
+Feature: Batching
+
+  Scenario: First failure
+    When a failing step
+
+  Scenario: Second failure
+    When a failing step
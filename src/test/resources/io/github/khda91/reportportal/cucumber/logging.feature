@@ -0,0 +1,8 @@
+@logging
+Feature: Logging
+
+  Scenario: Failing
+    Given value 1
+    And a logging step
+    When a slow failing step
+    Then value 2
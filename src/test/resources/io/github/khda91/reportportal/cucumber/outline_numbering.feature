@@ -0,0 +1,16 @@
+Feature: Outline numbering
+
+  Scenario Outline: Row <value>
+    Given value <value>
+
+    Examples: first
+      | value |
+      | 1     |
+      | 2     |
+
+    @second
+    Examples: second
+      | value |
+      | 3     |
+      | 4     |
+      | 5     |
@@ -0,0 +1,18 @@
+Feature: Round trip
+
+  Background:
+    Given a background step
+
+  Scenario: Doc string
+    Given a doc string
+      """
+      hello
+      """
+
+  Scenario Outline: Outline
+    Given value <value>
+
+    Examples:
+      | value |
+      | 1     |
+      | 2     |
@@ -0,0 +1,16 @@
+Feature: Transcript
+
+  Background:
+    Given a background step
+
+  Scenario: Passing
+    Given a doc string
+      """
+      hello
+      """
+    And value 1
+
+  Scenario: Failing
+    Given value 1
+    When a failing step
+    Then value 2